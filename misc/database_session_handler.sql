@@ -13,6 +13,8 @@ CREATE TABLE replay_tbl
     CONSTRAINT replay_assertion_id_pk PRIMARY KEY (assertion_id)
 );
 
+CREATE INDEX replay_access_time_idx ON replay_tbl (access_time);
+
 DROP TABLE if EXISTS assertions_tbl;
 
 CREATE TABLE assertions_tbl
@@ -28,6 +30,8 @@ CREATE TABLE assertions_tbl
 
 CREATE INDEX assertions_session_index_idx ON assertions_tbl (session_index);
 
+CREATE INDEX assertions_access_time_idx ON assertions_tbl (access_time);
+
 DROP TABLE if EXISTS authn_requests_tbl;
 
 CREATE TABLE authn_requests_tbl
@@ -40,6 +44,8 @@ CREATE TABLE authn_requests_tbl
     CONSTRAINT authn_requests_session_id_pk PRIMARY KEY (session_id)
 );
 
+CREATE INDEX authn_requests_access_time_idx ON authn_requests_tbl (access_time);
+
 DROP TABLE if EXISTS logout_requests_tbl;
 
 CREATE TABLE logout_requests_tbl
@@ -49,3 +55,15 @@ CREATE TABLE logout_requests_tbl
      xml_object CLOB,
      CONSTRAINT logout_requests_session_id_pk PRIMARY KEY (session_id)
 );
+
+CREATE INDEX logout_requests_access_time_idx ON logout_requests_tbl (access_time);
+
+DROP TABLE if EXISTS oiosaml_locks;
+
+CREATE TABLE oiosaml_locks
+(
+    lock_name VARCHAR(100) NOT NULL,
+    owner_id VARCHAR(255) NOT NULL,
+    expires_at TIMESTAMP NOT NULL,
+    CONSTRAINT oiosaml_locks_lock_name_pk PRIMARY KEY (lock_name)
+);
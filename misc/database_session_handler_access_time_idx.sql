@@ -0,0 +1,9 @@
+use oiosaml;
+
+CREATE INDEX replay_access_time_idx ON replay_tbl (access_time);
+
+CREATE INDEX assertions_access_time_idx ON assertions_tbl (access_time);
+
+CREATE INDEX authn_requests_access_time_idx ON authn_requests_tbl (access_time);
+
+CREATE INDEX logout_requests_access_time_idx ON logout_requests_tbl (access_time);
@@ -0,0 +1,9 @@
+use oiosaml;
+
+CREATE TABLE oiosaml_locks
+(
+    lock_name VARCHAR(100) NOT NULL,
+    owner_id VARCHAR(255) NOT NULL,
+    expires_at TIMESTAMP NOT NULL,
+    CONSTRAINT oiosaml_locks_lock_name_pk PRIMARY KEY (lock_name)
+);
@@ -28,6 +28,21 @@ public class Configuration {
     private String sessionHandlerJdbcPassword; // JDBC password for the JDBC session handler factory
     private String sessionHandlerJdbcDriverClassName; // JDBC driver class name for the JDBC session handler factory
     private int sessionHandlerInMemoryMaxNumberOfTrackedAssertionIds; // InMemory limit to list of stored assertions
+    private int sessionHandlerJdbcPoolMaxSize = 10; // Maximum number of borrowed connections in the JDBC session handler pool
+    private int sessionHandlerJdbcPoolMinIdle = 0; // Number of idle connections the JDBC session handler pool keeps ready
+    private int sessionHandlerJdbcPoolMaxIdle = 10; // Maximum number of idle connections kept by the JDBC session handler pool
+    private boolean sessionHandlerJdbcPoolValidateOnBorrow = true; // Validate pooled connections before handing them out
+    private int sessionHandlerJdbcPoolMaxLifetime = 30 * 60; // Maximum lifetime of a pooled connection in seconds
+    private int sessionHandlerJdbcPoolLeakDetectionThreshold = 0; // Seconds a connection may be borrowed before it is reported as leaked, 0 disables
+    private int sessionHandlerJdbcPoolBorrowTimeout = 30; // Seconds to wait for a free connection before failing
+    private int sessionHandlerDatabaseTouchInterval = 60; // Seconds between batched access time updates for database session handlers, 0 updates on every read
+    private int sessionHandlerDatabaseCacheSize = 0; // Number of assertions cached locally in front of the database session handler, 0 disables the cache
+    private int sessionHandlerDatabaseCacheTtl = 5 * 60; // Seconds an assertion is kept in the local cache of the database session handler
+    private String sessionHandlerDatabaseCodecClassName; // Codec storing session objects, default is Base64 encoded XML
+    private int traceSampleRate = 1; // Trace 1 in N SAML messages when a trace logger is enabled
+    private int sessionHandlerDatabaseCleanupBatchSize = 1000; // Maximum number of expired rows removed per transaction by the database session handler cleanup
+    private int sessionCleanerInterval = 0; // Seconds between session cleanups, 0 uses the servlet session timeout
+    private boolean sessionHandlerDatabaseCleanupCoordinated = false; // Only one node sharing the database runs cleanup, using a lease in oiosaml_locks
     private boolean validationEnabled = true;
     private boolean isAssuranceLevelAllowed = false;
     private int minimumAssuranceLevel = 3;
@@ -39,6 +54,8 @@ public class Configuration {
     private String idpMetadataFile; // The file path for a metadata file
     private int idpMetadataMinRefreshDelay = 1; // The minimum refresh delay in hours
     private int idpMetadataMaxRefreshDelay = 12; // The maximum refresh delay in hours
+    private String idpMetadataBackupFile; // File keeping a copy of the metadata fetched from the URL, used when the IdP is unreachable at startup
+    private String idpMetadataSigningCertificate; // Certificate verifying the signature of the metadata, each time new metadata is loaded
 
     // Keystore configuration
     private String keystoreLocation; // Location of the keystore
@@ -62,6 +79,24 @@ public class Configuration {
     // Revocation check settings
     private boolean crlCheckEnabled = true;
     private boolean ocspCheckEnabled = true;
+    private int revocationCacheTtl = 3600; // Seconds a revocation check result is cached, and a CRL without nextUpdate is used
+    private int revocationFailureTtl = 300; // Seconds an OCSP responder or CRL endpoint is skipped after it failed
+    private int revocationTimeout = 10; // Seconds to wait when connecting to and reading from an OCSP responder or CRL endpoint
+    private int revocationCheckThreads = 4; // Number of threads checking certificate revocation in the background
+
+    // Outbound HTTP settings
+    private int httpMaxConnections = 50; // Maximum number of pooled connections for outbound HTTP calls
+    private int httpMaxConnectionsPerHost = 10; // Maximum number of pooled connections to a single host
+    private int httpConnectTimeout = 10; // Seconds to wait when connecting, or waiting for a pooled connection
+    private int httpReadTimeout = 30; // Seconds to wait for data from the remote host
+    private int httpKeepAlive = 60; // Maximum seconds an idle connection is kept for reuse
+    private String httpProxy; // Proxy for outbound HTTP calls, e.g. http://proxy.example.com:8080, the JVM proxy settings are used if missing
+
+    // XML parser settings
+    private int parserPoolMaxSize = 50; // Maximum number of idle XML parsers kept for reuse
+
+    // Signature validation settings
+    private int signatureCacheTtl = 0; // Seconds a signature validation result is cached by assertion digest, 0 disables the cache
 
     // AppSwitch return URL settings
     private String appSwitchReturnURLForAndroid;
@@ -151,6 +186,22 @@ public class Configuration {
         this.idpMetadataMaxRefreshDelay = idpMetadataMaxRefreshDelay;
     }
 
+    public String getIdpMetadataBackupFile() {
+        return idpMetadataBackupFile;
+    }
+
+    public void setIdpMetadataBackupFile(String idpMetadataBackupFile) {
+        this.idpMetadataBackupFile = idpMetadataBackupFile;
+    }
+
+    public String getIdpMetadataSigningCertificate() {
+        return idpMetadataSigningCertificate;
+    }
+
+    public void setIdpMetadataSigningCertificate(String idpMetadataSigningCertificate) {
+        this.idpMetadataSigningCertificate = idpMetadataSigningCertificate;
+    }
+
     public String getKeystoreLocation() {
         return keystoreLocation;
     }
@@ -327,6 +378,102 @@ public class Configuration {
         this.ocspCheckEnabled = ocspCheckEnabled;
     }
 
+    public int getRevocationCacheTtl() {
+        return revocationCacheTtl;
+    }
+
+    public void setRevocationCacheTtl(int revocationCacheTtl) {
+        this.revocationCacheTtl = revocationCacheTtl;
+    }
+
+    public int getRevocationFailureTtl() {
+        return revocationFailureTtl;
+    }
+
+    public void setRevocationFailureTtl(int revocationFailureTtl) {
+        this.revocationFailureTtl = revocationFailureTtl;
+    }
+
+    public int getRevocationTimeout() {
+        return revocationTimeout;
+    }
+
+    public void setRevocationTimeout(int revocationTimeout) {
+        this.revocationTimeout = revocationTimeout;
+    }
+
+    public int getRevocationCheckThreads() {
+        return revocationCheckThreads;
+    }
+
+    public void setRevocationCheckThreads(int revocationCheckThreads) {
+        this.revocationCheckThreads = revocationCheckThreads;
+    }
+
+    public int getHttpMaxConnections() {
+        return httpMaxConnections;
+    }
+
+    public void setHttpMaxConnections(int httpMaxConnections) {
+        this.httpMaxConnections = httpMaxConnections;
+    }
+
+    public int getHttpMaxConnectionsPerHost() {
+        return httpMaxConnectionsPerHost;
+    }
+
+    public void setHttpMaxConnectionsPerHost(int httpMaxConnectionsPerHost) {
+        this.httpMaxConnectionsPerHost = httpMaxConnectionsPerHost;
+    }
+
+    public int getHttpConnectTimeout() {
+        return httpConnectTimeout;
+    }
+
+    public void setHttpConnectTimeout(int httpConnectTimeout) {
+        this.httpConnectTimeout = httpConnectTimeout;
+    }
+
+    public int getHttpReadTimeout() {
+        return httpReadTimeout;
+    }
+
+    public void setHttpReadTimeout(int httpReadTimeout) {
+        this.httpReadTimeout = httpReadTimeout;
+    }
+
+    public int getHttpKeepAlive() {
+        return httpKeepAlive;
+    }
+
+    public void setHttpKeepAlive(int httpKeepAlive) {
+        this.httpKeepAlive = httpKeepAlive;
+    }
+
+    public String getHttpProxy() {
+        return httpProxy;
+    }
+
+    public void setHttpProxy(String httpProxy) {
+        this.httpProxy = httpProxy;
+    }
+
+    public int getParserPoolMaxSize() {
+        return parserPoolMaxSize;
+    }
+
+    public void setParserPoolMaxSize(int parserPoolMaxSize) {
+        this.parserPoolMaxSize = parserPoolMaxSize;
+    }
+
+    public int getSignatureCacheTtl() {
+        return signatureCacheTtl;
+    }
+
+    public void setSignatureCacheTtl(int signatureCacheTtl) {
+        this.signatureCacheTtl = signatureCacheTtl;
+    }
+
     public String getAuditLoggerClassName() {
         return this.auditLoggerClassName;
     }
@@ -423,6 +570,126 @@ public class Configuration {
         return sessionHandlerInMemoryMaxNumberOfTrackedAssertionIds;
     }
 
+    public int getSessionHandlerJdbcPoolMaxSize() {
+        return sessionHandlerJdbcPoolMaxSize;
+    }
+
+    public void setSessionHandlerJdbcPoolMaxSize(int sessionHandlerJdbcPoolMaxSize) {
+        this.sessionHandlerJdbcPoolMaxSize = sessionHandlerJdbcPoolMaxSize;
+    }
+
+    public int getSessionHandlerJdbcPoolMinIdle() {
+        return sessionHandlerJdbcPoolMinIdle;
+    }
+
+    public void setSessionHandlerJdbcPoolMinIdle(int sessionHandlerJdbcPoolMinIdle) {
+        this.sessionHandlerJdbcPoolMinIdle = sessionHandlerJdbcPoolMinIdle;
+    }
+
+    public int getSessionHandlerJdbcPoolMaxIdle() {
+        return sessionHandlerJdbcPoolMaxIdle;
+    }
+
+    public void setSessionHandlerJdbcPoolMaxIdle(int sessionHandlerJdbcPoolMaxIdle) {
+        this.sessionHandlerJdbcPoolMaxIdle = sessionHandlerJdbcPoolMaxIdle;
+    }
+
+    public boolean isSessionHandlerJdbcPoolValidateOnBorrow() {
+        return sessionHandlerJdbcPoolValidateOnBorrow;
+    }
+
+    public void setSessionHandlerJdbcPoolValidateOnBorrow(boolean sessionHandlerJdbcPoolValidateOnBorrow) {
+        this.sessionHandlerJdbcPoolValidateOnBorrow = sessionHandlerJdbcPoolValidateOnBorrow;
+    }
+
+    public int getSessionHandlerJdbcPoolMaxLifetime() {
+        return sessionHandlerJdbcPoolMaxLifetime;
+    }
+
+    public void setSessionHandlerJdbcPoolMaxLifetime(int sessionHandlerJdbcPoolMaxLifetime) {
+        this.sessionHandlerJdbcPoolMaxLifetime = sessionHandlerJdbcPoolMaxLifetime;
+    }
+
+    public int getSessionHandlerJdbcPoolLeakDetectionThreshold() {
+        return sessionHandlerJdbcPoolLeakDetectionThreshold;
+    }
+
+    public void setSessionHandlerJdbcPoolLeakDetectionThreshold(int sessionHandlerJdbcPoolLeakDetectionThreshold) {
+        this.sessionHandlerJdbcPoolLeakDetectionThreshold = sessionHandlerJdbcPoolLeakDetectionThreshold;
+    }
+
+    public int getSessionHandlerJdbcPoolBorrowTimeout() {
+        return sessionHandlerJdbcPoolBorrowTimeout;
+    }
+
+    public void setSessionHandlerJdbcPoolBorrowTimeout(int sessionHandlerJdbcPoolBorrowTimeout) {
+        this.sessionHandlerJdbcPoolBorrowTimeout = sessionHandlerJdbcPoolBorrowTimeout;
+    }
+
+    public int getSessionHandlerDatabaseTouchInterval() {
+        return sessionHandlerDatabaseTouchInterval;
+    }
+
+    public void setSessionHandlerDatabaseTouchInterval(int sessionHandlerDatabaseTouchInterval) {
+        this.sessionHandlerDatabaseTouchInterval = sessionHandlerDatabaseTouchInterval;
+    }
+
+    public int getSessionHandlerDatabaseCacheSize() {
+        return sessionHandlerDatabaseCacheSize;
+    }
+
+    public void setSessionHandlerDatabaseCacheSize(int sessionHandlerDatabaseCacheSize) {
+        this.sessionHandlerDatabaseCacheSize = sessionHandlerDatabaseCacheSize;
+    }
+
+    public int getSessionHandlerDatabaseCacheTtl() {
+        return sessionHandlerDatabaseCacheTtl;
+    }
+
+    public void setSessionHandlerDatabaseCacheTtl(int sessionHandlerDatabaseCacheTtl) {
+        this.sessionHandlerDatabaseCacheTtl = sessionHandlerDatabaseCacheTtl;
+    }
+
+    public String getSessionHandlerDatabaseCodecClassName() {
+        return sessionHandlerDatabaseCodecClassName;
+    }
+
+    public void setSessionHandlerDatabaseCodecClassName(String sessionHandlerDatabaseCodecClassName) {
+        this.sessionHandlerDatabaseCodecClassName = sessionHandlerDatabaseCodecClassName;
+    }
+
+    public int getTraceSampleRate() {
+        return traceSampleRate;
+    }
+
+    public void setTraceSampleRate(int traceSampleRate) {
+        this.traceSampleRate = traceSampleRate;
+    }
+
+    public int getSessionHandlerDatabaseCleanupBatchSize() {
+        return sessionHandlerDatabaseCleanupBatchSize;
+    }
+
+    public void setSessionHandlerDatabaseCleanupBatchSize(int sessionHandlerDatabaseCleanupBatchSize) {
+        this.sessionHandlerDatabaseCleanupBatchSize = sessionHandlerDatabaseCleanupBatchSize;
+    }
+
+    public int getSessionCleanerInterval() {
+        return sessionCleanerInterval;
+    }
+
+    public void setSessionCleanerInterval(int sessionCleanerInterval) {
+        this.sessionCleanerInterval = sessionCleanerInterval;
+    }
+
+    public boolean isSessionHandlerDatabaseCleanupCoordinated() {
+        return sessionHandlerDatabaseCleanupCoordinated;
+    }
+
+    public void setSessionHandlerDatabaseCleanupCoordinated(boolean sessionHandlerDatabaseCleanupCoordinated) {
+        this.sessionHandlerDatabaseCleanupCoordinated = sessionHandlerDatabaseCleanupCoordinated;
+    }
+
     public void setAppSwitchReturnURLForAndroid(String returnURL) {
         this.appSwitchReturnURLForAndroid = returnURL;
     }
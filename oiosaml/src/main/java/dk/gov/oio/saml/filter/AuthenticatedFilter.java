@@ -11,14 +11,12 @@ import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import javax.servlet.http.HttpSession;
 
 import dk.gov.oio.saml.config.Configuration;
 import dk.gov.oio.saml.extensions.appswitch.AppSwitchPlatform;
 import dk.gov.oio.saml.service.OIOSAML3Service;
 import dk.gov.oio.saml.session.*;
 import dk.gov.oio.saml.util.*;
-import org.opensaml.core.xml.io.MarshallingException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.opensaml.messaging.context.MessageContext;
@@ -76,7 +74,8 @@ public class AuthenticatedFilter implements Filter {
 
         try {
             OIOSAML3Service.getSessionCleanerService().startCleanerIfMissing(req.getSession());
-            SessionHandler sessionHandler = OIOSAML3Service.getSessionHandlerFactory().getHandler();
+            // Load the OIOSAML session state once for this request
+            SessionHandler sessionHandler = new RequestScopedSessionHandler(OIOSAML3Service.getSessionHandlerFactory().getHandler());
             AssertionWrapper assertionWrapper = sessionHandler.getAssertion(req.getSession());
 
             // Is the user authenticated, and at the required level?
@@ -103,7 +102,7 @@ public class AuthenticatedFilter implements Filter {
             }
             else {
                 try {
-                    putAssertionOnThreadLocal(req.getSession());
+                    putAssertionOnThreadLocal(assertionWrapper);
 
                     // User already authenticated to the correct level
                     chain.doFilter(req, res);
@@ -122,6 +121,11 @@ public class AuthenticatedFilter implements Filter {
 
     @Override
     public void destroy() {
+        // The servlet may already have shut down OIOSAML, which stops the cleaner and closes the session handlers
+        if (!OIOSAML3Service.initialized) {
+            return;
+        }
+
         OIOSAML3Service.getSessionCleanerService().stopCleaner();
         OIOSAML3Service.getSessionHandlerFactory().close();
     }
@@ -159,9 +163,7 @@ public class AuthenticatedFilter implements Filter {
         AssertionWrapperHolder.clear();
     }
 
-    private void putAssertionOnThreadLocal(HttpSession session) throws InternalException {
-        SessionHandler sessionHandler = OIOSAML3Service.getSessionHandlerFactory().getHandler();
-        AssertionWrapper assertion = sessionHandler.getAssertion(session);
+    private void putAssertionOnThreadLocal(AssertionWrapper assertion) {
         if (assertion != null) {
             AssertionWrapperHolder.set(assertion);
 
@@ -175,12 +177,7 @@ public class AuthenticatedFilter implements Filter {
     }
 
     private void sendAuthnRequest(HttpServletRequest req, HttpServletResponse res, MessageContext<SAMLObject> authnRequest, NSISLevel requestedNsisLevel, String requestPath) throws InternalException {
-        try {
-            log.debug("AuthnRequest: {}", StringUtil.elementToString(SamlHelper.marshallObject(authnRequest.getMessage())));
-        }
-        catch (MarshallingException e) {
-            log.warn("Could not marshall AuthnRequest for logging purposes");
-        }
+        SamlTraceUtil.trace(SamlTraceUtil.AUTHN_REQUEST, authnRequest.getMessage());
 
         // Save authnRequest on session
         SessionHandler sessionHandler = OIOSAML3Service.getSessionHandlerFactory().getHandler();
@@ -1,60 +1,46 @@
 package dk.gov.oio.saml.model;
 
-import java.io.ByteArrayInputStream;
-import java.security.KeyManagementException;
-import java.security.KeyStoreException;
-import java.security.NoSuchAlgorithmException;
-import java.security.cert.CertificateException;
-import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicReference;
 
-import javax.net.ssl.SSLContext;
-
-import dk.gov.oio.saml.util.ResourceUtil;
-import org.apache.http.conn.ssl.NoopHostnameVerifier;
-import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
-import org.apache.http.conn.ssl.TrustSelfSignedStrategy;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
-import org.apache.http.ssl.TrustStrategy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.bouncycastle.util.encoders.Base64;
 import org.joda.time.DateTime;
 import org.opensaml.core.config.InitializationException;
 import org.opensaml.core.criterion.EntityIdCriterion;
-import org.opensaml.saml.common.xml.SAMLConstants;
 import org.opensaml.saml.metadata.resolver.impl.AbstractReloadingMetadataResolver;
-import org.opensaml.saml.metadata.resolver.impl.FilesystemMetadataResolver;
-import org.opensaml.saml.metadata.resolver.impl.HTTPMetadataResolver;
 import org.opensaml.saml.saml2.metadata.EntityDescriptor;
 import org.opensaml.saml.saml2.metadata.IDPSSODescriptor;
-import org.opensaml.saml.saml2.metadata.KeyDescriptor;
 import org.opensaml.saml.saml2.metadata.SingleLogoutService;
 import org.opensaml.security.credential.UsageType;
 
 import dk.gov.oio.saml.config.Configuration;
 import dk.gov.oio.saml.service.CRLChecker;
+import dk.gov.oio.saml.service.IdPMetadataService;
 import dk.gov.oio.saml.service.OIOSAML3Service;
 import dk.gov.oio.saml.util.ExternalException;
 import dk.gov.oio.saml.util.InternalException;
-import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
 import net.shibboleth.utilities.java.support.resolver.CriteriaSet;
 import net.shibboleth.utilities.java.support.resolver.ResolverException;
-import net.shibboleth.utilities.java.support.xml.BasicParserPool;
 
 public class IdPMetadata {
     private static final Logger log = LoggerFactory.getLogger(IdPMetadata.class);
-    private List<X509Certificate> validEncryptionCertificates = new ArrayList<>();
-    private List<X509Certificate> validSigningCertificates = new ArrayList<>();
-    private List<X509Certificate> validUnspecifiedCertificates = new ArrayList<>();
+    private final AtomicReference<ValidCertificates> validCertificates = new AtomicReference<>();
+    private CompletableFuture<ValidCertificates> pendingRevocationCheck;
+    private volatile IdPMetadataSnapshot snapshot;
     private String metadataFilePath;
-    private AbstractReloadingMetadataResolver resolver;
-    private DateTime lastCRLCheck;
+    private volatile AbstractReloadingMetadataResolver resolver;
     private String entityId;
     private String metadataURL;
 
@@ -66,6 +52,15 @@ public class IdPMetadata {
     }
 
     public EntityDescriptor getEntityDescriptor() throws InternalException, ExternalException {
+        IdPMetadataSnapshot current = getCurrentSnapshot();
+        if (current != null) {
+            return current.getEntityDescriptor();
+        }
+
+        return resolveEntityDescriptor();
+    }
+
+    private EntityDescriptor resolveEntityDescriptor() throws InternalException, ExternalException {
         // Create and initialize metadata resolver if no already initialized
         initMetadataResolver();
 
@@ -92,29 +87,75 @@ public class IdPMetadata {
         }
     }
 
+    /**
+     * @return endpoints and certificates of the current metadata
+     * @throws InternalException if the configured entityID is not found in the metadata
+     */
+    public IdPMetadataSnapshot getSnapshot() throws InternalException, ExternalException {
+        IdPMetadataSnapshot current = getCurrentSnapshot();
+        if (current != null) {
+            return current;
+        }
+
+        // Read the update time first, if the metadata changes while resolving the snapshot is rebuilt on next call
+        initMetadataResolver();
+        DateTime lastUpdate = resolver.getLastUpdate();
+
+        EntityDescriptor entityDescriptor = resolveEntityDescriptor();
+        if (entityDescriptor == null) {
+            throw new InternalException("Configured entityID not found in metadata");
+        }
+
+        current = IdPMetadataSnapshot.create(entityDescriptor, lastUpdate);
+        snapshot = current;
+        return current;
+    }
+
+    private IdPMetadataSnapshot getCurrentSnapshot() {
+        // The snapshot is current until the resolver loads new metadata, or a refresh fails and must be retried
+        IdPMetadataSnapshot current = snapshot;
+        AbstractReloadingMetadataResolver currentResolver = resolver;
+        if (current == null || currentResolver == null || currentResolver.isDestroyed() || !currentResolver.wasLastRefreshSuccess()) {
+            return null;
+        }
+        return Objects.equals(current.getLastUpdate(), currentResolver.getLastUpdate()) ? current : null;
+    }
+
+    public String getEntityId() {
+        return entityId;
+    }
+
+    public String getMetadataURL() {
+        return metadataURL;
+    }
+
+    public String getMetadataFilePath() {
+        return metadataFilePath;
+    }
+
     public IDPSSODescriptor getSSODescriptor() throws ExternalException, InternalException {
-        return getEntityDescriptor().getIDPSSODescriptor(SAMLConstants.SAML20P_NS);
+        return getSnapshot().getSSODescriptor();
     }
 
     public X509Certificate getValidX509Certificate(UsageType usageType) throws InternalException, ExternalException {
-        doRevocationCheck();
+        ValidCertificates certificates = getValidCertificates();
 
         X509Certificate result = null;
         if (UsageType.ENCRYPTION.equals(usageType)) {
-            if (validEncryptionCertificates != null && !validEncryptionCertificates.isEmpty()) {
-                result = validEncryptionCertificates.get(0);
+            if (!certificates.encryption.isEmpty()) {
+                result = certificates.encryption.get(0);
             }
         }
         else if (UsageType.SIGNING.equals(usageType)) {
-            if (validSigningCertificates != null && !validSigningCertificates.isEmpty()) {
-                result = validSigningCertificates.get(0);
+            if (!certificates.signing.isEmpty()) {
+                result = certificates.signing.get(0);
             }
         }
 
         // If certificate is not found yet, try the unspecified
         if (result == null) {
-            if (validUnspecifiedCertificates != null && !validUnspecifiedCertificates.isEmpty()) {
-                result = validUnspecifiedCertificates.get(0);
+            if (!certificates.unspecified.isEmpty()) {
+                result = certificates.unspecified.get(0);
             }
         }
 
@@ -122,169 +163,155 @@ public class IdPMetadata {
     }
 
     private List<X509Certificate> getAllX509CertificatesWithUsageType(UsageType usageType) throws InternalException, ExternalException {
-        ArrayList<X509Certificate> certificates = new ArrayList<>();
-
-        // Find X509Cert in Metadata filtered by type
-        org.opensaml.xmlsec.signature.X509Certificate x509Certificate = null;
-
-        IDPSSODescriptor ssoDescriptor = getSSODescriptor();
-        for (KeyDescriptor keyDescriptor : ssoDescriptor.getKeyDescriptors()) {
-            if (Objects.equals(usageType, keyDescriptor.getUse())) {
-                x509Certificate = keyDescriptor.getKeyInfo().getX509Datas().get(0).getX509Certificates().get(0);
-
-                if (x509Certificate != null) {
-                    // Transform opensaml x509 cert --> java x509 cert
-                    byte[] bytes = Base64.decode(x509Certificate.getValue());
-                    ByteArrayInputStream inputStream = new ByteArrayInputStream(bytes);
-                    CertificateFactory instance = null;
-
-                    try {
-                        instance = CertificateFactory.getInstance("X.509");
-                    } catch (CertificateException e) {
-                        throw new InternalException("Could not create factory to parse X509 Certificate", e);
-                    }
-
-                    try {
-                        certificates.add((X509Certificate) instance.generateCertificate(inputStream));
-                    } catch (CertificateException e) {
-                        throw new ExternalException("Could not parse X509 Certificate from Metadata", e);
-                    }
-                }
-            }
-        }
-
-        return certificates;
+        return new ArrayList<>(getSnapshot().getCertificates(usageType));
     }
 
     public SingleLogoutService getLogoutEndpoint() throws ExternalException, InternalException {
-        IDPSSODescriptor ssoDescriptor = getSSODescriptor();
-        for (SingleLogoutService singleLogoutService : ssoDescriptor.getSingleLogoutServices()) {
-            if (SAMLConstants.SAML2_REDIRECT_BINDING_URI.equals(singleLogoutService.getBinding())) {
-                return singleLogoutService;
-            }
+        SingleLogoutService logoutEndpoint = getSnapshot().getLogoutEndpoint();
+        if (logoutEndpoint == null) {
+            throw new ExternalException("Could not find SLO endpoint for Redirect binding in metadata");
         }
-        throw new ExternalException("Could not find SLO endpoint for Redirect binding in metadata");
+        return logoutEndpoint;
     }
 
     public String getLogoutResponseEndpoint() throws InternalException, ExternalException {
-        IDPSSODescriptor idpssoDescriptor = getSSODescriptor();
-
-        for (SingleLogoutService singleLogoutService : idpssoDescriptor.getSingleLogoutServices()) {
-            if (SAMLConstants.SAML2_REDIRECT_BINDING_URI.equals(singleLogoutService.getBinding())) {
-                String responseLocation = singleLogoutService.getResponseLocation();
-                if (responseLocation != null && !responseLocation.isEmpty()) {
-                    return responseLocation;
-                }
-                return singleLogoutService.getLocation();
-            }
+        String logoutResponseEndpoint = getSnapshot().getLogoutResponseEndpoint();
+        if (logoutResponseEndpoint == null) {
+            throw new ExternalException("Unable to find SingleLogoutService with binding HTTPRedirect and an ResponseLocation");
         }
-        throw new ExternalException("Unable to find SingleLogoutService with binding HTTPRedirect and an ResponseLocation");
+        return logoutResponseEndpoint;
     }
 
     public DateTime getLastCRLCheck() {
-        return lastCRLCheck;
+        ValidCertificates certificates = validCertificates.get();
+        return certificates != null ? certificates.checkedAt : null;
     }
 
-    private void doRevocationCheck() throws ExternalException, InternalException {
+    private ValidCertificates getValidCertificates() throws ExternalException, InternalException {
         Configuration config = OIOSAML3Service.getConfig();
-        if (config.isCRLCheckEnabled() || config.isOcspCheckEnabled()) {
-            DateTime lastUpdate = resolver.getLastUpdate();
-
-            if (lastCRLCheck == null || (lastUpdate != null && lastUpdate.isAfter(lastCRLCheck))) {
-                try {
-                    // Encryption
-                    Set<X509Certificate> validEncryptionCertificates = CRLChecker.checkCertificates(getAllX509CertificatesWithUsageType(UsageType.ENCRYPTION), getLastCRLCheck());
-                    this.validEncryptionCertificates.clear();
-                    if (validEncryptionCertificates != null) {
-                        this.validEncryptionCertificates.addAll(validEncryptionCertificates);
-                    }
+        if (!config.isCRLCheckEnabled() && !config.isOcspCheckEnabled()) {
+            // If revocation is disabled, all certificates from the metadata is treated as valid
+            List<X509Certificate> validUnspecified = getAllX509CertificatesWithUsageType(UsageType.UNSPECIFIED);
+            validUnspecified.addAll(getAllX509CertificatesWithUsageType(null));
 
-                    // Signing
-                    Set<X509Certificate> validSigningCertificates = CRLChecker.checkCertificates(getAllX509CertificatesWithUsageType(UsageType.SIGNING), getLastCRLCheck());
-                    this.validSigningCertificates.clear();
-                    if (validSigningCertificates != null) {
-                        this.validSigningCertificates.addAll(validSigningCertificates);
-                    }
+            return new ValidCertificates(getAllX509CertificatesWithUsageType(UsageType.ENCRYPTION),
+                    getAllX509CertificatesWithUsageType(UsageType.SIGNING), validUnspecified, null);
+        }
+
+        ValidCertificates certificates = validCertificates.get();
+        if (certificates == null) {
+            // Nothing has been checked yet, so the first check is awaited
+            try {
+                return startRevocationCheck().join();
+            }
+            catch (CompletionException e) {
+                return new ValidCertificates(Collections.emptyList(), Collections.emptyList(), Collections.emptyList(), null);
+            }
+        }
 
-                    // Unspecified
-                    Set<X509Certificate> validUnspecifiedCertificates = CRLChecker.checkCertificates(getAllX509CertificatesWithUsageType(UsageType.UNSPECIFIED), getLastCRLCheck());
-                    Set<X509Certificate> validNullCertificates = CRLChecker.checkCertificates(getAllX509CertificatesWithUsageType(null), getLastCRLCheck());
-                    this.validUnspecifiedCertificates.clear();
+        DateTime lastUpdate = resolver.getLastUpdate();
+        if (lastUpdate != null && lastUpdate.isAfter(certificates.checkedAt)) {
+            // Keep serving the certificates of the previous metadata until the new metadata has been checked
+            startRevocationCheck();
+        }
 
-                    if (validUnspecifiedCertificates != null) {
-                        this.validUnspecifiedCertificates.addAll(validUnspecifiedCertificates);
-                    }
+        return certificates;
+    }
 
-                    if (validNullCertificates != null) {
-                        this.validUnspecifiedCertificates.addAll(validNullCertificates);
-                    }
+    private synchronized CompletableFuture<ValidCertificates> startRevocationCheck() {
+        if (pendingRevocationCheck == null || pendingRevocationCheck.isDone()) {
+            pendingRevocationCheck = doRevocationCheck();
+        }
+        return pendingRevocationCheck;
+    }
 
-                    lastCRLCheck = DateTime.now();
-                }
-                catch (ExternalException | InternalException | InitializationException e) {
-                    log.warn("CRL check failed", e);
-                    return;
-                }
-            }
+    private CompletableFuture<ValidCertificates> doRevocationCheck() {
+        DateTime checkedAt = DateTime.now();
+        DateTime lastCRLCheck = getLastCRLCheck();
+
+        List<X509Certificate> encryption;
+        List<X509Certificate> signing;
+        List<X509Certificate> unspecified;
+        try {
+            encryption = getAllX509CertificatesWithUsageType(UsageType.ENCRYPTION);
+            signing = getAllX509CertificatesWithUsageType(UsageType.SIGNING);
+            unspecified = getAllX509CertificatesWithUsageType(UsageType.UNSPECIFIED);
+            unspecified.addAll(getAllX509CertificatesWithUsageType(null));
         }
-        else {
-            // If revocation is disabled, all certificates from the metadata is treated as valid
-            validEncryptionCertificates = getAllX509CertificatesWithUsageType(UsageType.ENCRYPTION);
-            validSigningCertificates = getAllX509CertificatesWithUsageType(UsageType.SIGNING);
+        catch (ExternalException | InternalException e) {
+            log.warn("CRL check failed", e);
 
-            List<X509Certificate> validUnspecified = getAllX509CertificatesWithUsageType(UsageType.UNSPECIFIED);
-            validUnspecified.addAll(getAllX509CertificatesWithUsageType(null));
-            validUnspecifiedCertificates = validUnspecified;
+            CompletableFuture<ValidCertificates> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+
+        // Check each certificate once, all of them in parallel
+        Set<X509Certificate> certificates = new LinkedHashSet<>(encryption);
+        certificates.addAll(signing);
+        certificates.addAll(unspecified);
+
+        ExecutorService executor = OIOSAML3Service.getRevocationExecutor();
+        Map<X509Certificate, CompletableFuture<Boolean>> checks = new HashMap<>();
+        for (X509Certificate certificate : certificates) {
+            checks.put(certificate, CompletableFuture.supplyAsync(() -> isValid(certificate, lastCRLCheck), executor));
         }
+
+        return CompletableFuture.allOf(checks.values().toArray(new CompletableFuture[0]))
+                .thenApply(done -> {
+                    ValidCertificates result = new ValidCertificates(filterValid(encryption, checks),
+                            filterValid(signing, checks), filterValid(unspecified, checks), checkedAt);
+                    validCertificates.set(result);
+                    return result;
+                })
+                .whenComplete((result, e) -> {
+                    if (e != null) {
+                        log.warn("CRL check failed", e);
+                    }
+                });
     }
 
-    private void initMetadataResolver() throws InternalException, ExternalException {
-        // If no Resolver exists for this ServiceProvider, create it.
-        if (resolver == null || !resolver.isInitialized()) {
-            // Create Resolver
-            try {
-                Configuration config = OIOSAML3Service.getConfig();
-
-                CloseableHttpClient httpClient;
-                if (config.isSupportSelfSigned()) {
-                    TrustStrategy acceptingTrustStrategy = new TrustSelfSignedStrategy();
-                    SSLContext sslContext = org.apache.http.ssl.SSLContexts.custom().loadTrustMaterial(null, acceptingTrustStrategy).build();
-                    SSLConnectionSocketFactory csf = new SSLConnectionSocketFactory(sslContext, NoopHostnameVerifier.INSTANCE);
-                    httpClient = HttpClients.custom().setSSLSocketFactory(csf).build();
-                } else {
-                    httpClient = HttpClients.createDefault();
-                }
-
-                if (metadataFilePath != null) {
-                    log.debug("MetadataFilePath supplied. Using file based metadata resolver");
-                    resolver = new FilesystemMetadataResolver(ResourceUtil.getResourceAsFile(metadataFilePath));
-                } else {
-                    log.debug("MetadataFilePath not supplied. Using URL based metadata resolver");
-                    resolver = new HTTPMetadataResolver(httpClient, metadataURL);
-                }
-
-                resolver.setId(entityId);
-                resolver.setMinRefreshDelay(1000L * 60 * 60 * config.getIdpMetadataMinRefreshDelay());
-                resolver.setMaxRefreshDelay(1000L * 60 * 60 * config.getIdpMetadataMaxRefreshDelay());
-            } catch (ResolverException | KeyManagementException | NoSuchAlgorithmException | KeyStoreException e) {
-                throw new InternalException("Could not create MetadataResolver", e);
-            }
+    private static boolean isValid(X509Certificate certificate, DateTime lastCRLCheck) {
+        try {
+            return !CRLChecker.checkCertificates(Collections.singletonList(certificate), lastCRLCheck).isEmpty();
+        }
+        catch (ExternalException | InternalException | InitializationException e) {
+            throw new CompletionException(e);
+        }
+    }
 
-            // Create parser pool for parsing metadata
-            BasicParserPool parserPool = new BasicParserPool();
-            resolver.setParserPool(parserPool);
-            try {
-                parserPool.initialize();
-            } catch (ComponentInitializationException e) {
-                throw new InternalException("Could not initialize parser pool", e);
+    private static List<X509Certificate> filterValid(List<X509Certificate> certificates, Map<X509Certificate, CompletableFuture<Boolean>> checks) {
+        List<X509Certificate> valid = new ArrayList<>();
+        for (X509Certificate certificate : certificates) {
+            if (checks.get(certificate).join()) {
+                valid.add(certificate);
             }
+        }
+        return valid;
+    }
 
-            // Initialize and save resolver for future use
-            try {
-                resolver.initialize();
-            } catch (ComponentInitializationException e) {
-                throw new ExternalException("Could not initialize MetadataResolver", e);
-            }
+    private void initMetadataResolver() throws InternalException, ExternalException {
+        // If no Resolver exists for this ServiceProvider, get it. Resolvers are shared by all IdPs in the same metadata
+        AbstractReloadingMetadataResolver current = resolver;
+        if (current == null || !current.isInitialized() || current.isDestroyed()) {
+            resolver = IdPMetadataService.getInstance().getMetadataResolver(metadataURL, metadataFilePath);
+        }
+    }
+
+    /**
+     * Certificates from the metadata that passed revocation checking, published as a whole and never modified
+     */
+    private static final class ValidCertificates {
+        private final List<X509Certificate> encryption;
+        private final List<X509Certificate> signing;
+        private final List<X509Certificate> unspecified;
+        private final DateTime checkedAt;
+
+        private ValidCertificates(List<X509Certificate> encryption, List<X509Certificate> signing, List<X509Certificate> unspecified, DateTime checkedAt) {
+            this.encryption = Collections.unmodifiableList(encryption);
+            this.signing = Collections.unmodifiableList(signing);
+            this.unspecified = Collections.unmodifiableList(unspecified);
+            this.checkedAt = checkedAt;
         }
     }
 }
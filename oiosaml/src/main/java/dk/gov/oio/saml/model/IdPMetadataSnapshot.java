@@ -0,0 +1,172 @@
+package dk.gov.oio.saml.model;
+
+import java.io.ByteArrayInputStream;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.bouncycastle.util.encoders.Base64;
+import org.joda.time.DateTime;
+import org.opensaml.saml.common.xml.SAMLConstants;
+import org.opensaml.saml.saml2.metadata.EntityDescriptor;
+import org.opensaml.saml.saml2.metadata.IDPSSODescriptor;
+import org.opensaml.saml.saml2.metadata.KeyDescriptor;
+import org.opensaml.saml.saml2.metadata.SingleLogoutService;
+import org.opensaml.saml.saml2.metadata.SingleSignOnService;
+import org.opensaml.security.credential.UsageType;
+
+import dk.gov.oio.saml.util.ExternalException;
+import dk.gov.oio.saml.util.InternalException;
+
+/**
+ * Values extracted from one version of the IdP metadata.
+ *
+ * <p>A snapshot is built once each time the metadata resolver loads new metadata and never modified, so it can be read
+ * by any number of threads without locking. {@link IdPMetadata} replaces the whole snapshot when the last update time
+ * of the resolver changes, until then every lookup is a read of a field or a small map.</p>
+ */
+public final class IdPMetadataSnapshot {
+    private final EntityDescriptor entityDescriptor;
+    private final DateTime lastUpdate;
+    private final IDPSSODescriptor ssoDescriptor;
+    private final SingleLogoutService logoutEndpoint;
+    private final String logoutResponseEndpoint;
+    private final Map<String, String> singleSignOnLocations;
+    private final Map<String, SingleLogoutService> singleLogoutServices;
+    private final Map<UsageType, List<X509Certificate>> certificates;
+
+    private IdPMetadataSnapshot(EntityDescriptor entityDescriptor, DateTime lastUpdate, IDPSSODescriptor ssoDescriptor, Map<String, String> singleSignOnLocations, Map<String, SingleLogoutService> singleLogoutServices, Map<UsageType, List<X509Certificate>> certificates) {
+        this.entityDescriptor = entityDescriptor;
+        this.lastUpdate = lastUpdate;
+        this.ssoDescriptor = ssoDescriptor;
+        this.singleSignOnLocations = singleSignOnLocations;
+        this.singleLogoutServices = singleLogoutServices;
+        this.certificates = certificates;
+
+        this.logoutEndpoint = singleLogoutServices.get(SAMLConstants.SAML2_REDIRECT_BINDING_URI);
+        if (logoutEndpoint != null) {
+            String responseLocation = logoutEndpoint.getResponseLocation();
+            this.logoutResponseEndpoint = responseLocation != null && !responseLocation.isEmpty() ? responseLocation : logoutEndpoint.getLocation();
+        }
+        else {
+            this.logoutResponseEndpoint = null;
+        }
+    }
+
+    /**
+     * Extract endpoints and certificates from the entity descriptor
+     *
+     * @param entityDescriptor IdP entity descriptor from the metadata
+     * @param lastUpdate       last update time of the metadata resolver when the entity descriptor was resolved
+     * @return snapshot of the entity descriptor
+     * @throws ExternalException if a certificate in the metadata can not be parsed
+     * @throws InternalException if no certificate factory is available
+     */
+    public static IdPMetadataSnapshot create(EntityDescriptor entityDescriptor, DateTime lastUpdate) throws ExternalException, InternalException {
+        IDPSSODescriptor ssoDescriptor = entityDescriptor.getIDPSSODescriptor(SAMLConstants.SAML20P_NS);
+
+        // The first endpoint in the metadata is used for each binding
+        Map<String, String> singleSignOnLocations = new HashMap<>();
+        Map<String, SingleLogoutService> singleLogoutServices = new HashMap<>();
+        Map<UsageType, List<X509Certificate>> certificates = new HashMap<>();
+
+        if (ssoDescriptor != null) {
+            for (SingleSignOnService singleSignOnService : ssoDescriptor.getSingleSignOnServices()) {
+                if (singleSignOnService.getBinding() != null) {
+                    singleSignOnLocations.putIfAbsent(singleSignOnService.getBinding(), singleSignOnService.getLocation());
+                }
+            }
+
+            for (SingleLogoutService singleLogoutService : ssoDescriptor.getSingleLogoutServices()) {
+                if (singleLogoutService.getBinding() != null) {
+                    singleLogoutServices.putIfAbsent(singleLogoutService.getBinding(), singleLogoutService);
+                }
+            }
+
+            CertificateFactory instance;
+            try {
+                instance = CertificateFactory.getInstance("X.509");
+            } catch (CertificateException e) {
+                throw new InternalException("Could not create factory to parse X509 Certificate", e);
+            }
+
+            for (KeyDescriptor keyDescriptor : ssoDescriptor.getKeyDescriptors()) {
+                // Transform opensaml x509 cert --> java x509 cert
+                org.opensaml.xmlsec.signature.X509Certificate x509Certificate = keyDescriptor.getKeyInfo().getX509Datas().get(0).getX509Certificates().get(0);
+                if (x509Certificate != null) {
+                    try {
+                        X509Certificate certificate = (X509Certificate) instance.generateCertificate(new ByteArrayInputStream(Base64.decode(x509Certificate.getValue())));
+                        certificates.computeIfAbsent(keyDescriptor.getUse(), usageType -> new ArrayList<>()).add(certificate);
+                    } catch (CertificateException e) {
+                        throw new ExternalException("Could not parse X509 Certificate from Metadata", e);
+                    }
+                }
+            }
+        }
+
+        for (Map.Entry<UsageType, List<X509Certificate>> entry : certificates.entrySet()) {
+            entry.setValue(Collections.unmodifiableList(entry.getValue()));
+        }
+
+        return new IdPMetadataSnapshot(entityDescriptor, lastUpdate, ssoDescriptor, Collections.unmodifiableMap(singleSignOnLocations),
+                Collections.unmodifiableMap(singleLogoutServices), Collections.unmodifiableMap(certificates));
+    }
+
+    public EntityDescriptor getEntityDescriptor() {
+        return entityDescriptor;
+    }
+
+    /**
+     * @return last update time of the metadata resolver this snapshot was built for
+     */
+    public DateTime getLastUpdate() {
+        return lastUpdate;
+    }
+
+    public IDPSSODescriptor getSSODescriptor() {
+        return ssoDescriptor;
+    }
+
+    /**
+     * @return SingleLogoutService with Redirect binding, or null if missing
+     */
+    public SingleLogoutService getLogoutEndpoint() {
+        return logoutEndpoint;
+    }
+
+    /**
+     * @return ResponseLocation, or Location if empty, of the SingleLogoutService with Redirect binding, or null if missing
+     */
+    public String getLogoutResponseEndpoint() {
+        return logoutResponseEndpoint;
+    }
+
+    /**
+     * @param binding SAML binding URI
+     * @return Location of the first SingleSignOnService with the binding, or null if missing
+     */
+    public String getSingleSignOnLocation(String binding) {
+        return singleSignOnLocations.get(binding);
+    }
+
+    /**
+     * @param binding SAML binding URI
+     * @return first SingleLogoutService with the binding, or null if missing
+     */
+    public SingleLogoutService getSingleLogoutService(String binding) {
+        return singleLogoutServices.get(binding);
+    }
+
+    /**
+     * @param usageType key usage in the metadata, null for keys without usage
+     * @return certificates with the exact usage, in metadata order
+     */
+    public List<X509Certificate> getCertificates(UsageType usageType) {
+        return certificates.getOrDefault(usageType, Collections.emptyList());
+    }
+}
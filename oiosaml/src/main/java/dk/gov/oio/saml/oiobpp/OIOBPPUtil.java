@@ -1,7 +1,7 @@
 package dk.gov.oio.saml.oiobpp;
 
 import java.io.ByteArrayInputStream;
-import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.Base64;
 
 import javax.xml.bind.JAXBContext;
@@ -22,20 +22,20 @@ import org.xml.sax.SAXNotSupportedException;
 public class OIOBPPUtil {
     private static final Logger log = LoggerFactory.getLogger(OIOBPPUtil.class);
 
+    // Looking up and configuring the factory is the expensive part, so it is done once. The factory is not modified
+    // after creation, and each parse gets its own parser from it.
+    private static final SAXParserFactory saxParserFactory = createSecureSAXParserFactory();
+    private static volatile JAXBContext jaxbContext;
+
     @SuppressWarnings("unchecked")
     public static PrivilegeList parse(String object) {
-        // we accept both base64 encoded input, and "raw" xml-strings
-        try {
-            object = new String(Base64.getDecoder().decode(object.getBytes(Charset.forName("UTF-8"))));
-        }
-        catch (Exception ex) {
-            ; // ignore
+        if (object == null) {
+            return null;
         }
 
         try {
-            JAXBContext context = JAXBContext.newInstance(ObjectFactory.class);
-            Unmarshaller unmarsheller = context.createUnmarshaller();
-            JAXBElement<PrivilegeList> privilegeList = (JAXBElement<PrivilegeList>) unmarsheller.unmarshal(getSecureSource(object));
+            Unmarshaller unmarsheller = getJAXBContext().createUnmarshaller();
+            JAXBElement<PrivilegeList> privilegeList = (JAXBElement<PrivilegeList>) unmarsheller.unmarshal(getSecureSource(toXml(object)));
     
             return privilegeList.getValue();
         }
@@ -45,23 +45,58 @@ public class OIOBPPUtil {
 
         return null;
     }
-    
-    private static Source getSecureSource(String object) throws JAXBException {
+
+    // we accept both base64 encoded input, and "raw" xml-strings
+    private static byte[] toXml(String object) {
+        String trimmed = object.trim();
+        if (trimmed.startsWith("<")) {
+            return trimmed.getBytes(StandardCharsets.UTF_8);
+        }
+
         try {
-            SAXParserFactory spf = getSecureSAXParserFactory();
-            return new SAXSource(spf.newSAXParser().getXMLReader(), new InputSource(new ByteArrayInputStream(object.getBytes(Charset.forName("UTF-8")))));
+            return Base64.getMimeDecoder().decode(trimmed);
+        }
+        catch (IllegalArgumentException ex) {
+            // not base64 either, let the parser report the error
+            return trimmed.getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    // The context is thread safe and expensive to create, unmarshallers are cheap and created per parse
+    private static JAXBContext getJAXBContext() throws JAXBException {
+        JAXBContext context = jaxbContext;
+        if (context == null) {
+            synchronized (OIOBPPUtil.class) {
+                context = jaxbContext;
+                if (context == null) {
+                    context = JAXBContext.newInstance(ObjectFactory.class);
+                    jaxbContext = context;
+                }
+            }
+        }
+        return context;
+    }
+
+    private static Source getSecureSource(byte[] xml) throws JAXBException {
+        try {
+            return new SAXSource(saxParserFactory.newSAXParser().getXMLReader(), new InputSource(new ByteArrayInputStream(xml)));
         }
         catch (Exception ex) {
             throw new JAXBException("Failed to securely unmarshall object", ex);
         }
     }
         
-    private static SAXParserFactory getSecureSAXParserFactory() throws SAXNotRecognizedException, SAXNotSupportedException, ParserConfigurationException {
+    private static SAXParserFactory createSecureSAXParserFactory() {
         SAXParserFactory spf = SAXParserFactory.newInstance();
         spf.setNamespaceAware(true);
-        spf.setFeature("http://xml.org/sax/features/external-general-entities", false);
-        spf.setFeature("http://xml.org/sax/features/external-parameter-entities", false);
-        spf.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+        try {
+            spf.setFeature("http://xml.org/sax/features/external-general-entities", false);
+            spf.setFeature("http://xml.org/sax/features/external-parameter-entities", false);
+            spf.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+        }
+        catch (SAXNotRecognizedException | SAXNotSupportedException | ParserConfigurationException ex) {
+            throw new IllegalStateException("Failed to create secure SAX parser factory", ex);
+        }
 
         return spf;
     }
@@ -0,0 +1,132 @@
+package dk.gov.oio.saml.oiobpp;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable index of a {@link PrivilegeList}, for answering authorization checks without scanning the privilege groups.
+ *
+ * <p>The index is built once from the privilege list, after which every lookup by privilege and scope is a hash
+ * lookup. A privilege granted by several groups for the same scope keeps the constraints of each group, an empty map
+ * meaning the group grants the privilege without constraints. How constraint values, e.g. KLE wildcards, are matched
+ * is left to the application.</p>
+ */
+public final class PrivilegeIndex implements Serializable {
+    private static final long serialVersionUID = 2739468230956123489L;
+    private static final PrivilegeIndex EMPTY = new PrivilegeIndex(Collections.emptyMap(), Collections.emptyMap());
+
+    // privilege -> scope -> constraints of each group granting the privilege in the scope
+    private final Map<String, Map<String, List<Map<String, String>>>> scopesByPrivilege;
+    private final Map<String, Set<String>> privilegesByScope;
+
+    private PrivilegeIndex(Map<String, Map<String, List<Map<String, String>>>> scopesByPrivilege, Map<String, Set<String>> privilegesByScope) {
+        this.scopesByPrivilege = scopesByPrivilege;
+        this.privilegesByScope = privilegesByScope;
+    }
+
+    /**
+     * @param privilegeList parsed privilege list, may be null
+     * @return index of the privilege list, empty if the list is null
+     */
+    public static PrivilegeIndex create(PrivilegeList privilegeList) {
+        if (privilegeList == null || privilegeList.getPrivilegeGroup().isEmpty()) {
+            return EMPTY;
+        }
+
+        Map<String, Map<String, List<Map<String, String>>>> scopesByPrivilege = new HashMap<>();
+        Map<String, Set<String>> privilegesByScope = new HashMap<>();
+
+        for (PrivilegeGroup privilegeGroup : privilegeList.getPrivilegeGroup()) {
+            if (privilegeGroup.getPrivilege() == null) {
+                continue;
+            }
+
+            Map<String, String> constraints = new HashMap<>();
+            for (Constraint constraint : privilegeGroup.getConstraint()) {
+                constraints.put(constraint.getName(), constraint.getValue());
+            }
+            constraints = Collections.unmodifiableMap(constraints);
+
+            String scope = privilegeGroup.getScope();
+            for (String privilege : privilegeGroup.getPrivilege()) {
+                scopesByPrivilege.computeIfAbsent(privilege, p -> new HashMap<>())
+                        .computeIfAbsent(scope, s -> new ArrayList<>())
+                        .add(constraints);
+                privilegesByScope.computeIfAbsent(scope, s -> new HashSet<>()).add(privilege);
+            }
+        }
+
+        for (Map.Entry<String, Map<String, List<Map<String, String>>>> privilegeEntry : scopesByPrivilege.entrySet()) {
+            for (Map.Entry<String, List<Map<String, String>>> scopeEntry : privilegeEntry.getValue().entrySet()) {
+                scopeEntry.setValue(Collections.unmodifiableList(scopeEntry.getValue()));
+            }
+            privilegeEntry.setValue(Collections.unmodifiableMap(privilegeEntry.getValue()));
+        }
+        for (Map.Entry<String, Set<String>> scopeEntry : privilegesByScope.entrySet()) {
+            scopeEntry.setValue(Collections.unmodifiableSet(scopeEntry.getValue()));
+        }
+
+        return new PrivilegeIndex(Collections.unmodifiableMap(scopesByPrivilege), Collections.unmodifiableMap(privilegesByScope));
+    }
+
+    /**
+     * @param privilege privilege URI
+     * @return true if the privilege is granted in any scope
+     */
+    public boolean hasPrivilege(String privilege) {
+        return scopesByPrivilege.containsKey(privilege);
+    }
+
+    /**
+     * @param privilege privilege URI
+     * @param scope     scope, e.g. urn:dk:gov:saml:cvrNumberIdentifier:12345678, or null for groups without scope
+     * @return true if the privilege is granted in the scope, with or without constraints
+     */
+    public boolean hasPrivilege(String privilege, String scope) {
+        Map<String, List<Map<String, String>>> scopes = scopesByPrivilege.get(privilege);
+        return scopes != null && scopes.containsKey(scope);
+    }
+
+    /**
+     * @param privilege privilege URI
+     * @return scopes the privilege is granted in
+     */
+    public Set<String> getScopes(String privilege) {
+        Map<String, List<Map<String, String>>> scopes = scopesByPrivilege.get(privilege);
+        return scopes != null ? scopes.keySet() : Collections.emptySet();
+    }
+
+    /**
+     * @param scope scope, or null for groups without scope
+     * @return privileges granted in the scope
+     */
+    public Set<String> getPrivileges(String scope) {
+        return privilegesByScope.getOrDefault(scope, Collections.emptySet());
+    }
+
+    /**
+     * @param privilege privilege URI
+     * @param scope     scope, or null for groups without scope
+     * @return constraints by name for each group granting the privilege in the scope, empty if not granted
+     */
+    public List<Map<String, String>> getConstraints(String privilege, String scope) {
+        Map<String, List<Map<String, String>>> scopes = scopesByPrivilege.get(privilege);
+        if (scopes == null) {
+            return Collections.emptyList();
+        }
+        return scopes.getOrDefault(scope, Collections.emptyList());
+    }
+
+    /**
+     * @return true if no privileges are granted
+     */
+    public boolean isEmpty() {
+        return scopesByPrivilege.isEmpty();
+    }
+}
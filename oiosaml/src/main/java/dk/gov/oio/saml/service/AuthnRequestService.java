@@ -26,8 +26,6 @@ import org.opensaml.saml.common.messaging.context.SAMLEndpointContext;
 import org.opensaml.saml.common.messaging.context.SAMLPeerEntityContext;
 import org.opensaml.saml.common.xml.SAMLConstants;
 import org.opensaml.saml.saml2.binding.decoding.impl.HTTPRedirectDeflateDecoder;
-import org.opensaml.saml.saml2.metadata.EntityDescriptor;
-import org.opensaml.saml.saml2.metadata.IDPSSODescriptor;
 import org.opensaml.saml.saml2.metadata.SingleSignOnService;
 import org.opensaml.xmlsec.SignatureSigningParameters;
 import org.opensaml.xmlsec.context.SecurityParametersContext;
@@ -37,7 +35,6 @@ import dk.gov.oio.saml.util.InternalException;
 import dk.gov.oio.saml.util.SamlHelper;
 import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
 import net.shibboleth.utilities.java.support.security.RandomIdentifierGenerationStrategy;
-import net.shibboleth.utilities.java.support.xml.BasicParserPool;
 
 public class AuthnRequestService {
     private static final Logger log = LoggerFactory.getLogger(AuthnRequestService.class);
@@ -56,10 +53,7 @@ public class AuthnRequestService {
         HTTPRedirectDeflateDecoder decoder = new HTTPRedirectDeflateDecoder();
             decoder.setHttpServletRequest(request);
 
-            BasicParserPool parserPool = new BasicParserPool();
-            parserPool.initialize();
-
-            decoder.setParserPool(parserPool);
+            decoder.setParserPool(OIOSAML3Service.getParserPool());
             decoder.initialize();
             decoder.decode();
 
@@ -211,15 +205,11 @@ public class AuthnRequestService {
     }
 
     private String getDestination() throws ExternalException, InternalException {
-        EntityDescriptor metadata = IdPMetadataService.getInstance().getIdPMetadata().getEntityDescriptor();
-        IDPSSODescriptor idpssoDescriptor = metadata.getIDPSSODescriptor(SAMLConstants.SAML20P_NS);
-
-        for (SingleSignOnService singleSignOnService : idpssoDescriptor.getSingleSignOnServices()) {
-            if (SAMLConstants.SAML2_REDIRECT_BINDING_URI.equals(singleSignOnService.getBinding())) {
-                return singleSignOnService.getLocation();
-            }
+        String destination = IdPMetadataService.getInstance().getIdPMetadata().getSnapshot().getSingleSignOnLocation(SAMLConstants.SAML2_REDIRECT_BINDING_URI);
+        if (destination == null) {
+            throw new ExternalException("Could not find SSO endpoint for Redirect binding in metadata");
         }
 
-        throw new ExternalException("Could not find SSO endpoint for Redirect binding in metadata");
+        return destination;
     }
 }
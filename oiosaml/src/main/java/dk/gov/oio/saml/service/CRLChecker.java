@@ -1,11 +1,11 @@
 package dk.gov.oio.saml.service;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.URL;
+import java.net.URI;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.NoSuchAlgorithmException;
-import java.security.Security;
 import java.security.cert.CRLException;
 import java.security.cert.CertPath;
 import java.security.cert.CertPathValidator;
@@ -13,18 +13,19 @@ import java.security.cert.CertPathValidatorException;
 import java.security.cert.CertificateException;
 import java.security.cert.CertificateFactory;
 import java.security.cert.PKIXParameters;
+import java.security.cert.PKIXRevocationChecker;
 import java.security.cert.TrustAnchor;
 import java.security.cert.X509CRL;
 import java.security.cert.X509CRLEntry;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -51,7 +52,8 @@ import dk.gov.oio.saml.util.InternalException;
 public class CRLChecker {
     private static final Logger log = LoggerFactory.getLogger(CRLChecker.class);
     private static final String AUTH_INFO_ACCESS = Extension.authorityInfoAccess.getId();
-    private static Map<String, X509Certificate> certificateMap = new HashMap<String, X509Certificate>();
+    private static Map<String, X509Certificate> certificateMap = new ConcurrentHashMap<String, X509Certificate>();
+    private static final RevocationCache revocationCache = new RevocationCache();
     
     public static Set<X509Certificate> checkCertificates(List<X509Certificate> x509Certificates, DateTime lastCRLCheck) throws ExternalException, InternalException, InitializationException {
         Set<X509Certificate> result = new HashSet<>();
@@ -125,23 +127,37 @@ public class CRLChecker {
             throw new RuntimeException("CA Certificate for OCSP check could not be retrieved!");
         }
 
+        String certId = RevocationCache.getCertId(certificate, issuer);
+        Boolean cachedResult = revocationCache.getOcspResult(certId);
+        if (cachedResult != null) {
+            log.debug("Using cached OCSP result for certificate {}", certificate.getSubjectDN());
+            return cachedResult;
+        }
+
+        if (revocationCache.isFailing(ocspServer)) {
+            throw new RuntimeException("OCSP responder " + ocspServer + " failed recently, skipping OCSP check");
+        }
+
         List<X509Certificate> certList = new ArrayList<X509Certificate>();
         certList.add(certificate);
 
         CertificateFactory cf = CertificateFactory.getInstance("X.509");
         CertPath cp = cf.generateCertPath(certList);
 
-        Security.setProperty("ocsp.enable", "true");
-        Security.setProperty("ocsp.responderURL", ocspServer);
-
         boolean revoked;
         try {
             TrustAnchor anchor = new TrustAnchor(issuer, null);
             PKIXParameters params = new PKIXParameters(Collections.singleton(anchor));
             params.setRevocationEnabled(true);
 
-            // Validate and obtain results
+            // Use the responder for this certificate, without changing the global OCSP security properties. As with
+            // ocsp.enable, the JDK falls back to CRL checking if the OCSP check fails
             CertPathValidator cpv = CertPathValidator.getInstance("PKIX");
+            PKIXRevocationChecker revocationChecker = (PKIXRevocationChecker) cpv.getRevocationChecker();
+            revocationChecker.setOcspResponder(URI.create(ocspServer));
+            params.addCertPathChecker(revocationChecker);
+
+            // Validate and obtain results
             cpv.validate(cp, params);
 
             log.debug("Certificate successfully validated during OCSP check.");
@@ -154,10 +170,18 @@ public class CRLChecker {
             }
             else {
                 log.warn("Validation failure, cert[{}] : {}", cpve.getIndex(), cpve.getMessage());
+                if (cpve.getReason() == CertPathValidatorException.BasicReason.UNDETERMINED_REVOCATION_STATUS) {
+                    revocationCache.putFailure(ocspServer, getRevocationFailureTtlMillis());
+                }
                 throw cpve;
             }
         }
 
+        // Revocation is final, so a revoked result is kept for the remaining lifetime of the certificate
+        revocationCache.putOcspResult(certId, !revoked, revoked ?
+                certificate.getNotAfter().getTime() :
+                System.currentTimeMillis() + getRevocationCacheTtlMillis());
+
         return (!revoked);
     }
 
@@ -204,7 +228,7 @@ public class CRLChecker {
         
         try {
             CertificateFactory factory = CertificateFactory.getInstance("X.509");
-            try (InputStream is = new URL(url).openStream()) {
+            try (InputStream is = openStream(url)) {
                 X509Certificate certificate = (X509Certificate) factory.generateCertificate(is);
                 if (certificate != null) {
                     certificateMap.put(url, certificate);
@@ -307,26 +331,55 @@ public class CRLChecker {
             throw new RuntimeException("No CRL url could be found");
         }
 
-        URL u = new URL(url);
-        try (InputStream is = u.openStream()) {
-            CertificateFactory cf = CertificateFactory.getInstance("X.509");
-            X509CRL crl = (X509CRL) cf.generateCRL(is);
-
-            log.debug("CRL for {}: {}", url, crl);
+        X509CRL crl = revocationCache.getCRL(url);
+        if (crl == null) {
+            if (revocationCache.isFailing(url)) {
+                throw new RuntimeException("CRL endpoint " + url + " failed recently, skipping CRL check");
+            }
 
-            X509CRLEntry revokedCertificate = crl.getRevokedCertificate(certificate.getSerialNumber());
-            if (revokedCertificate != null) {
-                log.warn("Certificate found in revocation list " + certificate.getSubjectDN());
-                revoked = true;
+            try (InputStream is = openStream(url)) {
+                CertificateFactory cf = CertificateFactory.getInstance("X.509");
+                crl = (X509CRL) cf.generateCRL(is);
             }
-            else {
-                revoked = false;
+            catch (IOException | CRLException ex) {
+                revocationCache.putFailure(url, getRevocationFailureTtlMillis());
+                throw ex;
             }
+
+            log.debug("CRL for {}: {}", url, crl);
+            revocationCache.putCRL(url, crl, getRevocationCacheTtlMillis());
+        }
+
+        X509CRLEntry revokedCertificate = crl.getRevokedCertificate(certificate.getSerialNumber());
+        if (revokedCertificate != null) {
+            log.warn("Certificate found in revocation list " + certificate.getSubjectDN());
+            revoked = true;
+        }
+        else {
+            revoked = false;
         }
 
         return !revoked;
     }
 
+    private static InputStream openStream(String url) throws IOException {
+        int timeout = OIOSAML3Service.getConfig().getRevocationTimeout() * 1000;
+
+        return new ByteArrayInputStream(OIOSAML3Service.getHttpClientService().get(url, timeout));
+    }
+
+    private static long getRevocationCacheTtlMillis() {
+        return OIOSAML3Service.getConfig().getRevocationCacheTtl() * 1000L;
+    }
+
+    private static long getRevocationFailureTtlMillis() {
+        return OIOSAML3Service.getConfig().getRevocationFailureTtl() * 1000L;
+    }
+
+    static RevocationCache getRevocationCache() {
+        return revocationCache;
+    }
+
     private static String getCRLUrl(X509Certificate certificate) throws IOException {
         log.debug("Attempting to extract distribution point from certificate {}", certificate.getSubjectDN());
 
@@ -0,0 +1,240 @@
+package dk.gov.oio.saml.service;
+
+import java.io.IOException;
+import java.security.KeyManagementException;
+import java.security.KeyStoreException;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.SSLContext;
+
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.NoopHostnameVerifier;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.conn.ssl.TrustSelfSignedStrategy;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpCoreContext;
+import org.apache.http.ssl.SSLContexts;
+import org.apache.http.util.EntityUtils;
+import org.opensaml.core.config.InitializationException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import dk.gov.oio.saml.config.Configuration;
+import dk.gov.oio.saml.util.StringUtil;
+
+/**
+ * Outbound HTTP for OIOSAML, i.e. IdP metadata, CRLs and intermediate CA certificates.
+ *
+ * <p>All calls share one pooled client with per-host connection limits, connect and read timeouts, bounded keep-alive
+ * and an optional proxy. Requests and responses are counted per destination host, see {@link #getMetrics()}.</p>
+ */
+public class HttpClientService {
+    private static final Logger log = LoggerFactory.getLogger(HttpClientService.class);
+    private static final String REQUEST_START = HttpClientService.class.getName() + ".start";
+
+    private final CloseableHttpClient httpClient;
+    private final RequestConfig requestConfig;
+    private final Map<String, DestinationMetrics> metrics = new ConcurrentHashMap<>();
+
+    public HttpClientService(Configuration config) throws InitializationException {
+        log.debug("Configure HTTP client service: '{}'", config);
+
+        if (null == config) {
+            throw new InitializationException("Cannot create HTTP client service, missing configuration");
+        }
+
+        SSLConnectionSocketFactory sslSocketFactory;
+        try {
+            if (config.isSupportSelfSigned()) {
+                SSLContext sslContext = SSLContexts.custom().loadTrustMaterial(null, new TrustSelfSignedStrategy()).build();
+                sslSocketFactory = new SSLConnectionSocketFactory(sslContext, NoopHostnameVerifier.INSTANCE);
+            }
+            else {
+                sslSocketFactory = SSLConnectionSocketFactory.getSystemSocketFactory();
+            }
+        }
+        catch (KeyManagementException | NoSuchAlgorithmException | KeyStoreException e) {
+            throw new InitializationException("Cannot create SSL context for outbound HTTP", e);
+        }
+
+        Registry<ConnectionSocketFactory> socketFactoryRegistry = RegistryBuilder.<ConnectionSocketFactory>create()
+                .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                .register("https", sslSocketFactory)
+                .build();
+
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(socketFactoryRegistry);
+        connectionManager.setMaxTotal(config.getHttpMaxConnections());
+        connectionManager.setDefaultMaxPerRoute(config.getHttpMaxConnectionsPerHost());
+        connectionManager.setValidateAfterInactivity(2000);
+
+        requestConfig = RequestConfig.custom()
+                .setConnectTimeout(config.getHttpConnectTimeout() * 1000)
+                .setConnectionRequestTimeout(config.getHttpConnectTimeout() * 1000)
+                .setSocketTimeout(config.getHttpReadTimeout() * 1000)
+                .build();
+
+        // Keep connections no longer than the server allows, and never longer than configured
+        long maxKeepAliveMillis = config.getHttpKeepAlive() * 1000L;
+        HttpClientBuilder builder = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .setKeepAliveStrategy((response, context) -> {
+                    long keepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+                    return keepAlive > 0 ? Math.min(keepAlive, maxKeepAliveMillis) : maxKeepAliveMillis;
+                })
+                .evictExpiredConnections()
+                .evictIdleConnections(config.getHttpKeepAlive(), TimeUnit.SECONDS)
+                .addInterceptorLast((HttpRequest request, HttpContext context) -> {
+                    context.setAttribute(REQUEST_START, System.nanoTime());
+                    getDestinationMetrics(context).requests.incrementAndGet();
+                })
+                .addInterceptorLast((HttpResponse response, HttpContext context) -> {
+                    DestinationMetrics destinationMetrics = getDestinationMetrics(context);
+                    destinationMetrics.responses.incrementAndGet();
+                    if (response.getStatusLine().getStatusCode() >= 400) {
+                        destinationMetrics.errorResponses.incrementAndGet();
+                    }
+
+                    Object start = context.getAttribute(REQUEST_START);
+                    if (start instanceof Long) {
+                        destinationMetrics.responseNanos.addAndGet(System.nanoTime() - (Long) start);
+                    }
+                });
+
+        if (StringUtil.isNotEmpty(config.getHttpProxy())) {
+            builder.setProxy(HttpHost.create(config.getHttpProxy()));
+        }
+        else {
+            builder.useSystemProperties();
+        }
+
+        httpClient = builder.build();
+    }
+
+    /**
+     * @return shared client, must not be closed by the caller
+     */
+    public CloseableHttpClient getHttpClient() {
+        return httpClient;
+    }
+
+    /**
+     * Download a resource with a GET request
+     *
+     * @param url           resource to download
+     * @param timeoutMillis connect and read timeout in milliseconds, overriding the configured timeouts
+     * @return response body
+     * @throws IOException if the request fails, or the response status is not 200
+     */
+    public byte[] get(String url, int timeoutMillis) throws IOException {
+        HttpGet get = new HttpGet(url);
+        get.setConfig(RequestConfig.copy(requestConfig)
+                .setConnectTimeout(timeoutMillis)
+                .setConnectionRequestTimeout(timeoutMillis)
+                .setSocketTimeout(timeoutMillis)
+                .build());
+
+        try (CloseableHttpResponse response = httpClient.execute(get)) {
+            int status = response.getStatusLine().getStatusCode();
+            if (status != 200) {
+                EntityUtils.consumeQuietly(response.getEntity());
+                throw new IOException("Unexpected status " + status + " from " + url);
+            }
+            if (response.getEntity() == null) {
+                throw new IOException("Empty response from " + url);
+            }
+            return EntityUtils.toByteArray(response.getEntity());
+        }
+    }
+
+    /**
+     * @return metrics by destination host, e.g. https://idp.example.com:443
+     */
+    public Map<String, DestinationMetrics> getMetrics() {
+        return Collections.unmodifiableMap(metrics);
+    }
+
+    /**
+     * Close the client and all pooled connections
+     */
+    public void close() {
+        try {
+            httpClient.close();
+        }
+        catch (IOException e) {
+            log.warn("Failed to close HTTP client", e);
+        }
+    }
+
+    private DestinationMetrics getDestinationMetrics(HttpContext context) {
+        HttpHost targetHost = HttpCoreContext.adapt(context).getTargetHost();
+        String destination = targetHost != null ? targetHost.toURI() : "unknown";
+
+        return metrics.computeIfAbsent(destination, d -> new DestinationMetrics());
+    }
+
+    /**
+     * Counters for one destination host
+     */
+    public static final class DestinationMetrics {
+        private final AtomicLong requests = new AtomicLong();
+        private final AtomicLong responses = new AtomicLong();
+        private final AtomicLong errorResponses = new AtomicLong();
+        private final AtomicLong responseNanos = new AtomicLong();
+
+        /**
+         * @return number of requests sent, including retries
+         */
+        public long getRequests() {
+            return requests.get();
+        }
+
+        /**
+         * @return number of responses received
+         */
+        public long getResponses() {
+            return responses.get();
+        }
+
+        /**
+         * @return number of responses with status 400 or above
+         */
+        public long getErrorResponses() {
+            return errorResponses.get();
+        }
+
+        /**
+         * @return number of requests without a response, i.e. failed or still in progress
+         */
+        public long getFailures() {
+            return Math.max(0, requests.get() - responses.get());
+        }
+
+        /**
+         * @return average milliseconds from sending a request until its response headers were received
+         */
+        public long getAverageResponseMillis() {
+            long count = responses.get();
+            return count > 0 ? TimeUnit.NANOSECONDS.toMillis(responseNanos.get() / count) : 0;
+        }
+    }
+}
@@ -1,16 +1,71 @@
 package dk.gov.oio.saml.service;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Timer;
+import java.util.concurrent.ConcurrentHashMap;
 
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.params.HttpParams;
+import org.apache.http.protocol.HttpContext;
+import org.bouncycastle.util.encoders.Hex;
+import org.joda.time.DateTime;
+import org.opensaml.saml.metadata.resolver.filter.impl.SignatureValidationFilter;
+import org.opensaml.saml.metadata.resolver.impl.AbstractReloadingMetadataResolver;
+import org.opensaml.saml.metadata.resolver.impl.FileBackedHTTPMetadataResolver;
+import org.opensaml.saml.metadata.resolver.impl.FilesystemMetadataResolver;
+import org.opensaml.saml.metadata.resolver.impl.HTTPMetadataResolver;
+import org.opensaml.saml.saml2.metadata.EntityDescriptor;
 import org.opensaml.saml.saml2.metadata.SingleLogoutService;
+import org.opensaml.security.credential.impl.StaticCredentialResolver;
+import org.opensaml.security.x509.BasicX509Credential;
+import org.opensaml.xmlsec.config.impl.DefaultSecurityConfigurationBootstrap;
+import org.opensaml.xmlsec.signature.support.SignatureTrustEngine;
+import org.opensaml.xmlsec.signature.support.impl.ExplicitKeySignatureTrustEngine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import dk.gov.oio.saml.config.Configuration;
 import dk.gov.oio.saml.model.IdPMetadata;
 import dk.gov.oio.saml.util.ExternalException;
 import dk.gov.oio.saml.util.InternalException;
+import dk.gov.oio.saml.util.ResourceUtil;
+import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
+import net.shibboleth.utilities.java.support.resolver.ResolverException;
 
+/**
+ * Registry of the IdPs known by the service provider.
+ *
+ * <p>IdPs are found by entityID, or by the SHA-1 hash of the entityID used as SourceID in SAML artifacts. The
+ * SourceIDs of all entities in a metadata source are indexed when its resolver has loaded new metadata. All IdPs
+ * described by the same metadata, e.g. an aggregate metadata document with many entities, share one metadata resolver.
+ * All resolvers share the HTTP client of {@link HttpClientService}, the parser pool of OIOSAML and one refresh timer.
+ * Only IdPs that are actually used get an {@link IdPMetadata} with its own snapshot of endpoints and certificates.</p>
+ *
+ * <p>The HTTP resolver sends If-None-Match/If-Modified-Since on refresh and skips parsing when the IdP answers 304. If a
+ * backup file is configured the last fetched metadata is kept on disk and used at startup, and if a signing certificate
+ * is configured the signature is verified each time changed metadata is parsed.</p>
+ */
 public class IdPMetadataService {
+    private static final Logger log = LoggerFactory.getLogger(IdPMetadataService.class);
+    private static final String FILE_SOURCE_PREFIX = "file:";
+
+    // Resolvers outlive a reinitialization of OIOSAML, so they always use the client of the current HttpClientService
+    private static final CloseableHttpClient CURRENT_HTTP_CLIENT = new CurrentHttpClient();
 
     // Single instance
     private static IdPMetadataService singleInstance = new IdPMetadataService();
@@ -20,21 +75,78 @@ public class IdPMetadataService {
     }
 
     // Metadata Service
-    private Map<String, IdPMetadata> identityProviders = new HashMap<>();
+    private Map<String, IdPMetadata> identityProviders = new ConcurrentHashMap<>();
+    private Map<String, SourceIds> sourceIdsBySource = new ConcurrentHashMap<>();
+
+    // Metadata resolvers by metadata URL or file, and the resources they share
+    private Map<String, AbstractReloadingMetadataResolver> metadataResolvers = new ConcurrentHashMap<>();
+    private Timer refreshTimer;
+
+    public synchronized void clear(String entityId) {
+        IdPMetadata idPMetadata = identityProviders.remove(entityId);
+        if (idPMetadata != null) {
+            String source = getMetadataSource(idPMetadata.getMetadataURL(), idPMetadata.getMetadataFilePath());
 
-    public void clear(String entityId) {
-        identityProviders.remove(entityId);
+            // Other IdPs described by the same metadata keep using the resolver
+            for (IdPMetadata other : identityProviders.values()) {
+                if (Objects.equals(source, getMetadataSource(other.getMetadataURL(), other.getMetadataFilePath()))) {
+                    return;
+                }
+            }
+
+            destroyMetadataResolver(source);
+        }
     }
 
     public void clearAll() {
         identityProviders.clear();
+
+        for (String source : new ArrayList<>(metadataResolvers.keySet())) {
+            destroyMetadataResolver(source);
+        }
     }
 
     public IdPMetadata getIdPMetadata() throws ExternalException, InternalException {
-        // This method is needed since we only have one IdP functionality for now.
         Configuration config = OIOSAML3Service.getConfig();
-        
-        return getIdPMetadata(config.getIdpEntityID(), config.getIdpMetadataUrl(), config.getIdpMetadataFile());
+
+        return getIdPMetadata(config.getIdpEntityID());
+    }
+
+    /**
+     * @param entityId entityID of an IdP in the configured metadata
+     * @return metadata of the IdP
+     */
+    public IdPMetadata getIdPMetadata(String entityId) throws ExternalException, InternalException {
+        Configuration config = OIOSAML3Service.getConfig();
+
+        return getIdPMetadata(entityId, config.getIdpMetadataUrl(), config.getIdpMetadataFile());
+    }
+
+    /**
+     * @param sourceId SourceID from a SAML artifact, the SHA-1 hash of the entityID of the issuer
+     * @return metadata of the IdP, or null if no entity in the configured or already loaded metadata has the SourceID
+     */
+    public IdPMetadata getIdPMetadataBySourceId(byte[] sourceId) throws InternalException, ExternalException {
+        String key = Hex.toHexString(sourceId);
+
+        // Load the configured metadata, the IdP may not have been used yet
+        Configuration config = OIOSAML3Service.getConfig();
+        if (getMetadataSource(config.getIdpMetadataUrl(), config.getIdpMetadataFile()) != null) {
+            getMetadataResolver(config.getIdpMetadataUrl(), config.getIdpMetadataFile());
+        }
+
+        for (Map.Entry<String, AbstractReloadingMetadataResolver> entry : metadataResolvers.entrySet()) {
+            String source = entry.getKey();
+            String entityId = getEntityIdsBySourceId(source, entry.getValue()).get(key);
+            if (entityId != null) {
+                if (source.startsWith(FILE_SOURCE_PREFIX)) {
+                    return getIdPMetadata(entityId, null, source.substring(FILE_SOURCE_PREFIX.length()));
+                }
+                return getIdPMetadata(entityId, source, null);
+            }
+        }
+
+        return null;
     }
 
     public SingleLogoutService getLogoutEndpoint() throws InternalException, ExternalException {
@@ -45,10 +157,54 @@ public class IdPMetadataService {
         return getIdPMetadata().getLogoutResponseEndpoint();
     }
 
+    /**
+     * Get the resolver of the metadata URL or file, creating it the first time the metadata is used
+     *
+     * @param metadataURL      URL of the metadata, used if no file is given
+     * @param metadataFilePath file containing the metadata
+     * @return initialized resolver, shared by all IdPs in the metadata
+     */
+    public AbstractReloadingMetadataResolver getMetadataResolver(String metadataURL, String metadataFilePath) throws InternalException, ExternalException {
+        String source = getMetadataSource(metadataURL, metadataFilePath);
+        if (source == null) {
+            throw new InternalException("Neither IdP metadata URL nor file is configured");
+        }
+
+        AbstractReloadingMetadataResolver resolver = metadataResolvers.get(source);
+        if (resolver == null || resolver.isDestroyed()) {
+            resolver = createMetadataResolver(source, metadataURL, metadataFilePath);
+        }
+
+        return resolver;
+    }
+
+    /**
+     * @param entityId entityID of an IdP
+     * @return SHA-1 hash of the entityID, as used for SourceID in SAML artifacts
+     */
+    public static byte[] getSourceId(String entityId) {
+        try {
+            return MessageDigest.getInstance("SHA-1").digest(entityId.getBytes(StandardCharsets.UTF_8));
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is not supported", e);
+        }
+    }
+
     private IdPMetadata getIdPMetadata(String idpEntityID, String idpMetadataURL, String idpMetadataFilePath) throws InternalException, ExternalException {
         IdPMetadata idPMetadata = identityProviders.get(idpEntityID);
 
         // If IdP Metadata has not been fetched before, create object
+        if (idPMetadata == null) {
+            idPMetadata = createIdPMetadata(idpEntityID, idpMetadataURL, idpMetadataFilePath);
+        }
+
+        return idPMetadata;
+    }
+
+    private synchronized IdPMetadata createIdPMetadata(String idpEntityID, String idpMetadataURL, String idpMetadataFilePath) throws InternalException, ExternalException {
+        // Another thread may have created the object while this thread waited
+        IdPMetadata idPMetadata = identityProviders.get(idpEntityID);
         if (idPMetadata == null) {
             idPMetadata = new IdPMetadata(idpEntityID, idpMetadataURL, idpMetadataFilePath);
             identityProviders.put(idpEntityID, idPMetadata);
@@ -56,4 +212,156 @@ public class IdPMetadataService {
 
         return idPMetadata;
     }
-}
\ No newline at end of file
+
+    private synchronized AbstractReloadingMetadataResolver createMetadataResolver(String source, String metadataURL, String metadataFilePath) throws InternalException, ExternalException {
+        // Another thread may have created the resolver while this thread waited
+        AbstractReloadingMetadataResolver resolver = metadataResolvers.get(source);
+        if (resolver != null && !resolver.isDestroyed()) {
+            return resolver;
+        }
+
+        // Create Resolver
+        try {
+            Configuration config = OIOSAML3Service.getConfig();
+
+            if (metadataFilePath != null) {
+                log.debug("MetadataFilePath supplied. Using file based metadata resolver");
+                resolver = new FilesystemMetadataResolver(getRefreshTimer(), ResourceUtil.getResourceAsFile(metadataFilePath));
+            } else if (config.getIdpMetadataBackupFile() != null) {
+                log.debug("MetadataFilePath not supplied. Using URL based metadata resolver with backup file {}", config.getIdpMetadataBackupFile());
+
+                // Start from the backup file and refresh in the background, so startup does not depend on the IdP
+                FileBackedHTTPMetadataResolver fileBackedResolver = new FileBackedHTTPMetadataResolver(getRefreshTimer(), CURRENT_HTTP_CLIENT, metadataURL, config.getIdpMetadataBackupFile());
+                fileBackedResolver.setInitializeFromBackupFile(true);
+                fileBackedResolver.setFailFastInitialization(false);
+                resolver = fileBackedResolver;
+            } else {
+                log.debug("MetadataFilePath not supplied. Using URL based metadata resolver");
+                resolver = new HTTPMetadataResolver(getRefreshTimer(), CURRENT_HTTP_CLIENT, metadataURL);
+            }
+
+            resolver.setId(source);
+            resolver.setMinRefreshDelay(1000L * 60 * 60 * config.getIdpMetadataMinRefreshDelay());
+            resolver.setMaxRefreshDelay(1000L * 60 * 60 * config.getIdpMetadataMaxRefreshDelay());
+
+            // Filters only run when new metadata is parsed, not when the document is unchanged
+            if (config.getIdpMetadataSigningCertificate() != null) {
+                resolver.setMetadataFilter(createSignatureValidationFilter(config.getIdpMetadataSigningCertificate()));
+            }
+        } catch (ResolverException e) {
+            throw new InternalException("Could not create MetadataResolver", e);
+        }
+
+        resolver.setParserPool(OIOSAML3Service.getParserPool());
+
+        // Initialize and save resolver for future use
+        try {
+            resolver.initialize();
+        } catch (ComponentInitializationException e) {
+            throw new ExternalException("Could not initialize MetadataResolver", e);
+        }
+
+        metadataResolvers.put(source, resolver);
+        return resolver;
+    }
+
+    private Map<String, String> getEntityIdsBySourceId(String source, AbstractReloadingMetadataResolver resolver) {
+        // Read the update time first, if the metadata changes while indexing the index is rebuilt on next call
+        DateTime lastUpdate = resolver.getLastUpdate();
+
+        SourceIds sourceIds = sourceIdsBySource.get(source);
+        if (sourceIds == null || !Objects.equals(sourceIds.lastUpdate, lastUpdate)) {
+            Map<String, String> entityIds = new HashMap<>();
+            for (EntityDescriptor entityDescriptor : resolver) {
+                entityIds.put(Hex.toHexString(getSourceId(entityDescriptor.getEntityID())), entityDescriptor.getEntityID());
+            }
+
+            sourceIds = new SourceIds(lastUpdate, entityIds);
+            sourceIdsBySource.put(source, sourceIds);
+        }
+
+        return sourceIds.entityIds;
+    }
+
+    private synchronized void destroyMetadataResolver(String source) {
+        sourceIdsBySource.remove(source);
+
+        AbstractReloadingMetadataResolver resolver = metadataResolvers.remove(source);
+        if (resolver != null) {
+            resolver.destroy();
+        }
+    }
+
+    private SignatureValidationFilter createSignatureValidationFilter(String certificateLocation) throws InternalException {
+        X509Certificate certificate;
+        try (InputStream inputStream = ResourceUtil.getResourceAsStream(certificateLocation)) {
+            certificate = (X509Certificate) CertificateFactory.getInstance("X.509").generateCertificate(inputStream);
+        } catch (IOException | CertificateException e) {
+            throw new InternalException("Could not read IdP metadata signing certificate: " + certificateLocation, e);
+        }
+
+        SignatureTrustEngine trustEngine = new ExplicitKeySignatureTrustEngine(
+                new StaticCredentialResolver(new BasicX509Credential(certificate)),
+                DefaultSecurityConfigurationBootstrap.buildBasicInlineKeyInfoCredentialResolver());
+
+        SignatureValidationFilter filter = new SignatureValidationFilter(trustEngine);
+        filter.setRequireSignedRoot(true);
+        return filter;
+    }
+
+    private Timer getRefreshTimer() {
+        if (refreshTimer == null) {
+            refreshTimer = new Timer("oiosaml-metadata-refresh", true);
+        }
+        return refreshTimer;
+    }
+
+    private static String getMetadataSource(String metadataURL, String metadataFilePath) {
+        return metadataFilePath != null ? FILE_SOURCE_PREFIX + metadataFilePath : metadataURL;
+    }
+
+    /**
+     * HTTP client forwarding to the client of the current {@link HttpClientService}, which is closed on reinitialization
+     */
+    private static final class CurrentHttpClient extends CloseableHttpClient {
+
+        @Override
+        protected CloseableHttpResponse doExecute(HttpHost target, HttpRequest request, HttpContext context) throws IOException {
+            return getHttpClient().execute(target, request, context);
+        }
+
+        @Override
+        public void close() {
+            // The client is owned and closed by the HttpClientService
+        }
+
+        @Override
+        @SuppressWarnings("deprecation")
+        public HttpParams getParams() {
+            return getHttpClient().getParams();
+        }
+
+        @Override
+        @SuppressWarnings("deprecation")
+        public ClientConnectionManager getConnectionManager() {
+            return getHttpClient().getConnectionManager();
+        }
+
+        private static CloseableHttpClient getHttpClient() {
+            return OIOSAML3Service.getHttpClientService().getHttpClient();
+        }
+    }
+
+    /**
+     * SourceIDs of all entities in one metadata source, as of the last update of its resolver
+     */
+    private static final class SourceIds {
+        private final DateTime lastUpdate;
+        private final Map<String, String> entityIds;
+
+        private SourceIds(DateTime lastUpdate, Map<String, String> entityIds) {
+            this.lastUpdate = lastUpdate;
+            this.entityIds = entityIds;
+        }
+    }
+}
@@ -4,13 +4,20 @@ import dk.gov.oio.saml.audit.AuditService;
 import dk.gov.oio.saml.session.InternalSessionHandlerFactory;
 import dk.gov.oio.saml.session.SessionCleanerService;
 import dk.gov.oio.saml.session.SessionHandlerFactory;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.opensaml.core.config.InitializationException;
 import org.opensaml.core.config.InitializationService;
+import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
 import org.opensaml.xmlsec.config.impl.JavaCryptoValidationInitializer;
 
 import dk.gov.oio.saml.config.Configuration;
+import dk.gov.oio.saml.util.SecureParserPool;
 
 public class OIOSAML3Service {
     private static final Logger log = LoggerFactory.getLogger(OIOSAML3Service.class);
@@ -19,6 +26,9 @@ public class OIOSAML3Service {
     private static Configuration configuration;
     private static AuditService auditService;
     private static CredentialService credentialService;
+    private static HttpClientService httpClientService;
+    private static ExecutorService revocationExecutor;
+    private static SecureParserPool parserPool;
     private static SessionHandlerFactory sessionHandlerFactory;
     private static SessionCleanerService sessionCleanerService;
 
@@ -36,11 +46,24 @@ public class OIOSAML3Service {
             log.debug("Initializing OpenSAML");
             InitializationService.initialize();
 
+            // Use one hardened parser pool for all XML parsed by OpenSAML and OIOSAML
+            log.debug("Initializing parser pool");
+            OIOSAML3Service.parserPool = SecureParserPool.create(configuration.getParserPoolMaxSize());
+            XMLObjectProviderRegistrySupport.setParserPool(parserPool);
+
             // Set configuration
             log.debug("Setting OIOSAML Configuration");
             OIOSAML3Service.configuration = configuration;
             OIOSAML3Service.auditService = new AuditService(configuration);
             OIOSAML3Service.credentialService = new CredentialService(configuration);
+            HttpClientService previousHttpClientService = OIOSAML3Service.httpClientService;
+            OIOSAML3Service.httpClientService = new HttpClientService(configuration);
+            closeHttpClientService(previousHttpClientService);
+
+            // Revocation checks of IdP certificates run in the background, sized by the current configuration
+            ExecutorService previousRevocationExecutor = OIOSAML3Service.revocationExecutor;
+            OIOSAML3Service.revocationExecutor = createRevocationExecutor(configuration);
+            shutdownRevocationExecutor(previousRevocationExecutor);
             OIOSAML3Service.sessionCleanerService = new SessionCleanerService(configuration);
             OIOSAML3Service.sessionHandlerFactory = new InternalSessionHandlerFactory();
             OIOSAML3Service.sessionHandlerFactory.configure(configuration);
@@ -53,6 +76,32 @@ public class OIOSAML3Service {
         log.debug("OIOSAML Initialized");
     }
 
+    /**
+     * Stop the session cleaner and metadata resolvers and release the sessions, database and HTTP connections held by
+     * OIOSAML, called when the application is stopped. Filters destroyed after the servlet find OIOSAML uninitialized.
+     */
+    public static void shutdown() {
+        log.debug("Shutting down OIOSAML");
+        initialized = false;
+
+        if (sessionCleanerService != null) {
+            sessionCleanerService.stopCleaner();
+        }
+        if (sessionHandlerFactory != null) {
+            sessionHandlerFactory.close();
+        }
+
+        IdPMetadataService.getInstance().clearAll();
+
+        HttpClientService previousHttpClientService = OIOSAML3Service.httpClientService;
+        OIOSAML3Service.httpClientService = null;
+        closeHttpClientService(previousHttpClientService);
+
+        ExecutorService previousRevocationExecutor = OIOSAML3Service.revocationExecutor;
+        OIOSAML3Service.revocationExecutor = null;
+        shutdownRevocationExecutor(previousRevocationExecutor);
+    }
+
     public static Configuration getConfig() throws RuntimeException {
         ifNotInitializedThrowRuntimeException("Configuration");
         return configuration;
@@ -78,6 +127,44 @@ public class OIOSAML3Service {
         return credentialService;
     }
 
+    public static HttpClientService getHttpClientService() {
+        ifNotInitializedThrowRuntimeException("HttpClientService");
+        return httpClientService;
+    }
+
+    public static ExecutorService getRevocationExecutor() {
+        ifNotInitializedThrowRuntimeException("RevocationExecutor");
+        return revocationExecutor;
+    }
+
+    public static SecureParserPool getParserPool() {
+        ifNotInitializedThrowRuntimeException("ParserPool");
+        return parserPool;
+    }
+
+    private static void closeHttpClientService(HttpClientService httpClientService) {
+        // Metadata resolvers look up the client of the current service on each request, so they are not affected
+        if (httpClientService != null) {
+            httpClientService.close();
+        }
+    }
+
+    private static ExecutorService createRevocationExecutor(Configuration configuration) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        return Executors.newFixedThreadPool(Math.max(1, configuration.getRevocationCheckThreads()), runnable -> {
+            Thread thread = new Thread(runnable, "oiosaml-revocation-check-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private static void shutdownRevocationExecutor(ExecutorService executor) {
+        // Checks already started complete, their results are no longer used
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
     private static void ifNotInitializedThrowRuntimeException(String entity) {
         if (!initialized) {
             throw new RuntimeException(String.format("OIOSAML3 is uninitialized, '%s' is unavailable", entity));
@@ -0,0 +1,145 @@
+package dk.gov.oio.saml.service;
+
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.X509CRL;
+import java.security.cert.X509Certificate;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.bouncycastle.asn1.x509.SubjectPublicKeyInfo;
+
+/**
+ * Cache used by {@link CRLChecker} to avoid repeating revocation checks against remote endpoints.
+ *
+ * <p>The cache holds three kinds of entries:</p>
+ * <ul>
+ *     <li>Parsed CRLs keyed by distribution point URL, used until their nextUpdate</li>
+ *     <li>OCSP results keyed by CertID, i.e. the hash of the issuer name and key and the certificate serial number</li>
+ *     <li>Endpoints that recently failed, so they are skipped instead of blocking every check until they time out</li>
+ * </ul>
+ */
+public class RevocationCache {
+    private final Map<String, Entry<X509CRL>> crls = new ConcurrentHashMap<>();
+    private final Map<String, Entry<Boolean>> ocspResults = new ConcurrentHashMap<>();
+    private final Map<String, Long> failures = new ConcurrentHashMap<>();
+
+    /**
+     * @param url CRL distribution point
+     * @return cached CRL, or null if missing or past its nextUpdate
+     */
+    public X509CRL getCRL(String url) {
+        return get(crls, url);
+    }
+
+    /**
+     * Cache CRL until its nextUpdate, or for ttlMillis if the CRL has no nextUpdate in the future
+     *
+     * @param url       CRL distribution point
+     * @param crl       parsed CRL
+     * @param ttlMillis fallback time to live in milliseconds
+     */
+    public void putCRL(String url, X509CRL crl, long ttlMillis) {
+        long now = System.currentTimeMillis();
+        Date nextUpdate = crl.getNextUpdate();
+
+        long expiresAt = null != nextUpdate && nextUpdate.getTime() > now ? nextUpdate.getTime() : now + ttlMillis;
+        crls.put(url, new Entry<>(crl, expiresAt));
+    }
+
+    /**
+     * @param certId CertID, see {@link #getCertId(X509Certificate, X509Certificate)}
+     * @return true if the certificate was good, false if revoked, null if not cached or expired
+     */
+    public Boolean getOcspResult(String certId) {
+        return get(ocspResults, certId);
+    }
+
+    /**
+     * @param certId    CertID, see {@link #getCertId(X509Certificate, X509Certificate)}
+     * @param good      true if the certificate was good, false if revoked
+     * @param expiresAt time in milliseconds when the result must be checked again
+     */
+    public void putOcspResult(String certId, boolean good, long expiresAt) {
+        ocspResults.put(certId, new Entry<>(good, expiresAt));
+    }
+
+    /**
+     * @param endpoint OCSP responder or CRL distribution point
+     * @return true if the endpoint failed within its failure time to live
+     */
+    public boolean isFailing(String endpoint) {
+        Long failingUntil = failures.get(endpoint);
+        if (null == failingUntil) {
+            return false;
+        }
+        if (failingUntil <= System.currentTimeMillis()) {
+            failures.remove(endpoint, failingUntil);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @param endpoint  OCSP responder or CRL distribution point that failed
+     * @param ttlMillis milliseconds the endpoint is skipped
+     */
+    public void putFailure(String endpoint, long ttlMillis) {
+        failures.put(endpoint, System.currentTimeMillis() + ttlMillis);
+    }
+
+    /**
+     * Remove all cached CRLs, results and failures
+     */
+    public void clear() {
+        crls.clear();
+        ocspResults.clear();
+        failures.clear();
+    }
+
+    /**
+     * Key identifying a certificate as in the OCSP CertID, see RFC 6960 section 4.1.1
+     *
+     * @param certificate certificate
+     * @param issuer      issuing certificate
+     * @return SHA-1 hash of issuer name, SHA-1 hash of issuer key and serial number, in hex
+     */
+    public static String getCertId(X509Certificate certificate, X509Certificate issuer) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] issuerNameHash = digest.digest(issuer.getSubjectX500Principal().getEncoded());
+            byte[] issuerKeyHash = digest.digest(SubjectPublicKeyInfo.getInstance(issuer.getPublicKey().getEncoded()).getPublicKeyData().getBytes());
+
+            return new BigInteger(1, issuerNameHash).toString(16) + ":" +
+                    new BigInteger(1, issuerKeyHash).toString(16) + ":" +
+                    certificate.getSerialNumber().toString(16);
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is not supported", e);
+        }
+    }
+
+    private static <T> T get(Map<String, Entry<T>> map, String key) {
+        Entry<T> entry = map.get(key);
+        if (null == entry) {
+            return null;
+        }
+        if (entry.expiresAt <= System.currentTimeMillis()) {
+            map.remove(key, entry);
+            return null;
+        }
+        return entry.value;
+    }
+
+    private static class Entry<T> {
+        private final T value;
+        private final long expiresAt;
+
+        private Entry(T value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
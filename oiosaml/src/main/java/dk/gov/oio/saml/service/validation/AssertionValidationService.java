@@ -45,10 +45,12 @@ import dk.gov.oio.saml.util.Constants;
 import dk.gov.oio.saml.util.ExternalException;
 import dk.gov.oio.saml.util.InternalException;
 import dk.gov.oio.saml.util.SamlHelper;
+import dk.gov.oio.saml.util.StringUtil;
 import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
 
 public class AssertionValidationService {
     private static final Logger log = LoggerFactory.getLogger(AssertionValidationService.class);
+    private static final SignatureCache signatureCache = new SignatureCache();
 
     public void validate(HttpServletRequest httpServletRequest, MessageContext<SAMLObject> messageContext, Response response, Assertion assertion, AuthnRequestWrapper authnRequest) throws AssertionValidationException, InternalException, ExternalException {
         validateDestination(httpServletRequest, messageContext);
@@ -280,14 +282,43 @@ public class AssertionValidationService {
     private void validateSignature(Assertion assertion) throws ExternalException, InternalException, AssertionValidationException {
         // Get Signing credential
         X509Certificate x509Certificate = IdPMetadataService.getInstance().getIdPMetadata().getValidX509Certificate(UsageType.SIGNING);
-        BasicX509Credential credential = new BasicX509Credential(x509Certificate);
+        if (x509Certificate == null) {
+            throw new ExternalException("No valid signing certificate in IdP metadata");
+        }
+        BasicX509Credential credential = signatureCache.getCredential(x509Certificate);
+
+        // Use the result of an earlier validation of the exact same assertion, if enabled
+        long ttlMillis = OIOSAML3Service.getConfig().getSignatureCacheTtl() * 1000L;
+        String key = null;
+        if (ttlMillis > 0) {
+            key = SignatureCache.getResultKey(StringUtil.xmlObjectToBytes(assertion), x509Certificate);
+
+            Boolean valid = signatureCache.getResult(key);
+            if (Boolean.TRUE.equals(valid)) {
+                return;
+            }
+            if (Boolean.FALSE.equals(valid)) {
+                throw new AssertionValidationException("Could not validate assertion signature, assertion was rejected before");
+            }
+        }
 
         // Validate Signature
         try {
             SignatureValidator.validate(assertion.getSignature(), credential);
         } catch (SignatureException e) {
+            if (key != null) {
+                signatureCache.putResult(key, false, ttlMillis);
+            }
             throw new AssertionValidationException("Could not validate assertion signature", e);
         }
+
+        if (key != null) {
+            signatureCache.putResult(key, true, ttlMillis);
+        }
+    }
+
+    static SignatureCache getSignatureCache() {
+        return signatureCache;
     }
 
     private void validateAudienceRestriction(Assertion assertion) throws AssertionValidationException {
@@ -0,0 +1,153 @@
+package dk.gov.oio.saml.service.validation;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.bouncycastle.util.encoders.Hex;
+import org.opensaml.security.x509.BasicX509Credential;
+
+/**
+ * Cache used by {@link AssertionValidationService} to avoid repeating signature work.
+ *
+ * <p>The cache holds two kinds of entries:</p>
+ * <ul>
+ *     <li>Credentials keyed by the SHA-256 fingerprint of the IdP certificate, built once per certificate</li>
+ *     <li>Verification results keyed by the SHA-256 digest of the serialized assertion and the certificate fingerprint,
+ *     kept for a short time so a resubmitted assertion is accepted or rejected without validating the signature again.
+ *     Any change to the assertion gives a different digest, so a cached result is never used for other content.</li>
+ * </ul>
+ */
+public class SignatureCache {
+    private static final int MAX_RESULTS = 10000;
+
+    private final Map<String, BasicX509Credential> credentials = new ConcurrentHashMap<>();
+    private final Map<String, Entry> results = new ConcurrentHashMap<>();
+
+    private final AtomicLong credentialHits = new AtomicLong();
+    private final AtomicLong credentialMisses = new AtomicLong();
+    private final AtomicLong resultHits = new AtomicLong();
+    private final AtomicLong resultMisses = new AtomicLong();
+
+    /**
+     * @param certificate signing certificate
+     * @return credential for the certificate, created on first use
+     */
+    public BasicX509Credential getCredential(X509Certificate certificate) {
+        String fingerprint = getFingerprint(certificate);
+
+        BasicX509Credential credential = credentials.get(fingerprint);
+        if (credential != null) {
+            credentialHits.incrementAndGet();
+            return credential;
+        }
+
+        credentialMisses.incrementAndGet();
+        return credentials.computeIfAbsent(fingerprint, f -> new BasicX509Credential(certificate));
+    }
+
+    /**
+     * @param key key from {@link #getResultKey(byte[], X509Certificate)}
+     * @return true if the signature was valid, false if invalid, null if not cached or expired
+     */
+    public Boolean getResult(String key) {
+        Entry entry = results.get(key);
+        if (entry == null || entry.expiresAt <= System.currentTimeMillis()) {
+            if (entry != null) {
+                results.remove(key, entry);
+            }
+            resultMisses.incrementAndGet();
+            return null;
+        }
+
+        resultHits.incrementAndGet();
+        return entry.valid;
+    }
+
+    /**
+     * @param key       key from {@link #getResultKey(byte[], X509Certificate)}
+     * @param valid     true if the signature was valid
+     * @param ttlMillis milliseconds the result is kept
+     */
+    public void putResult(String key, boolean valid, long ttlMillis) {
+        long now = System.currentTimeMillis();
+
+        if (results.size() >= MAX_RESULTS) {
+            results.values().removeIf(entry -> entry.expiresAt <= now);
+            if (results.size() >= MAX_RESULTS) {
+                results.clear();
+            }
+        }
+
+        results.put(key, new Entry(valid, now + ttlMillis));
+    }
+
+    /**
+     * Remove all cached credentials and results
+     */
+    public void clear() {
+        credentials.clear();
+        results.clear();
+    }
+
+    public long getCredentialHits() {
+        return credentialHits.get();
+    }
+
+    public long getCredentialMisses() {
+        return credentialMisses.get();
+    }
+
+    public long getResultHits() {
+        return resultHits.get();
+    }
+
+    public long getResultMisses() {
+        return resultMisses.get();
+    }
+
+    /**
+     * @param assertion   serialized signed assertion
+     * @param certificate certificate the signature is validated with
+     * @return SHA-256 digest of the assertion and fingerprint of the certificate, in hex
+     */
+    public static String getResultKey(byte[] assertion, X509Certificate certificate) {
+        return Hex.toHexString(sha256(assertion)) + ":" + getFingerprint(certificate);
+    }
+
+    /**
+     * @param certificate certificate
+     * @return SHA-256 fingerprint of the encoded certificate, in hex
+     */
+    public static String getFingerprint(X509Certificate certificate) {
+        try {
+            return Hex.toHexString(sha256(certificate.getEncoded()));
+        }
+        catch (CertificateEncodingException e) {
+            throw new IllegalArgumentException("Could not encode certificate", e);
+        }
+    }
+
+    private static byte[] sha256(byte[] bytes) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(bytes);
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported", e);
+        }
+    }
+
+    private static class Entry {
+        private final boolean valid;
+        private final long expiresAt;
+
+        private Entry(boolean valid, long expiresAt) {
+            this.valid = valid;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -10,7 +10,6 @@ import dk.gov.oio.saml.audit.AuditService;
 import dk.gov.oio.saml.session.SessionHandler;
 import dk.gov.oio.saml.util.*;
 import org.joda.time.DateTime;
-import org.opensaml.core.xml.io.MarshallingException;
 import org.opensaml.messaging.context.MessageContext;
 import org.opensaml.saml.common.SAMLObject;
 import org.opensaml.saml.common.assertion.AssertionValidationException;
@@ -23,7 +22,6 @@ import dk.gov.oio.saml.session.AssertionWrapper;
 import dk.gov.oio.saml.session.AuthnRequestWrapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.w3c.dom.Element;
 
 public class AssertionHandler extends SAMLHandler {
     private static final Logger log = LoggerFactory.getLogger(AssertionHandler.class);
@@ -48,12 +46,7 @@ public class AssertionHandler extends SAMLHandler {
         Response response = (Response) samlObject;
 
         // Log response
-        try {
-            Element element = SamlHelper.marshallObject(response);
-            log.debug("Response: {}", StringUtil.elementToString(element));
-        } catch (MarshallingException e) {
-            log.warn("Could not marshall Response for logging purposes");
-        }
+        SamlTraceUtil.trace(SamlTraceUtil.RESPONSE, response);
 
         // Get response status
         Status status = response.getStatus();
@@ -140,9 +133,7 @@ public class AssertionHandler extends SAMLHandler {
             OIOSAML3Service.getAuditService().auditLog(auditBuilder);
         }
 
-        AssertionWrapper assertionWrapper = new AssertionWrapper(assertion);
-
-        sessionHandler.storeAssertion(session, assertionWrapper);
+        sessionHandler.storeAssertion(session, wrapper);
 
         OIOSAML3Service.getAuditService().auditLog(AuditRequestUtil
                 .createBasicAuditBuilder(httpServletRequest, "BSA7", "CreateSession")
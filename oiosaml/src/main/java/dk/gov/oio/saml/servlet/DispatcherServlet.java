@@ -38,6 +38,14 @@ public class DispatcherServlet extends HttpServlet {
         log.debug("Initialized DispatcherServlet");
     }
 
+    @Override
+    public void destroy() {
+        log.debug("Destroying DispatcherServlet");
+
+        OIOSAML3Service.shutdown();
+        super.destroy();
+    }
+
     private void handleOptionalValues(Map<String, String> config, Configuration configuration) {
         String value = config.get(Constants.OIOSAML_VALIDATION_ENABLED);
         if (StringUtil.isNotEmpty(value)) {
@@ -75,6 +83,132 @@ public class DispatcherServlet extends HttpServlet {
             configuration.setOcspCheckEnabled("true".equals(value));
         }
 
+        value = config.get(Constants.REVOCATION_CACHE_TTL);
+        if (StringUtil.isNotEmpty(value)) {
+            try {
+                Integer i = Integer.parseInt(value);
+                configuration.setRevocationCacheTtl(i);
+            }
+            catch (Exception ex) {
+                log.warn("Invalid value {} = {}", Constants.REVOCATION_CACHE_TTL, value, ex);
+            }
+        }
+
+        value = config.get(Constants.REVOCATION_FAILURE_TTL);
+        if (StringUtil.isNotEmpty(value)) {
+            try {
+                Integer i = Integer.parseInt(value);
+                configuration.setRevocationFailureTtl(i);
+            }
+            catch (Exception ex) {
+                log.warn("Invalid value {} = {}", Constants.REVOCATION_FAILURE_TTL, value, ex);
+            }
+        }
+
+        value = config.get(Constants.REVOCATION_TIMEOUT);
+        if (StringUtil.isNotEmpty(value)) {
+            try {
+                Integer i = Integer.parseInt(value);
+                configuration.setRevocationTimeout(i);
+            }
+            catch (Exception ex) {
+                log.warn("Invalid value {} = {}", Constants.REVOCATION_TIMEOUT, value, ex);
+            }
+        }
+
+        value = config.get(Constants.REVOCATION_CHECK_THREADS);
+        if (StringUtil.isNotEmpty(value)) {
+            try {
+                Integer i = Integer.parseInt(value);
+                configuration.setRevocationCheckThreads(i);
+            }
+            catch (Exception ex) {
+                log.warn("Invalid value {} = {}", Constants.REVOCATION_CHECK_THREADS, value, ex);
+            }
+        }
+
+        value = config.get(Constants.HTTP_MAX_CONNECTIONS);
+        if (StringUtil.isNotEmpty(value)) {
+            try {
+                Integer i = Integer.parseInt(value);
+                configuration.setHttpMaxConnections(i);
+            }
+            catch (Exception ex) {
+                log.warn("Invalid value {} = {}", Constants.HTTP_MAX_CONNECTIONS, value, ex);
+            }
+        }
+
+        value = config.get(Constants.HTTP_MAX_CONNECTIONS_PER_HOST);
+        if (StringUtil.isNotEmpty(value)) {
+            try {
+                Integer i = Integer.parseInt(value);
+                configuration.setHttpMaxConnectionsPerHost(i);
+            }
+            catch (Exception ex) {
+                log.warn("Invalid value {} = {}", Constants.HTTP_MAX_CONNECTIONS_PER_HOST, value, ex);
+            }
+        }
+
+        value = config.get(Constants.HTTP_CONNECT_TIMEOUT);
+        if (StringUtil.isNotEmpty(value)) {
+            try {
+                Integer i = Integer.parseInt(value);
+                configuration.setHttpConnectTimeout(i);
+            }
+            catch (Exception ex) {
+                log.warn("Invalid value {} = {}", Constants.HTTP_CONNECT_TIMEOUT, value, ex);
+            }
+        }
+
+        value = config.get(Constants.HTTP_READ_TIMEOUT);
+        if (StringUtil.isNotEmpty(value)) {
+            try {
+                Integer i = Integer.parseInt(value);
+                configuration.setHttpReadTimeout(i);
+            }
+            catch (Exception ex) {
+                log.warn("Invalid value {} = {}", Constants.HTTP_READ_TIMEOUT, value, ex);
+            }
+        }
+
+        value = config.get(Constants.HTTP_KEEP_ALIVE);
+        if (StringUtil.isNotEmpty(value)) {
+            try {
+                Integer i = Integer.parseInt(value);
+                configuration.setHttpKeepAlive(i);
+            }
+            catch (Exception ex) {
+                log.warn("Invalid value {} = {}", Constants.HTTP_KEEP_ALIVE, value, ex);
+            }
+        }
+
+        value = config.get(Constants.HTTP_PROXY);
+        if (StringUtil.isNotEmpty(value)) {
+            configuration.setHttpProxy(value);
+        }
+
+        value = config.get(Constants.PARSER_POOL_MAX_SIZE);
+        if (StringUtil.isNotEmpty(value)) {
+            try {
+                Integer i = Integer.parseInt(value);
+                configuration.setParserPoolMaxSize(i);
+            }
+            catch (Exception ex) {
+                log.warn("Invalid value {} = {}", Constants.PARSER_POOL_MAX_SIZE, value, ex);
+            }
+        }
+
+        value = config.get(Constants.SIGNATURE_CACHE_TTL);
+        if (StringUtil.isNotEmpty(value)) {
+            try {
+                Integer i = Integer.parseInt(value);
+                configuration.setSignatureCacheTtl(i);
+            }
+            catch (Exception ex) {
+                log.warn("Invalid value {} = {}", Constants.SIGNATURE_CACHE_TTL, value, ex);
+            }
+        }
+
         value = config.get(Constants.METADATA_NAMEID_FORMAT);
         if (StringUtil.isNotEmpty(value)) {
             configuration.setNameIDFormat(value);
@@ -122,6 +256,16 @@ public class DispatcherServlet extends HttpServlet {
             }
         }
 
+        value = config.get(Constants.IDP_METADATA_BACKUP_FILE);
+        if (StringUtil.isNotEmpty(value)) {
+            configuration.setIdpMetadataBackupFile(value);
+        }
+
+        value = config.get(Constants.IDP_METADATA_SIGNING_CERTIFICATE);
+        if (StringUtil.isNotEmpty(value)) {
+            configuration.setIdpMetadataSigningCertificate(value);
+        }
+
         value = config.get(Constants.SECONDARY_KEY_ALIAS);
         if (StringUtil.isNotEmpty(value)) {
             configuration.setSecondaryKeyAlias(value);
@@ -151,6 +295,153 @@ public class DispatcherServlet extends HttpServlet {
             log.warn("Invalid value {} = {}", Constants.SP_SESSION_HANDLER_MAX_NUM_TRACKED_ASSERTIONIDS, value, ex);
         }
 
+        value = config.get(Constants.SP_SESSION_HANDLER_JDBC_POOL_MAX_SIZE);
+        if (StringUtil.isNotEmpty(value)) {
+            try {
+                Integer i = Integer.parseInt(value);
+                configuration.setSessionHandlerJdbcPoolMaxSize(i);
+            }
+            catch (Exception ex) {
+                log.warn("Invalid value {} = {}", Constants.SP_SESSION_HANDLER_JDBC_POOL_MAX_SIZE, value, ex);
+            }
+        }
+
+        value = config.get(Constants.SP_SESSION_HANDLER_JDBC_POOL_MIN_IDLE);
+        if (StringUtil.isNotEmpty(value)) {
+            try {
+                Integer i = Integer.parseInt(value);
+                configuration.setSessionHandlerJdbcPoolMinIdle(i);
+            }
+            catch (Exception ex) {
+                log.warn("Invalid value {} = {}", Constants.SP_SESSION_HANDLER_JDBC_POOL_MIN_IDLE, value, ex);
+            }
+        }
+
+        value = config.get(Constants.SP_SESSION_HANDLER_JDBC_POOL_MAX_IDLE);
+        if (StringUtil.isNotEmpty(value)) {
+            try {
+                Integer i = Integer.parseInt(value);
+                configuration.setSessionHandlerJdbcPoolMaxIdle(i);
+            }
+            catch (Exception ex) {
+                log.warn("Invalid value {} = {}", Constants.SP_SESSION_HANDLER_JDBC_POOL_MAX_IDLE, value, ex);
+            }
+        }
+
+        value = config.get(Constants.SP_SESSION_HANDLER_JDBC_POOL_VALIDATE_ON_BORROW);
+        if (StringUtil.isNotEmpty(value)) {
+            configuration.setSessionHandlerJdbcPoolValidateOnBorrow("true".equals(value));
+        }
+
+        value = config.get(Constants.SP_SESSION_HANDLER_JDBC_POOL_MAX_LIFETIME);
+        if (StringUtil.isNotEmpty(value)) {
+            try {
+                Integer i = Integer.parseInt(value);
+                configuration.setSessionHandlerJdbcPoolMaxLifetime(i);
+            }
+            catch (Exception ex) {
+                log.warn("Invalid value {} = {}", Constants.SP_SESSION_HANDLER_JDBC_POOL_MAX_LIFETIME, value, ex);
+            }
+        }
+
+        value = config.get(Constants.SP_SESSION_HANDLER_JDBC_POOL_LEAK_DETECTION_THRESHOLD);
+        if (StringUtil.isNotEmpty(value)) {
+            try {
+                Integer i = Integer.parseInt(value);
+                configuration.setSessionHandlerJdbcPoolLeakDetectionThreshold(i);
+            }
+            catch (Exception ex) {
+                log.warn("Invalid value {} = {}", Constants.SP_SESSION_HANDLER_JDBC_POOL_LEAK_DETECTION_THRESHOLD, value, ex);
+            }
+        }
+
+        value = config.get(Constants.SP_SESSION_HANDLER_JDBC_POOL_BORROW_TIMEOUT);
+        if (StringUtil.isNotEmpty(value)) {
+            try {
+                Integer i = Integer.parseInt(value);
+                configuration.setSessionHandlerJdbcPoolBorrowTimeout(i);
+            }
+            catch (Exception ex) {
+                log.warn("Invalid value {} = {}", Constants.SP_SESSION_HANDLER_JDBC_POOL_BORROW_TIMEOUT, value, ex);
+            }
+        }
+
+        value = config.get(Constants.SP_SESSION_HANDLER_DATABASE_TOUCH_INTERVAL);
+        if (StringUtil.isNotEmpty(value)) {
+            try {
+                Integer i = Integer.parseInt(value);
+                configuration.setSessionHandlerDatabaseTouchInterval(i);
+            }
+            catch (Exception ex) {
+                log.warn("Invalid value {} = {}", Constants.SP_SESSION_HANDLER_DATABASE_TOUCH_INTERVAL, value, ex);
+            }
+        }
+
+        value = config.get(Constants.SP_SESSION_HANDLER_DATABASE_CACHE_SIZE);
+        if (StringUtil.isNotEmpty(value)) {
+            try {
+                Integer i = Integer.parseInt(value);
+                configuration.setSessionHandlerDatabaseCacheSize(i);
+            }
+            catch (Exception ex) {
+                log.warn("Invalid value {} = {}", Constants.SP_SESSION_HANDLER_DATABASE_CACHE_SIZE, value, ex);
+            }
+        }
+
+        value = config.get(Constants.SP_SESSION_HANDLER_DATABASE_CACHE_TTL);
+        if (StringUtil.isNotEmpty(value)) {
+            try {
+                Integer i = Integer.parseInt(value);
+                configuration.setSessionHandlerDatabaseCacheTtl(i);
+            }
+            catch (Exception ex) {
+                log.warn("Invalid value {} = {}", Constants.SP_SESSION_HANDLER_DATABASE_CACHE_TTL, value, ex);
+            }
+        }
+
+        value = config.get(Constants.SP_SESSION_HANDLER_DATABASE_CODEC);
+        if (StringUtil.isNotEmpty(value)) {
+            configuration.setSessionHandlerDatabaseCodecClassName(value);
+        }
+
+        value = config.get(Constants.SP_TRACE_SAMPLE_RATE);
+        if (StringUtil.isNotEmpty(value)) {
+            try {
+                Integer i = Integer.parseInt(value);
+                configuration.setTraceSampleRate(i);
+            }
+            catch (Exception ex) {
+                log.warn("Invalid value {} = {}", Constants.SP_TRACE_SAMPLE_RATE, value, ex);
+            }
+        }
+
+        value = config.get(Constants.SP_SESSION_HANDLER_DATABASE_CLEANUP_BATCH_SIZE);
+        if (StringUtil.isNotEmpty(value)) {
+            try {
+                Integer i = Integer.parseInt(value);
+                configuration.setSessionHandlerDatabaseCleanupBatchSize(i);
+            }
+            catch (Exception ex) {
+                log.warn("Invalid value {} = {}", Constants.SP_SESSION_HANDLER_DATABASE_CLEANUP_BATCH_SIZE, value, ex);
+            }
+        }
+
+        value = config.get(Constants.SP_SESSION_CLEANER_INTERVAL);
+        if (StringUtil.isNotEmpty(value)) {
+            try {
+                Integer i = Integer.parseInt(value);
+                configuration.setSessionCleanerInterval(i);
+            }
+            catch (Exception ex) {
+                log.warn("Invalid value {} = {}", Constants.SP_SESSION_CLEANER_INTERVAL, value, ex);
+            }
+        }
+
+        value = config.get(Constants.SP_SESSION_HANDLER_DATABASE_CLEANUP_COORDINATED);
+        if (StringUtil.isNotEmpty(value)) {
+            configuration.setSessionHandlerDatabaseCleanupCoordinated("true".equals(value));
+        }
+
         value = config.get(Constants.SP_APPSWITCH_RETURNURL_ANDROID);
         if (StringUtil.isNotEmpty(value)) {
             configuration.setAppSwitchReturnURLForAndroid(value);
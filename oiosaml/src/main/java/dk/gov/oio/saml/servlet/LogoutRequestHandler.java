@@ -6,7 +6,6 @@ import javax.servlet.http.HttpServletResponse;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.opensaml.core.xml.io.MarshallingException;
 import org.opensaml.saml.saml2.core.SessionIndex;
 import org.opensaml.core.config.InitializationException;
 import org.opensaml.messaging.context.MessageContext;
@@ -24,7 +23,6 @@ import dk.gov.oio.saml.service.LogoutRequestService;
 import dk.gov.oio.saml.service.LogoutResponseService;
 import dk.gov.oio.saml.service.OIOSAML3Service;
 import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
-import org.w3c.dom.Element;
 
 public class LogoutRequestHandler extends SAMLHandler {
     private static final Logger log = LoggerFactory.getLogger(LogoutRequestHandler.class);
@@ -122,12 +120,7 @@ public class LogoutRequestHandler extends SAMLHandler {
                     .withAuthnAttribute("LOGOUT_REQUEST_DESTINATION", logoutRequest.getDestination()));
 
             // Log LogoutRequest
-            try {
-                Element element = SamlHelper.marshallObject(logoutRequest.getLogoutRequest());
-                log.debug("LogoutRequest: {}", StringUtil.elementToString(element));
-            } catch (MarshallingException e) {
-                log.warn("Could not marshall LogoutRequest for logging purposes");
-            }
+            SamlTraceUtil.trace(SamlTraceUtil.LOGOUT_REQUEST, logoutRequest.getLogoutRequest());
             log.info("Outgoing LogoutRequest - ID:'{}' Issuer:'{}' IssueInstant:'{}' SessionIndexes:'{}' Destination:'{}'",
                     logoutRequest.getID(),
                     logoutRequest.getIssuerAsString(),
@@ -147,12 +140,7 @@ public class LogoutRequestHandler extends SAMLHandler {
         SessionHandler sessionHandler = OIOSAML3Service.getSessionHandlerFactory().getHandler();
 
         // Log LogoutRequest
-        try {
-            Element element = SamlHelper.marshallObject(logoutRequest.getLogoutRequest());
-            log.debug("LogoutRequest: {}", StringUtil.elementToString(element));
-        } catch (MarshallingException e) {
-            log.warn("Could not marshall LogoutRequest for logging purposes");
-        }
+        SamlTraceUtil.trace(SamlTraceUtil.LOGOUT_REQUEST, logoutRequest.getLogoutRequest());
         log.info("Incoming LogoutRequest - ID:'{}' Issuer:'{}' IssueInstant:'{}' SessionIndexes:'{}' Destination:'{}'",
                 logoutRequest.getID(),
                 logoutRequest.getIssuerAsString(),
@@ -208,12 +196,7 @@ public class LogoutRequestHandler extends SAMLHandler {
             MessageContext<SAMLObject> messageContext = LogoutResponseService.createMessageWithLogoutResponse(logoutRequest, logoutResponseEndpoint);
 
             // Log LogoutRequest
-            try {
-                Element element = SamlHelper.marshallObject(logoutRequest.getLogoutRequest());
-                log.debug("LogoutRequest: {}", StringUtil.elementToString(element));
-            } catch (MarshallingException e) {
-                log.warn("Could not marshall LogoutRequest for logging purposes");
-            }
+            SamlTraceUtil.trace(SamlTraceUtil.LOGOUT_REQUEST, logoutRequest.getLogoutRequest());
             log.info("Outgoing LogoutRequest - ID:'{}' Issuer:'{}' IssueInstant:'{}' SessionIndexes:'{}' Destination:'{}'",
                     logoutRequest.getID(),
                     logoutRequest.getIssuerAsString(),
@@ -6,7 +6,6 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import dk.gov.oio.saml.util.*;
-import org.opensaml.core.xml.io.MarshallingException;
 import org.opensaml.messaging.context.MessageContext;
 import org.opensaml.saml.common.SAMLObject;
 import org.opensaml.saml.saml2.core.LogoutResponse;
@@ -17,7 +16,6 @@ import dk.gov.oio.saml.service.OIOSAML3Service;
 import dk.gov.oio.saml.servlet.ErrorHandler.ERROR_TYPE;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.w3c.dom.Element;
 
 public class LogoutResponseHandler extends SAMLHandler {
     private static final Logger log = LoggerFactory.getLogger(LogoutResponseHandler.class);
@@ -52,12 +50,7 @@ public class LogoutResponseHandler extends SAMLHandler {
         }
 
         // Log response
-        try {
-            Element element = SamlHelper.marshallObject(logoutResponse);
-            log.debug("LogoutResponse: {}", StringUtil.elementToString(element));
-        } catch (MarshallingException e) {
-            log.warn("Could not marshall LogoutResponse for logging purposes");
-        }
+        SamlTraceUtil.trace(SamlTraceUtil.LOGOUT_RESPONSE, logoutResponse);
         log.info("Incoming LogoutResponse - ID:'{}' InResponseTo:'{}' Issuer:'{}' Status:'{} {}' IssueInstant:'{}' Destination:'{}'",
                 logoutResponse.getID(),
                 logoutResponse.getInResponseTo(),
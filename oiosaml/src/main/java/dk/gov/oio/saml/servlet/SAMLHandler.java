@@ -1,11 +1,16 @@
 package dk.gov.oio.saml.servlet;
 
 import java.io.IOException;
+import java.util.Properties;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.apache.http.HttpStatus;
+import org.apache.velocity.app.VelocityEngine;
+import org.apache.velocity.runtime.RuntimeConstants;
+import org.apache.velocity.runtime.resource.loader.ClasspathResourceLoader;
+import org.apache.velocity.runtime.resource.loader.StringResourceLoader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.opensaml.core.config.InitializationException;
@@ -22,12 +27,17 @@ import org.opensaml.saml.saml2.binding.encoding.impl.HTTPRedirectDeflateEncoder;
 import dk.gov.oio.saml.util.ExternalException;
 import dk.gov.oio.saml.util.InternalException;
 import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
-import net.shibboleth.utilities.java.support.velocity.VelocityEngine;
 import org.opensaml.saml.saml2.binding.encoding.impl.HTTPSOAP11Encoder;
 
 public abstract class SAMLHandler {
     private static final Logger log = LoggerFactory.getLogger(SAMLHandler.class);
 
+    // Decoders and encoders hold the message of a single request and are created per request, they parse with the
+    // parser pool shared through XMLObjectProviderRegistrySupport. The Velocity engine is thread safe and is shared.
+    private static final class VelocityEngineHolder {
+        private static final VelocityEngine velocityEngine = createVelocityEngine();
+    }
+
     public abstract void handleGet(HttpServletRequest httpServletRequest, HttpServletResponse httpServletResponse) throws IOException, ExternalException, InternalException, InitializationException;
     public abstract void handlePost(HttpServletRequest httpServletRequest, HttpServletResponse httpServletResponse) throws ExternalException, InternalException, IOException;
     public void handleSOAP(HttpServletRequest httpServletRequest, HttpServletResponse httpServletResponse) throws ExternalException, InternalException, IOException {
@@ -110,7 +120,7 @@ public abstract class SAMLHandler {
 
         encoder.setHttpServletResponse(httpServletResponse);
         encoder.setMessageContext(message);
-        encoder.setVelocityEngine(VelocityEngine.newVelocityEngine());
+        encoder.setVelocityEngine(getVelocityEngine());
 
         encoder.initialize();
         encoder.encode();
@@ -129,6 +139,26 @@ public abstract class SAMLHandler {
         encoder.encode();
     }
 
+    /**
+     * @return Velocity engine for the HTTP-POST form, compiled templates are cached and reused
+     */
+    static VelocityEngine getVelocityEngine() {
+        return VelocityEngineHolder.velocityEngine;
+    }
+
+    private static VelocityEngine createVelocityEngine() {
+        log.debug("Creating Velocity engine for HTTP-POST encoding");
+
+        Properties properties = new Properties();
+        properties.setProperty(RuntimeConstants.RESOURCE_LOADER, "classpath, string");
+        properties.setProperty("classpath.resource.loader.class", ClasspathResourceLoader.class.getName());
+        properties.setProperty("classpath.resource.loader.cache", "true");
+        properties.setProperty("classpath.resource.loader.modificationCheckInterval", "0");
+        properties.setProperty("string.resource.loader.class", StringResourceLoader.class.getName());
+
+        return net.shibboleth.utilities.java.support.velocity.VelocityEngine.newVelocityEngine(properties);
+    }
+
     <T> T getSamlObject(MessageContext<SAMLObject> context, Class<T> clazz) throws ExternalException {
         SAMLObject samlObject = context.getMessage();
         if (samlObject == null) {
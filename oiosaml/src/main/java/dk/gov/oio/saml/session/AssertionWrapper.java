@@ -1,13 +1,20 @@
 package dk.gov.oio.saml.session;
 
+import java.io.ByteArrayInputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Base64;
 import java.util.List;
 import java.util.Map;
 
 import dk.gov.oio.saml.util.StringUtil;
+import net.shibboleth.utilities.java.support.xml.XMLParserException;
 import org.joda.time.DateTime;
-import org.opensaml.core.xml.io.MarshallingException;
+import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
 import org.opensaml.saml.saml2.core.Assertion;
 import org.opensaml.saml.saml2.core.AttributeStatement;
 import org.opensaml.saml.saml2.core.Audience;
@@ -20,13 +27,13 @@ import org.opensaml.saml.saml2.core.Issuer;
 import org.opensaml.saml.saml2.core.Subject;
 import org.opensaml.saml.saml2.core.SubjectConfirmation;
 import org.opensaml.saml.saml2.core.SubjectConfirmationData;
-import org.opensaml.saml.saml2.core.impl.AssertionMarshaller;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.w3c.dom.Element;
+import org.w3c.dom.Document;
 
 import dk.gov.oio.saml.model.NSISLevel;
 import dk.gov.oio.saml.oiobpp.OIOBPPUtil;
+import dk.gov.oio.saml.oiobpp.PrivilegeIndex;
 import dk.gov.oio.saml.oiobpp.PrivilegeList;
 import dk.gov.oio.saml.util.Constants;
 import dk.gov.oio.saml.util.InternalException;
@@ -39,6 +46,7 @@ public class AssertionWrapper implements Serializable {
     private String id;
     private String assertionString;
     private String assertionBase64;
+    private String assertionHtml;
     private String sessionIndex;
     private String issuer;
     private String subjectNameId;
@@ -46,25 +54,24 @@ public class AssertionWrapper implements Serializable {
     private String signingCredentialEntityId;
     private List<String> audiences;
     private String authnContextClassRef;
-    private PrivilegeList privilegeList;
     private Map<String, String> attributeValues;
     private boolean sessionExpired;
     private DateTime confirmationTime;
     private DateTime conditionTimeNotBefore;
     private DateTime conditionTimeNotOnOrAfter;
+    private DateTime sessionNotOnOrAfter;
+    private byte[] assertionXml; // Compact XML, the string and Base64 forms are derived from it on first use
+    private transient volatile Privileges privileges; // Parsed on first use, wrappers are shared between request threads
+
+    /**
+     * Create empty wrapper, populated by {@link CompactSessionObjectCodec}.
+     */
+    AssertionWrapper() {
+    }
 
     public AssertionWrapper(Assertion assertion) throws InternalException {
-        this.assertionBase64 = StringUtil.xmlObjectToBase64(assertion);
-
-        // getAssertionAsString()
-        AssertionMarshaller marshaller = new AssertionMarshaller();
-        try {
-            Element element = marshaller.marshall(assertion);
-            this.assertionString = StringUtil.elementToString(element);
-        }
-        catch (MarshallingException e) {
-            throw new InternalException(e);
-        }
+        // getAssertionAsString() and getAssertionAsBase64()
+        this.assertionXml = StringUtil.xmlObjectToBytes(assertion);
 
         // getIssuer()
         Issuer issuerObj = assertion.getIssuer();
@@ -128,8 +135,9 @@ public class AssertionWrapper implements Serializable {
 
                 // isSessionExpired()
                 boolean sessionExpired = false;
-                if (authnStatement.getSessionNotOnOrAfter() != null) {
-                    sessionExpired = authnStatement.getSessionNotOnOrAfter().isBeforeNow();
+                this.sessionNotOnOrAfter = authnStatement.getSessionNotOnOrAfter();
+                if (sessionNotOnOrAfter != null) {
+                    sessionExpired = sessionNotOnOrAfter.isBeforeNow();
                 }
                 this.sessionExpired = sessionExpired;
 
@@ -144,14 +152,6 @@ public class AssertionWrapper implements Serializable {
             }
         }
 
-        // getPrivilegeList()
-        if (attributeValues != null) {
-            String attributeValue = attributeValues.get(Constants.PRIVILEGE_ATTRIBUTE);
-            if (attributeValue != null) {
-                this.privilegeList = OIOBPPUtil.parse(attributeValue);
-            }
-        }
-
         // getSigningCredentialEntityId()
         if (null != assertion.getSignature() && null != assertion.getSignature().getSigningCredential()) {
             this.signingCredentialEntityId = assertion.getSignature().getSigningCredential().getEntityId();
@@ -162,15 +162,39 @@ public class AssertionWrapper implements Serializable {
     }
 
     public String getAssertionAsString() {
+        if (null == assertionString && null != assertionXml) {
+            assertionString = prettyPrint(assertionXml);
+        }
         return assertionString;
     }
 
     public String getAssertionAsBase64() {
+        if (null == assertionBase64 && null != assertionXml) {
+            assertionBase64 = Base64.getEncoder().encodeToString(assertionXml);
+        }
         return assertionBase64;
     }
     
     public String getAssertionAsHtml() {
-        return htmlEscape(assertionString);
+        if (null == assertionHtml) {
+            String assertionString = getAssertionAsString();
+            assertionHtml = null != assertionString ? htmlEscape(assertionString) : null;
+        }
+        return assertionHtml;
+    }
+
+    private static String prettyPrint(byte[] xml) {
+        try {
+            Document document = XMLObjectProviderRegistrySupport.getParserPool().parse(new ByteArrayInputStream(xml));
+            String pretty = StringUtil.elementToString(document.getDocumentElement());
+            if (null != pretty) {
+                return pretty;
+            }
+        }
+        catch (XMLParserException e) {
+            log.warn("Unable to parse stored assertion", e);
+        }
+        return new String(xml, StandardCharsets.UTF_8);
     }
 
     private static String htmlEscape(String input) {
@@ -247,7 +271,35 @@ public class AssertionWrapper implements Serializable {
     }
 
     public PrivilegeList getPrivilegeList() {
-        return privilegeList;
+        return getPrivileges().privilegeList;
+    }
+
+    /**
+     * @return index of the privilege list for authorization checks, built on first use, empty if the assertion has no privileges
+     */
+    public PrivilegeIndex getPrivilegeIndex() {
+        return getPrivileges().privilegeIndex;
+    }
+
+    private Privileges getPrivileges() {
+        Privileges result = privileges;
+        if (result == null) {
+            synchronized (this) {
+                result = privileges;
+                if (result == null) {
+                    PrivilegeList privilegeList = null;
+                    if (attributeValues != null) {
+                        String attributeValue = attributeValues.get(Constants.PRIVILEGE_ATTRIBUTE);
+                        if (attributeValue != null) {
+                            privilegeList = OIOBPPUtil.parse(attributeValue);
+                        }
+                    }
+                    result = new Privileges(privilegeList, PrivilegeIndex.create(privilegeList));
+                    privileges = result;
+                }
+            }
+        }
+        return result;
     }
 
     public Map<String, String> getAttributeValues() {
@@ -274,6 +326,10 @@ public class AssertionWrapper implements Serializable {
         return signingCredentialEntityId;
     }
 
+    public DateTime getSessionNotOnOrAfter() {
+        return sessionNotOnOrAfter;
+    }
+
     public boolean isReplayOf(AssertionWrapper assertionWrapper) {
         if (null == assertionWrapper) {
             return false;
@@ -286,8 +342,60 @@ public class AssertionWrapper implements Serializable {
     }
 
 
+    /**
+     * Write the extracted values and the compact XML, read back by {@link #readCompact(DataInput)}.
+     */
+    void writeCompact(DataOutput out) throws IOException {
+        CompactSessionObjectCodec.writeString(out, id);
+        CompactSessionObjectCodec.writeString(out, sessionIndex);
+        CompactSessionObjectCodec.writeString(out, issuer);
+        CompactSessionObjectCodec.writeString(out, subjectNameId);
+        CompactSessionObjectCodec.writeString(out, subjectNameIdFormat);
+        CompactSessionObjectCodec.writeString(out, signingCredentialEntityId);
+        CompactSessionObjectCodec.writeString(out, authnContextClassRef);
+        CompactSessionObjectCodec.writeStrings(out, audiences);
+        CompactSessionObjectCodec.writeMap(out, attributeValues);
+        CompactSessionObjectCodec.writeDateTime(out, sessionNotOnOrAfter);
+        CompactSessionObjectCodec.writeDateTime(out, confirmationTime);
+        CompactSessionObjectCodec.writeDateTime(out, conditionTimeNotBefore);
+        CompactSessionObjectCodec.writeDateTime(out, conditionTimeNotOnOrAfter);
+        CompactSessionObjectCodec.writeBytes(out, null != assertionXml ? assertionXml : Base64.getDecoder().decode(getAssertionAsBase64()));
+    }
+
+    static AssertionWrapper readCompact(DataInput in) throws IOException {
+        AssertionWrapper wrapper = new AssertionWrapper();
+        wrapper.id = CompactSessionObjectCodec.readString(in);
+        wrapper.sessionIndex = CompactSessionObjectCodec.readString(in);
+        wrapper.issuer = CompactSessionObjectCodec.readString(in);
+        wrapper.subjectNameId = CompactSessionObjectCodec.readString(in);
+        wrapper.subjectNameIdFormat = CompactSessionObjectCodec.readString(in);
+        wrapper.signingCredentialEntityId = CompactSessionObjectCodec.readString(in);
+        wrapper.authnContextClassRef = CompactSessionObjectCodec.readString(in);
+        wrapper.audiences = CompactSessionObjectCodec.readStrings(in);
+        wrapper.attributeValues = CompactSessionObjectCodec.readMap(in);
+        wrapper.sessionNotOnOrAfter = CompactSessionObjectCodec.readDateTime(in);
+        wrapper.confirmationTime = CompactSessionObjectCodec.readDateTime(in);
+        wrapper.conditionTimeNotBefore = CompactSessionObjectCodec.readDateTime(in);
+        wrapper.conditionTimeNotOnOrAfter = CompactSessionObjectCodec.readDateTime(in);
+        wrapper.assertionXml = CompactSessionObjectCodec.readBytes(in);
+
+        // Evaluated when read, as when the assertion is parsed from XML
+        wrapper.sessionExpired = null != wrapper.sessionNotOnOrAfter && wrapper.sessionNotOnOrAfter.isBeforeNow();
+        return wrapper;
+    }
+
     @Override
     public String toString() {
-        return String.format("AssertionWrapper{assertion='%s'}", assertionString);
+        return String.format("AssertionWrapper{assertion='%s'}", getAssertionAsString());
+    }
+
+    private static final class Privileges {
+        private final PrivilegeList privilegeList;
+        private final PrivilegeIndex privilegeIndex;
+
+        private Privileges(PrivilegeList privilegeList, PrivilegeIndex privilegeIndex) {
+            this.privilegeList = privilegeList;
+            this.privilegeIndex = privilegeIndex;
+        }
     }
 }
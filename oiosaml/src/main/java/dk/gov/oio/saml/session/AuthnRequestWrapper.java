@@ -15,10 +15,14 @@ import org.opensaml.saml.saml2.core.AuthnRequest;
 import dk.gov.oio.saml.util.InternalException;
 import org.opensaml.saml.saml2.core.Extensions;
 import org.opensaml.saml.saml2.core.Issuer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class AuthnRequestWrapper implements Serializable {
+    private static final Logger log = LoggerFactory.getLogger(AuthnRequestWrapper.class);
     private static final long serialVersionUID = -2647272712207296480L;
     private Extensions extensions;
+    private boolean extensionsLoaded;
 
     private final String id;
     private final boolean forceAuthn;
@@ -63,6 +67,25 @@ public class AuthnRequestWrapper implements Serializable {
         // get id
         this.id = authnRequest.getID();
         this.extensions = authnRequest.getExtensions();
+        this.extensionsLoaded = true;
+    }
+
+    /**
+     * Create wrapper from stored values, used by {@link CompactSessionObjectCodec}. Extensions are read from the
+     * stored AuthnRequest on first use.
+     */
+    AuthnRequestWrapper(String id, boolean forceAuthn, boolean passive, NSISLevel requestedNsisLevel, List<String> authnContextClassRefValues,
+                        String issuer, String issueInstant, String destination, String authnRequestAsBase64, String requestPath) {
+        this.id = id;
+        this.forceAuthn = forceAuthn;
+        this.passive = passive;
+        this.requestedNsisLevel = requestedNsisLevel;
+        this.authnContextClassRefValues = authnContextClassRefValues;
+        this.issuer = issuer;
+        this.issueInstant = issueInstant;
+        this.destination = destination;
+        this.authnRequestAsBase64 = authnRequestAsBase64;
+        this.requestPath = requestPath;
     }
 
     public String getId() {
@@ -110,6 +133,16 @@ public class AuthnRequestWrapper implements Serializable {
     }
 
     private <TExtension extends XMLObject> Object getExtensionOfType(Class<TExtension> type) {
+        if (!extensionsLoaded) {
+            try {
+                extensions = ((AuthnRequest) StringUtil.base64ToXMLObject(authnRequestAsBase64)).getExtensions();
+            }
+            catch (InternalException e) {
+                log.warn("Unable to read extensions from stored AuthnRequest '{}'", id, e);
+            }
+            extensionsLoaded = true;
+        }
+
         if(this.extensions == null)
             return null;
 
@@ -0,0 +1,275 @@
+package dk.gov.oio.saml.session;
+
+import dk.gov.oio.saml.model.NSISLevel;
+import dk.gov.oio.saml.util.InternalException;
+import dk.gov.oio.saml.util.StringUtil;
+import org.joda.time.DateTime;
+import org.joda.time.chrono.ISOChronology;
+import org.opensaml.saml.saml2.core.LogoutRequest;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Store session objects in a compact, versioned binary form.
+ *
+ * <p>The values already extracted by the wrappers are stored next to the compact XML, so reading a session object does
+ * not parse XML. The XML is only parsed when a caller asks for the original message, e.g.
+ * {@link AssertionWrapper#getAssertionAsString()}. The binary form is optionally deflate compressed and stored as
+ * Base64 behind a format prefix, values without the prefix are decoded as Base64 encoded XML.</p>
+ */
+public class CompactSessionObjectCodec implements SessionObjectCodec {
+    static final String PREFIX = "oiosaml:c1:";
+
+    private static final byte TYPE_ASSERTION = 'A';
+    private static final byte TYPE_AUTHN_REQUEST = 'R';
+    private static final byte TYPE_LOGOUT_REQUEST = 'L';
+    private static final byte FLAG_DEFLATE = 0x01;
+
+    private final XmlSessionObjectCodec xmlCodec = new XmlSessionObjectCodec();
+    private final boolean compress;
+
+    public CompactSessionObjectCodec() {
+        this(true);
+    }
+
+    /**
+     * @param compress deflate the binary form before it is Base64 encoded
+     */
+    public CompactSessionObjectCodec(boolean compress) {
+        this.compress = compress;
+    }
+
+    @Override
+    public String encodeAssertion(AssertionWrapper assertion) throws InternalException {
+        return encode(TYPE_ASSERTION, out -> assertion.writeCompact(out));
+    }
+
+    @Override
+    public AssertionWrapper decodeAssertion(String value) throws InternalException {
+        if (!isCompact(value)) {
+            return xmlCodec.decodeAssertion(value);
+        }
+        return decodeCompactAssertion(value);
+    }
+
+    @Override
+    public String encodeAuthnRequest(AuthnRequestWrapper request) throws InternalException {
+        return encode(TYPE_AUTHN_REQUEST, out -> {
+            writeString(out, request.getId());
+            out.writeBoolean(request.isForceAuthn());
+            out.writeBoolean(request.isPassive());
+            writeStrings(out, request.getAuthnContextClassRefValues());
+            writeString(out, request.getIssuer());
+            writeString(out, request.getIssueInstant());
+            writeString(out, request.getDestination());
+            writeBytes(out, Base64.getDecoder().decode(request.getAuthnRequestAsBase64()));
+        });
+    }
+
+    @Override
+    public AuthnRequestWrapper decodeAuthnRequest(String value, NSISLevel requestedNsisLevel, String requestPath) throws InternalException {
+        if (!isCompact(value)) {
+            return xmlCodec.decodeAuthnRequest(value, requestedNsisLevel, requestPath);
+        }
+        return decodeCompactAuthnRequest(value, requestedNsisLevel, requestPath);
+    }
+
+    @Override
+    public String encodeLogoutRequest(LogoutRequestWrapper request) throws InternalException {
+        byte[] xml = Base64.getDecoder().decode(request.getLogoutRequestAsBase64());
+        return encode(TYPE_LOGOUT_REQUEST, out -> writeBytes(out, xml));
+    }
+
+    @Override
+    public LogoutRequestWrapper decodeLogoutRequest(String value) throws InternalException {
+        if (!isCompact(value)) {
+            return xmlCodec.decodeLogoutRequest(value);
+        }
+        return decodeCompactLogoutRequest(value);
+    }
+
+    static boolean isCompact(String value) {
+        return null != value && value.startsWith(PREFIX);
+    }
+
+    static AssertionWrapper decodeCompactAssertion(String value) throws InternalException {
+        try (DataInputStream in = open(value, TYPE_ASSERTION)) {
+            return AssertionWrapper.readCompact(in);
+        } catch (IOException e) {
+            throw new InternalException("Unable to decode stored assertion", e);
+        }
+    }
+
+    static AuthnRequestWrapper decodeCompactAuthnRequest(String value, NSISLevel requestedNsisLevel, String requestPath) throws InternalException {
+        try (DataInputStream in = open(value, TYPE_AUTHN_REQUEST)) {
+            String id = readString(in);
+            boolean forceAuthn = in.readBoolean();
+            boolean passive = in.readBoolean();
+            List<String> authnContextClassRefValues = readStrings(in);
+            String issuer = readString(in);
+            String issueInstant = readString(in);
+            String destination = readString(in);
+            String authnRequestAsBase64 = Base64.getEncoder().encodeToString(readBytes(in));
+
+            return new AuthnRequestWrapper(id, forceAuthn, passive, requestedNsisLevel, authnContextClassRefValues,
+                    issuer, issueInstant, destination, authnRequestAsBase64, requestPath);
+        } catch (IOException e) {
+            throw new InternalException("Unable to decode stored AuthnRequest", e);
+        }
+    }
+
+    static LogoutRequestWrapper decodeCompactLogoutRequest(String value) throws InternalException {
+        try (DataInputStream in = open(value, TYPE_LOGOUT_REQUEST)) {
+            byte[] xml = readBytes(in);
+            return new LogoutRequestWrapper((LogoutRequest) StringUtil.base64ToXMLObject(Base64.getEncoder().encodeToString(xml)));
+        } catch (IOException e) {
+            throw new InternalException("Unable to decode stored LogoutRequest", e);
+        }
+    }
+
+    static void writeString(DataOutput out, String value) throws IOException {
+        if (null == value) {
+            out.writeInt(-1);
+            return;
+        }
+        writeBytes(out, value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static String readString(DataInput in) throws IOException {
+        byte[] bytes = readBytes(in);
+        return null != bytes ? new String(bytes, StandardCharsets.UTF_8) : null;
+    }
+
+    static void writeBytes(DataOutput out, byte[] value) throws IOException {
+        if (null == value) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(value.length);
+        out.write(value);
+    }
+
+    static byte[] readBytes(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    static void writeStrings(DataOutput out, List<String> values) throws IOException {
+        if (null == values) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(values.size());
+        for (String value : values) {
+            writeString(out, value);
+        }
+    }
+
+    static List<String> readStrings(DataInput in) throws IOException {
+        int size = in.readInt();
+        if (size < 0) {
+            return null;
+        }
+        List<String> values = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            values.add(readString(in));
+        }
+        return values;
+    }
+
+    static void writeMap(DataOutput out, Map<String, String> values) throws IOException {
+        if (null == values) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(values.size());
+        for (Map.Entry<String, String> entry : values.entrySet()) {
+            writeString(out, entry.getKey());
+            writeString(out, entry.getValue());
+        }
+    }
+
+    static Map<String, String> readMap(DataInput in) throws IOException {
+        int size = in.readInt();
+        if (size < 0) {
+            return null;
+        }
+        Map<String, String> values = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            values.put(readString(in), readString(in));
+        }
+        return values;
+    }
+
+    static void writeDateTime(DataOutput out, DateTime value) throws IOException {
+        out.writeBoolean(null != value);
+        if (null != value) {
+            out.writeLong(value.getMillis());
+        }
+    }
+
+    static DateTime readDateTime(DataInput in) throws IOException {
+        return in.readBoolean() ? new DateTime(in.readLong(), ISOChronology.getInstanceUTC()) : null;
+    }
+
+    private String encode(byte type, BodyWriter writer) throws InternalException {
+        Deflater deflater = compress ? new Deflater(Deflater.BEST_SPEED) : null;
+        try {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            buffer.write(type);
+            buffer.write(compress ? FLAG_DEFLATE : 0);
+
+            OutputStream body = compress ? new DeflaterOutputStream(buffer, deflater) : buffer;
+            try (DataOutputStream out = new DataOutputStream(body)) {
+                writer.write(out);
+            }
+
+            return PREFIX + Base64.getEncoder().encodeToString(buffer.toByteArray());
+        } catch (IOException e) {
+            throw new InternalException("Unable to encode session object", e);
+        } finally {
+            if (null != deflater) {
+                deflater.end();
+            }
+        }
+    }
+
+    private static DataInputStream open(String value, byte expectedType) throws IOException {
+        byte[] payload = Base64.getDecoder().decode(value.substring(PREFIX.length()));
+        if (payload.length < 2 || payload[0] != expectedType) {
+            throw new IOException(String.format("Unexpected session object type in stored value, expected '%c'", (char) expectedType));
+        }
+
+        InputStream body = new ByteArrayInputStream(payload, 2, payload.length - 2);
+        if ((payload[1] & FLAG_DEFLATE) != 0) {
+            body = new InflaterInputStream(body);
+        }
+        return new DataInputStream(body);
+    }
+
+    private interface BodyWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+}
@@ -0,0 +1,180 @@
+package dk.gov.oio.saml.session;
+
+import dk.gov.oio.saml.util.InternalException;
+
+import javax.servlet.http.HttpSession;
+
+/**
+ * Session handler memoizing the OIOSAML session state for the duration of a single request.
+ *
+ * <p>The AuthnRequest, Assertion and LogoutRequest of the HTTP session, and whether an AuthnRequest exists, are loaded
+ * from the wrapped handler at most once, and are reloaded after any store, logout or cleanup through this handler.
+ * Instances are not thread-safe and must not outlive the request they were created for.</p>
+ */
+public class RequestScopedSessionHandler implements SessionHandler {
+    // A wrapper is created per request, so resolve once per handler class whether isAuthenticated is overridden
+    private static final ClassValue<Boolean> DEFAULT_IS_AUTHENTICATED = new ClassValue<Boolean>() {
+        @Override
+        protected Boolean computeValue(Class<?> type) {
+            try {
+                return type.getMethod("isAuthenticated", HttpSession.class).isDefault();
+            } catch (NoSuchMethodException e) {
+                return false;
+            }
+        }
+    };
+
+    private final SessionHandler delegate;
+    private final boolean defaultIsAuthenticated;
+
+    private HttpSession session;
+    private AuthnRequestWrapper authnRequest;
+    private boolean authnRequestLoaded;
+    private Boolean hasAuthnRequest;
+    private AssertionWrapper assertion;
+    private boolean assertionLoaded;
+    private LogoutRequestWrapper logoutRequest;
+    private boolean logoutRequestLoaded;
+
+    public RequestScopedSessionHandler(SessionHandler delegate) {
+        this.delegate = delegate;
+        this.defaultIsAuthenticated = DEFAULT_IS_AUTHENTICATED.get(delegate.getClass());
+    }
+
+    public SessionHandler getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public void storeAuthnRequest(HttpSession session, AuthnRequestWrapper request) throws InternalException {
+        invalidate();
+        delegate.storeAuthnRequest(session, request);
+    }
+
+    @Override
+    public void storeAssertion(HttpSession session, AssertionWrapper assertion) throws InternalException {
+        invalidate();
+        delegate.storeAssertion(session, assertion);
+    }
+
+    @Override
+    public void storeLogoutRequest(HttpSession session, LogoutRequestWrapper request) throws InternalException {
+        invalidate();
+        delegate.storeLogoutRequest(session, request);
+    }
+
+    @Override
+    public AuthnRequestWrapper getAuthnRequest(HttpSession session) {
+        if (!isCached(session)) {
+            return delegate.getAuthnRequest(session);
+        }
+        if (!authnRequestLoaded) {
+            authnRequest = delegate.getAuthnRequest(session);
+            authnRequestLoaded = true;
+        }
+        return authnRequest;
+    }
+
+    @Override
+    public boolean hasAuthnRequest(HttpSession session) {
+        if (!isCached(session)) {
+            return delegate.hasAuthnRequest(session);
+        }
+        if (authnRequestLoaded) {
+            return null != authnRequest;
+        }
+        if (null == hasAuthnRequest) {
+            hasAuthnRequest = delegate.hasAuthnRequest(session);
+        }
+        return hasAuthnRequest;
+    }
+
+    @Override
+    public AssertionWrapper getAssertion(HttpSession session) {
+        if (!isCached(session)) {
+            return delegate.getAssertion(session);
+        }
+        if (!assertionLoaded) {
+            assertion = delegate.getAssertion(session);
+            assertionLoaded = true;
+        }
+        return assertion;
+    }
+
+    @Override
+    public AssertionWrapper getAssertion(String sessionIndex) {
+        return delegate.getAssertion(sessionIndex);
+    }
+
+    @Override
+    public LogoutRequestWrapper getLogoutRequest(HttpSession session) {
+        if (!isCached(session)) {
+            return delegate.getLogoutRequest(session);
+        }
+        if (!logoutRequestLoaded) {
+            logoutRequest = delegate.getLogoutRequest(session);
+            logoutRequestLoaded = true;
+        }
+        return logoutRequest;
+    }
+
+    /**
+     * Is current session authenticated, evaluated on the memoized state unless the wrapped handler has its own rule.
+     *
+     * @param session HTTP session
+     * @return true if current session is authenticated
+     */
+    @Override
+    public boolean isAuthenticated(HttpSession session) {
+        if (!defaultIsAuthenticated) {
+            return delegate.isAuthenticated(session);
+        }
+        return SessionHandler.super.isAuthenticated(session);
+    }
+
+    @Override
+    public String getSessionId(HttpSession session) {
+        return delegate.getSessionId(session);
+    }
+
+    @Override
+    public String getSessionId(String sessionIndex) {
+        return delegate.getSessionId(sessionIndex);
+    }
+
+    @Override
+    public void logout(HttpSession session, AssertionWrapper assertion) {
+        invalidate();
+        delegate.logout(session, assertion);
+    }
+
+    @Override
+    public void cleanup(long maxInactiveIntervalSeconds) {
+        invalidate();
+        delegate.cleanup(maxInactiveIntervalSeconds);
+    }
+
+    /**
+     * Drop memoized state, the next read will load it from the wrapped handler.
+     */
+    public void invalidate() {
+        authnRequest = null;
+        authnRequestLoaded = false;
+        hasAuthnRequest = null;
+        assertion = null;
+        assertionLoaded = false;
+        logoutRequest = null;
+        logoutRequestLoaded = false;
+    }
+
+    private boolean isCached(HttpSession session) {
+        if (null == session) {
+            return false;
+        }
+        if (this.session != session) {
+            invalidate();
+            this.session = session;
+        }
+        return true;
+    }
+}
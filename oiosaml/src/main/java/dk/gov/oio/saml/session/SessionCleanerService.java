@@ -12,16 +12,19 @@ import java.util.concurrent.TimeUnit;
 /**
  * The purpose for SessionCleanerService is removing OIOSAML sessions that has timed out,
  * but have not been removed by the SessionDestroyListener.
- * SessionCleanerService runs with a regular interval defined by the server session timeout.
+ * SessionCleanerService runs with a regular interval defined by the server session timeout,
+ * unless an interval is configured with oiosaml.servlet.session.cleaner.interval.
  * SessionCleanerService is initialized in the OIOSAML3Service.
  */
 public class SessionCleanerService {
     private static final Logger log = LoggerFactory.getLogger(SessionCleanerService.class);
 
+    private final Configuration configuration;
     private ScheduledExecutorService scheduledThreadPool;
     private boolean initialized = false;
 
     public SessionCleanerService(Configuration configuration) {
+        this.configuration = configuration;
     }
 
     /**
@@ -46,13 +49,17 @@ public class SessionCleanerService {
                 (long) session.getMaxInactiveInterval() :
                 30L * 60L /* defaults to 30 minutes */;
 
+        long intervalSeconds = null != configuration && configuration.getSessionCleanerInterval() > 0 ?
+                (long) configuration.getSessionCleanerInterval() :
+                maxInactiveIntervalSeconds;
+
         try {
-            log.info("Starting session cleaner with timeout '{}'", maxInactiveIntervalSeconds);
+            log.info("Starting session cleaner with timeout '{}' and interval '{}'", maxInactiveIntervalSeconds, intervalSeconds);
 
             scheduledThreadPool = Executors.newScheduledThreadPool(1);
 
             scheduledThreadPool.scheduleWithFixedDelay(
-                    new SessionCleanerTask(maxInactiveIntervalSeconds), 0, maxInactiveIntervalSeconds, TimeUnit.SECONDS);
+                    new SessionCleanerTask(maxInactiveIntervalSeconds), 0, intervalSeconds, TimeUnit.SECONDS);
 
             initialized = true;
         } catch (Exception e) {
@@ -90,14 +90,22 @@ public interface SessionHandler {
      */
     LogoutRequestWrapper getLogoutRequest(HttpSession session);
 
+    /**
+     * Is an AuthnRequest stored on the current session
+     * @param session HTTP session
+     * @return true if an AuthnRequest is stored on the current session
+     */
+    default boolean hasAuthnRequest(HttpSession session) {
+        return null != getAuthnRequest(session);
+    }
+
     /**
      * Is current session authenticated
      * @param session HTTP session
      * @return true if current session is authenticated
      */
     default boolean isAuthenticated(HttpSession session) {
-        AuthnRequestWrapper authnRequestWrapper = getAuthnRequest(session);
-        if (null == authnRequestWrapper) {
+        if (!hasAuthnRequest(session)) {
             return false;
         }
         AssertionWrapper assertionWrapper = getAssertion(session);
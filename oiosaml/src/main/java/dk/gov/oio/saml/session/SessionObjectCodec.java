@@ -0,0 +1,81 @@
+package dk.gov.oio.saml.session;
+
+import dk.gov.oio.saml.model.NSISLevel;
+import dk.gov.oio.saml.util.InternalException;
+import dk.gov.oio.saml.util.StringUtil;
+import org.opensaml.core.config.InitializationException;
+
+/**
+ * Convert session objects to and from the text stored by persistent session handlers.
+ *
+ * <p>Implementations must be able to decode values written by any of the codecs shipped with OIOSAML, so the codec
+ * can be changed without invalidating stored sessions.</p>
+ */
+public interface SessionObjectCodec {
+    /**
+     * Encode assertion for storage
+     * @param assertion {@link AssertionWrapper}
+     * @return encoded assertion
+     * @throws InternalException on failure to encode
+     */
+    String encodeAssertion(AssertionWrapper assertion) throws InternalException;
+
+    /**
+     * Decode stored assertion
+     * @param value encoded assertion
+     * @return {@link AssertionWrapper}
+     * @throws InternalException on failure to decode
+     */
+    AssertionWrapper decodeAssertion(String value) throws InternalException;
+
+    /**
+     * Encode AuthnRequest for storage
+     * @param request {@link AuthnRequestWrapper}
+     * @return encoded AuthnRequest
+     * @throws InternalException on failure to encode
+     */
+    String encodeAuthnRequest(AuthnRequestWrapper request) throws InternalException;
+
+    /**
+     * Decode stored AuthnRequest
+     * @param value encoded AuthnRequest
+     * @param requestedNsisLevel NSIS level requested by the AuthnRequest
+     * @param requestPath path requested before authentication
+     * @return {@link AuthnRequestWrapper}
+     * @throws InternalException on failure to decode
+     */
+    AuthnRequestWrapper decodeAuthnRequest(String value, NSISLevel requestedNsisLevel, String requestPath) throws InternalException;
+
+    /**
+     * Encode LogoutRequest for storage
+     * @param request {@link LogoutRequestWrapper}
+     * @return encoded LogoutRequest
+     * @throws InternalException on failure to encode
+     */
+    String encodeLogoutRequest(LogoutRequestWrapper request) throws InternalException;
+
+    /**
+     * Decode stored LogoutRequest
+     * @param value encoded LogoutRequest
+     * @return {@link LogoutRequestWrapper}
+     * @throws InternalException on failure to decode
+     */
+    LogoutRequestWrapper decodeLogoutRequest(String value) throws InternalException;
+
+    /**
+     * Create codec from class name
+     * @param className codec class with a default constructor, {@link XmlSessionObjectCodec} if empty
+     * @return codec instance
+     * @throws InitializationException if the codec cannot be created
+     */
+    static SessionObjectCodec create(String className) throws InitializationException {
+        if (StringUtil.isEmpty(className)) {
+            return new XmlSessionObjectCodec();
+        }
+        try {
+            return (SessionObjectCodec) Class.forName(className).getConstructor().newInstance();
+        } catch (ReflectiveOperationException | ClassCastException e) {
+            throw new InitializationException(String.format("Cannot create SessionObjectCodec, '%s' must have default constructor and implement 'dk.gov.oio.saml.session.SessionObjectCodec'", className), e);
+        }
+    }
+}
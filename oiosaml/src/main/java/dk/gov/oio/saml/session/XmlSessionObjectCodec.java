@@ -0,0 +1,53 @@
+package dk.gov.oio.saml.session;
+
+import dk.gov.oio.saml.model.NSISLevel;
+import dk.gov.oio.saml.util.InternalException;
+import dk.gov.oio.saml.util.StringUtil;
+import org.opensaml.saml.saml2.core.Assertion;
+import org.opensaml.saml.saml2.core.AuthnRequest;
+import org.opensaml.saml.saml2.core.LogoutRequest;
+
+/**
+ * Store session objects as Base64 encoded XML, every read parses and unmarshalls the XML.
+ */
+public class XmlSessionObjectCodec implements SessionObjectCodec {
+
+    @Override
+    public String encodeAssertion(AssertionWrapper assertion) {
+        return assertion.getAssertionAsBase64();
+    }
+
+    @Override
+    public AssertionWrapper decodeAssertion(String value) throws InternalException {
+        if (CompactSessionObjectCodec.isCompact(value)) {
+            return CompactSessionObjectCodec.decodeCompactAssertion(value);
+        }
+        return new AssertionWrapper((Assertion) StringUtil.base64ToXMLObject(value));
+    }
+
+    @Override
+    public String encodeAuthnRequest(AuthnRequestWrapper request) {
+        return request.getAuthnRequestAsBase64();
+    }
+
+    @Override
+    public AuthnRequestWrapper decodeAuthnRequest(String value, NSISLevel requestedNsisLevel, String requestPath) throws InternalException {
+        if (CompactSessionObjectCodec.isCompact(value)) {
+            return CompactSessionObjectCodec.decodeCompactAuthnRequest(value, requestedNsisLevel, requestPath);
+        }
+        return new AuthnRequestWrapper((AuthnRequest) StringUtil.base64ToXMLObject(value), requestedNsisLevel, requestPath);
+    }
+
+    @Override
+    public String encodeLogoutRequest(LogoutRequestWrapper request) throws InternalException {
+        return request.getLogoutRequestAsBase64();
+    }
+
+    @Override
+    public LogoutRequestWrapper decodeLogoutRequest(String value) throws InternalException {
+        if (CompactSessionObjectCodec.isCompact(value)) {
+            return CompactSessionObjectCodec.decodeCompactLogoutRequest(value);
+        }
+        return new LogoutRequestWrapper((LogoutRequest) StringUtil.base64ToXMLObject(value));
+    }
+}
@@ -0,0 +1,121 @@
+package dk.gov.oio.saml.session.database;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.lang.management.ManagementFactory;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.UUID;
+
+/**
+ * Named lease in the oiosaml_locks table, held by at most one node sharing the database at a time.
+ *
+ * <p>The lease is acquired by updating its row when this node already holds it or the lease has expired, and by
+ * inserting the row the first time the lease is taken. A node that stops renewing its lease loses it once it
+ * expires. Expiry is computed and compared with the clock of the database, so the clocks and time zones of the nodes
+ * do not matter.</p>
+ */
+public class DatabaseLease {
+    private static final Logger log = LoggerFactory.getLogger(DatabaseLease.class);
+
+    /**
+     * Lease held by the node running the database session cleanup
+     */
+    public static final String SESSION_CLEANUP = "session_cleanup";
+
+    private final DataSource ds;
+    private final String lockName;
+    private final String ownerId;
+    private volatile SqlDialect dialect;
+
+    /**
+     * @param ds       data source holding the oiosaml_locks table
+     * @param lockName name of the lease
+     */
+    public DatabaseLease(DataSource ds, String lockName) {
+        this(ds, lockName, ManagementFactory.getRuntimeMXBean().getName() + "/" + UUID.randomUUID());
+    }
+
+    DatabaseLease(DataSource ds, String lockName, String ownerId) {
+        this.ds = ds;
+        this.lockName = lockName;
+        this.ownerId = ownerId;
+    }
+
+    /**
+     * Acquire or renew the lease
+     *
+     * @param leaseSeconds seconds the lease is held, unless renewed
+     * @return true if this node holds the lease
+     * @throws SQLException on failure to access the oiosaml_locks table
+     */
+    public boolean tryAcquire(long leaseSeconds) throws SQLException {
+        try (Connection connection = ds.getConnection()) {
+            connection.setAutoCommit(true);
+            SqlDialect sqlDialect = getDialect(connection);
+
+            try (PreparedStatement ps = connection.prepareStatement("UPDATE oiosaml_locks SET owner_id = ?, expires_at = " + sqlDialect.getCurrentTimestampPlusSecondsSql() + " WHERE lock_name = ? AND (owner_id = ? OR expires_at < " + sqlDialect.getCurrentTimestampSql() + ")")) {
+                ps.setString(1, ownerId);
+                ps.setLong(2, leaseSeconds);
+                ps.setString(3, lockName);
+                ps.setString(4, ownerId);
+                if (ps.executeUpdate() > 0) {
+                    log.debug("Holding lease '{}' as '{}' for {} seconds", lockName, ownerId, leaseSeconds);
+                    return true;
+                }
+            }
+
+            try (PreparedStatement ps = connection.prepareStatement("INSERT INTO oiosaml_locks (lock_name, owner_id, expires_at) VALUES (?, ?, " + sqlDialect.getCurrentTimestampPlusSecondsSql() + ")")) {
+                ps.setString(1, lockName);
+                ps.setString(2, ownerId);
+                ps.setLong(3, leaseSeconds);
+                ps.executeUpdate();
+                log.debug("Acquired new lease '{}' as '{}' for {} seconds", lockName, ownerId, leaseSeconds);
+                return true;
+            } catch (SQLException e) {
+                if (!DatabaseSessionHandler.isConstraintViolation(e)) {
+                    throw e;
+                }
+                log.debug("Lease '{}' is held by another node", lockName);
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Release the lease if held by this node, so another node can take it without waiting for it to expire
+     *
+     * @throws SQLException on failure to access the oiosaml_locks table
+     */
+    public void release() throws SQLException {
+        try (Connection connection = ds.getConnection()) {
+            connection.setAutoCommit(true);
+
+            try (PreparedStatement ps = connection.prepareStatement("UPDATE oiosaml_locks SET expires_at = " + getDialect(connection).getCurrentTimestampSql() + " WHERE lock_name = ? AND owner_id = ?")) {
+                ps.setString(1, lockName);
+                ps.setString(2, ownerId);
+                ps.executeUpdate();
+            }
+        }
+    }
+
+    public String getLockName() {
+        return lockName;
+    }
+
+    public String getOwnerId() {
+        return ownerId;
+    }
+
+    private SqlDialect getDialect(Connection connection) throws SQLException {
+        SqlDialect current = dialect;
+        if (null == current) {
+            current = SqlDialect.fromConnection(connection);
+            dialect = current;
+        }
+        return current;
+    }
+}
@@ -30,32 +30,110 @@ import dk.gov.oio.saml.session.AssertionWrapper;
 import dk.gov.oio.saml.session.AuthnRequestWrapper;
 import dk.gov.oio.saml.session.LogoutRequestWrapper;
 import dk.gov.oio.saml.session.SessionHandler;
+import dk.gov.oio.saml.session.SessionObjectCodec;
+import dk.gov.oio.saml.session.XmlSessionObjectCodec;
 import dk.gov.oio.saml.util.InternalException;
 import dk.gov.oio.saml.util.StringUtil;
-import org.opensaml.saml.saml2.core.Assertion;
-import org.opensaml.saml.saml2.core.AuthnRequest;
-import org.opensaml.saml.saml2.core.LogoutRequest;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.servlet.http.HttpSession;
 import javax.sql.DataSource;
-import java.io.StringReader;
 import java.sql.*;
 import java.time.Clock;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * Handle session state across requests and instances, using a database as session storage.
  */
 public class DatabaseSessionHandler implements SessionHandler {
     private static final Logger log = LoggerFactory.getLogger(DatabaseSessionHandler.class);
+    private static final int DEFAULT_CLEANUP_BATCH_SIZE = 1000;
+    private static final long CLEANUP_LEASE_MARGIN_SECONDS = 60L;
 
     private final DataSource ds;
+    private final SessionTouchBuffer touchBuffer;
+    private final SessionObjectCodec codec;
+    private volatile SqlDialect dialect;
+    private volatile int cleanupBatchSize = DEFAULT_CLEANUP_BATCH_SIZE;
+    private volatile DatabaseLease cleanupLease;
+    private volatile long cleanupIntervalSeconds;
 
     public DatabaseSessionHandler(DataSource ds) {
-        log.debug("Created database session handler");
+        this(ds, null);
+    }
+
+    /**
+     * Create session handler using a fixed SQL dialect.
+     *
+     * @param ds      data source for the session tables
+     * @param dialect SQL dialect, or null to resolve it from the database on first use
+     */
+    public DatabaseSessionHandler(DataSource ds, SqlDialect dialect) {
+        this(ds, dialect, 0);
+    }
+
+    /**
+     * Create session handler that buffers access time updates.
+     *
+     * @param ds                   data source for the session tables
+     * @param dialect              SQL dialect, or null to resolve it from the database on first use
+     * @param touchIntervalSeconds seconds between batched access time updates, 0 updates on every read
+     */
+    public DatabaseSessionHandler(DataSource ds, SqlDialect dialect, long touchIntervalSeconds) {
+        this(ds, dialect, touchIntervalSeconds, new XmlSessionObjectCodec());
+    }
+
+    /**
+     * Create session handler that buffers access time updates and stores session objects using the codec.
+     *
+     * @param ds                   data source for the session tables
+     * @param dialect              SQL dialect, or null to resolve it from the database on first use
+     * @param touchIntervalSeconds seconds between batched access time updates, 0 updates on every read
+     * @param codec                codec converting session objects to and from the stored value
+     */
+    public DatabaseSessionHandler(DataSource ds, SqlDialect dialect, long touchIntervalSeconds, SessionObjectCodec codec) {
+        log.debug("Created database session handler using '{}'", codec.getClass().getSimpleName());
         this.ds = ds;
+        this.dialect = dialect;
+        this.codec = codec;
+        this.touchBuffer = touchIntervalSeconds > 0 ? new SessionTouchBuffer(ds, touchIntervalSeconds) : null;
+    }
+
+    /**
+     * Set maximum number of rows removed per transaction by {@link #cleanup(long)}
+     *
+     * @param cleanupBatchSize rows per transaction
+     */
+    public void setCleanupBatchSize(int cleanupBatchSize) {
+        this.cleanupBatchSize = Math.max(1, cleanupBatchSize);
+    }
+
+    /**
+     * Only run {@link #cleanup(long)} on the node holding the lease, when several nodes share the database
+     *
+     * <p>The lease is held for twice the cleanup interval plus a margin, so it does not expire before the holder
+     * runs cleanup again and renews it.</p>
+     *
+     * @param cleanupLease           lease coordinating cleanup, or null to run cleanup on every node
+     * @param cleanupIntervalSeconds seconds between cleanups, 0 uses the session timeout given to cleanup
+     */
+    public void setCleanupLease(DatabaseLease cleanupLease, long cleanupIntervalSeconds) {
+        this.cleanupLease = cleanupLease;
+        this.cleanupIntervalSeconds = cleanupIntervalSeconds;
     }
+
+    /**
+     * @param cleanupIntervalSeconds seconds between cleanups
+     * @return seconds the cleanup lease is held, long enough to last until the next cleanup has started
+     */
+    static long getCleanupLeaseSeconds(long cleanupIntervalSeconds) {
+        // The cleaner waits the interval after each run has finished, the margin covers the time a run takes
+        return 2 * cleanupIntervalSeconds + CLEANUP_LEASE_MARGIN_SECONDS;
+    }
+
     /**
      * Set AuthnRequest on the current session
      *
@@ -72,23 +150,13 @@ public class DatabaseSessionHandler implements SessionHandler {
         try (Connection connection=ds.getConnection()){
             connection.setAutoCommit(true);
 
-            AuthnRequestWrapper authnRequest = getAuthnRequest(session);
-            if (null != authnRequest) {
-                log.debug("AuthRequest '{}' will replace '{}'", request.getId(), authnRequest.getId());
-                try (PreparedStatement ps = connection.prepareStatement("DELETE FROM authn_requests_tbl WHERE session_id = ?")) {
-                    ps.setString(1, getSessionId(session));
-                    ps.executeUpdate();
-                }
-            }
             log.debug("Store AuthRequest '{}'", request.getId());
-            try(PreparedStatement ps = connection.prepareStatement("INSERT INTO authn_requests_tbl (session_id, access_time, nsis_level, request_path, xml_object) VALUES (?,?,?,?,?)")) {
-                ps.setString(1, getSessionId(session));
-                ps.setTimestamp(2, Timestamp.valueOf(java.time.LocalDateTime.now(Clock.systemDefaultZone())));
-                ps.setString(3, request.getRequestedNsisLevel().name());
-                ps.setString(4, request.getRequestPath());
-                ps.setClob(5, new StringReader(request.getAuthnRequestAsBase64()));
-                ps.executeUpdate();
-            }
+            getDialect(connection).upsert(connection, SessionTable.AUTHN_REQUESTS,
+                    getSessionId(session),
+                    Timestamp.valueOf(java.time.LocalDateTime.now(Clock.systemDefaultZone())),
+                    request.getRequestedNsisLevel().name(),
+                    request.getRequestPath(),
+                    codec.encodeAuthnRequest(request));
 
         } catch (SQLException e) {
             log.error("Failure to persist authn request", e);
@@ -113,48 +181,41 @@ public class DatabaseSessionHandler implements SessionHandler {
             log.info("Assertion '{}' with passive session and missing index", assertion.getID());
         }
 
-        try (Connection connection=ds.getConnection()){
-            connection.setAutoCommit(true);
+        String encodedAssertion = codec.encodeAssertion(assertion);
 
-            try(PreparedStatement ps = connection.prepareStatement("SELECT '1' FROM replay_tbl WHERE assertion_id = ?")) {
-                ps.setString(1, assertion.getID());
-                try(ResultSet rs = ps.executeQuery()) {
-                    if (rs.next()) {
-                        throw new IllegalArgumentException(String.format("Assertion with id '%s' and session index '%s' is already registered", assertion.getID(), assertion.getSessionIndex()));
+        try (Connection connection=ds.getConnection()){
+            connection.setAutoCommit(false);
+
+            try {
+                // The replay entry is the replay check, the primary key rejects an assertion ID seen before
+                log.debug("Add replay entry for assertion '{}'", assertion.getID());
+                try(PreparedStatement ps = connection.prepareStatement("INSERT INTO replay_tbl (assertion_id, access_time) VALUES (?,?)")) {
+                    ps.setString(1, assertion.getID());
+                    ps.setTimestamp(2, Timestamp.valueOf(java.time.LocalDateTime.now(Clock.systemDefaultZone())));
+                    ps.executeUpdate();
+                } catch (SQLException e) {
+                    if (!isConstraintViolation(e)) {
+                        throw e;
                     }
-                }
-            }
-
-            AssertionWrapper existingAssertion = getAssertion(session);
-            if (null != existingAssertion) {
-                if (assertion.isReplayOf(existingAssertion)) {
-                    log.debug("Assertion '{}' is being replayed", assertion.getID(), existingAssertion.getID());
+                    log.debug("Assertion '{}' is being replayed", assertion.getID());
                     throw new IllegalArgumentException(String.format("Assertion with id '%s' and session index '%s' is already registered", assertion.getID(), assertion.getSessionIndex()));
                 }
 
-                log.debug("Assertion '{}' will replace '{}'", assertion.getID(), existingAssertion.getID());
-                try (PreparedStatement ps = connection.prepareStatement("DELETE FROM assertions_tbl WHERE session_id = ?")) {
-                    ps.setString(1, getSessionId(session));
-                    ps.executeUpdate();
-                }
-            }
-
-            log.debug("Store Assertion '{}'", assertion.getID());
-            try(PreparedStatement ps = connection.prepareStatement("INSERT INTO assertions_tbl (session_id, session_index, assertion_id, subject_name_id, access_time, xml_object) VALUES (?,?,?,?,?,?)")) {
-                ps.setString(1, getSessionId(session));
-                ps.setString(2, StringUtil.defaultIfEmpty(assertion.getSessionIndex(),assertion.getID()));
-                ps.setString(3, assertion.getID());
-                ps.setString(4, assertion.getSubjectNameId());
-                ps.setTimestamp(5, Timestamp.valueOf(java.time.LocalDateTime.now(Clock.systemDefaultZone())));
-                ps.setClob(6, new StringReader(assertion.getAssertionAsBase64()));
-                ps.executeUpdate();
-            }
-
-            log.debug("Add replay entry for assertion '{}'", assertion.getID());
-            try(PreparedStatement ps = connection.prepareStatement("INSERT INTO replay_tbl (assertion_id, access_time) VALUES (?,?)")) {
-                ps.setString(1, assertion.getID());
-                ps.setTimestamp(2, Timestamp.valueOf(java.time.LocalDateTime.now(Clock.systemDefaultZone())));
-                ps.executeUpdate();
+                log.debug("Store Assertion '{}'", assertion.getID());
+                getDialect(connection).upsert(connection, SessionTable.ASSERTIONS,
+                        getSessionId(session),
+                        StringUtil.defaultIfEmpty(assertion.getSessionIndex(), assertion.getID()),
+                        assertion.getID(),
+                        assertion.getSubjectNameId(),
+                        Timestamp.valueOf(java.time.LocalDateTime.now(Clock.systemDefaultZone())),
+                        encodedAssertion);
+
+                connection.commit();
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
             }
 
         } catch (SQLException e) {
@@ -167,7 +228,7 @@ public class DatabaseSessionHandler implements SessionHandler {
      * Set LogoutRequest on the current session
      *
      * @param session HTTP session
-     * @param request {@link LogoutRequest}
+     * @param request {@link LogoutRequestWrapper}
      * @throws InternalException on failure to persist request
      */
     @Override
@@ -179,21 +240,11 @@ public class DatabaseSessionHandler implements SessionHandler {
         try (Connection connection=ds.getConnection()){
             connection.setAutoCommit(true);
 
-            LogoutRequestWrapper logoutRequest = getLogoutRequest(session);
-            if (null != logoutRequest) {
-                log.debug("LogoutRequest '{}' will replace '{}'", request.getID(), logoutRequest.getID());
-                try (PreparedStatement ps = connection.prepareStatement("DELETE FROM logout_requests_tbl WHERE session_id = ?")) {
-                    ps.setString(1, getSessionId(session));
-                    ps.executeUpdate();
-                }
-            }
             log.debug("Store LogoutRequest '{}'", request.getID());
-            try(PreparedStatement ps = connection.prepareStatement("INSERT INTO logout_requests_tbl (session_id, access_time, xml_object) VALUES (?,?,?)")) {
-                ps.setString(1, getSessionId(session));
-                ps.setTimestamp(2, Timestamp.valueOf(java.time.LocalDateTime.now(Clock.systemDefaultZone())));
-                ps.setClob(3, new StringReader(request.getLogoutRequestAsBase64()));
-                ps.executeUpdate();
-            }
+            getDialect(connection).upsert(connection, SessionTable.LOGOUT_REQUESTS,
+                    getSessionId(session),
+                    Timestamp.valueOf(java.time.LocalDateTime.now(Clock.systemDefaultZone())),
+                    codec.encodeLogoutRequest(request));
 
         } catch (SQLException e) {
             log.error("Failure to persist logout request", e);
@@ -240,8 +291,8 @@ public class DatabaseSessionHandler implements SessionHandler {
                 ps.setString(1, getSessionId(session));
                 try(ResultSet rs = ps.executeQuery()) {
                     if (rs.next()) {
-                        authnRequestWrapper = new AuthnRequestWrapper(
-                                (AuthnRequest) StringUtil.base64ToXMLObject(rs.getString(1)),
+                        authnRequestWrapper = codec.decodeAuthnRequest(
+                                rs.getString(1),
                                 NSISLevel.valueOf(rs.getString(2)),
                                 rs.getString(3));
                     }
@@ -249,11 +300,7 @@ public class DatabaseSessionHandler implements SessionHandler {
             }
 
             if (null != authnRequestWrapper) {
-                try(PreparedStatement ps = connection.prepareStatement("UPDATE authn_requests_tbl SET access_time = ? WHERE session_id = ?")) {
-                    ps.setTimestamp(1, Timestamp.valueOf(java.time.LocalDateTime.now(Clock.systemDefaultZone())));
-                    ps.setString(2, getSessionId(session));
-                    ps.executeUpdate();
-                }
+                touch(connection, SessionTable.AUTHN_REQUESTS, getSessionId(session));
             }
 
             return authnRequestWrapper;
@@ -281,17 +328,13 @@ public class DatabaseSessionHandler implements SessionHandler {
                 ps.setString(1, getSessionId(session));
                 try(ResultSet rs = ps.executeQuery()) {
                     if (rs.next()) {
-                        logoutRequestWrapper = new LogoutRequestWrapper((LogoutRequest) StringUtil.base64ToXMLObject(rs.getString(1)));
+                        logoutRequestWrapper = codec.decodeLogoutRequest(rs.getString(1));
                     }
                 }
             }
 
             if (null != logoutRequestWrapper) {
-                try (PreparedStatement ps = connection.prepareStatement("UPDATE logout_requests_tbl SET access_time = ? WHERE session_id = ?")) {
-                    ps.setTimestamp(1, Timestamp.valueOf(java.time.LocalDateTime.now(Clock.systemDefaultZone())));
-                    ps.setString(2, getSessionId(session));
-                    ps.executeUpdate();
-                }
+                touch(connection, SessionTable.LOGOUT_REQUESTS, getSessionId(session));
             }
 
             return logoutRequestWrapper;
@@ -302,6 +345,71 @@ public class DatabaseSessionHandler implements SessionHandler {
         }
     }
 
+    /**
+     * Get ID of the Assertion on the current session without loading the Assertion
+     *
+     * @param session HTTP session
+     * @return Assertion ID, or null if no Assertion is stored on the session
+     */
+    public String getAssertionId(HttpSession session) {
+        try (Connection connection=ds.getConnection()){
+            connection.setAutoCommit(true);
+
+            String assertionId = null;
+
+            try(PreparedStatement ps = connection.prepareStatement("SELECT assertion_id FROM assertions_tbl WHERE session_id = ?")) {
+                ps.setString(1, getSessionId(session));
+                try(ResultSet rs = ps.executeQuery()) {
+                    if (rs.next()) {
+                        assertionId = rs.getString(1);
+                    }
+                }
+            }
+
+            if (null != assertionId) {
+                touch(connection, SessionTable.ASSERTIONS, getSessionId(session));
+            }
+
+            return assertionId;
+
+        } catch (SQLException e) {
+            log.error("Failed retrieving assertion id matching sessionId", e);
+            throw new RuntimeException("Failed retrieving assertion id matching sessionId", e);
+        }
+    }
+
+    /**
+     * Is an AuthnRequest stored on the current session, checked without loading the AuthnRequest
+     *
+     * @param session HTTP session
+     * @return true if an AuthnRequest is stored on the session
+     */
+    @Override
+    public boolean hasAuthnRequest(HttpSession session) {
+        try (Connection connection=ds.getConnection()){
+            connection.setAutoCommit(true);
+
+            boolean found;
+
+            try(PreparedStatement ps = connection.prepareStatement("SELECT '1' FROM authn_requests_tbl WHERE session_id = ?")) {
+                ps.setString(1, getSessionId(session));
+                try(ResultSet rs = ps.executeQuery()) {
+                    found = rs.next();
+                }
+            }
+
+            if (found) {
+                touch(connection, SessionTable.AUTHN_REQUESTS, getSessionId(session));
+            }
+
+            return found;
+
+        } catch (SQLException e) {
+            log.error("Failed retrieving authn request matching sessionId", e);
+            throw new RuntimeException("Failed retrieving authn request matching sessionId", e);
+        }
+    }
+
     /**
      * Get OIOSAML session ID for session with session index
      *
@@ -355,61 +463,115 @@ public class DatabaseSessionHandler implements SessionHandler {
      */
     @Override
     public void cleanup(final long maxInactiveIntervalSeconds) {
-        try (Connection connection=ds.getConnection()){
-            connection.setAutoCommit(true);
-
-            final long replayCleanupDelay = (long) 24 * 60 * 60; /* Save replay for a day */
-
-            try(PreparedStatement ps = connection.prepareStatement("SELECT session_id, assertion_id, subject_name_id FROM assertions_tbl WHERE access_time < ?")) {
-                ps.setTimestamp(1, Timestamp.valueOf(java.time.LocalDateTime
-                        .now(Clock.systemDefaultZone())
-                        .minusSeconds(maxInactiveIntervalSeconds)));
-                try(ResultSet rs = ps.executeQuery()) {
-                    while(rs.next()) {
-                        OIOSAML3Service.getAuditService().auditLog(new AuditService
-                                .Builder()
-                                .withAuthnAttribute("ACTION", "TIMEOUT")
-                                .withAuthnAttribute("DESCRIPTION", "SessionDestroyed")
-                                .withAuthnAttribute("SP_SESSION_ID", rs.getString(1))
-                                .withAuthnAttribute("ASSERTION_ID", rs.getString(2))
-                                .withAuthnAttribute("SUBJECT_NAME_ID", rs.getString(3)));
-                    }
-                }
-            }
-
-            try(PreparedStatement ps = connection.prepareStatement("DELETE FROM assertions_tbl WHERE access_time < ?")) {
-                ps.setTimestamp(1, Timestamp.valueOf(java.time.LocalDateTime
-                        .now(Clock.systemDefaultZone())
-                        .minusSeconds(maxInactiveIntervalSeconds)));
-                ps.executeUpdate();
-            }
-
-            try(PreparedStatement ps = connection.prepareStatement("DELETE FROM authn_requests_tbl WHERE access_time < ?")) {
-                ps.setTimestamp(1, Timestamp.valueOf(java.time.LocalDateTime
-                        .now(Clock.systemDefaultZone())
-                        .minusSeconds(maxInactiveIntervalSeconds)));
-                ps.executeUpdate();
+        if (null != touchBuffer) {
+            try {
+                // Persist buffered access times, so recently used sessions are not removed
+                touchBuffer.flush();
+            } catch (SQLException e) {
+                log.warn("Unable to flush access times before cleanup", e);
             }
+        }
 
-            try(PreparedStatement ps = connection.prepareStatement("DELETE FROM logout_requests_tbl WHERE access_time < ?")) {
-                ps.setTimestamp(1, Timestamp.valueOf(java.time.LocalDateTime
-                        .now(Clock.systemDefaultZone())
-                        .minusSeconds(maxInactiveIntervalSeconds)));
-                ps.executeUpdate();
+        DatabaseLease lease = cleanupLease;
+        if (null != lease) {
+            try {
+                if (!lease.tryAcquire(getCleanupLeaseSeconds(cleanupIntervalSeconds > 0 ? cleanupIntervalSeconds : maxInactiveIntervalSeconds))) {
+                    log.debug("Skip cleanup, lease '{}' is held by another node", lease.getLockName());
+                    return;
+                }
+            } catch (SQLException e) {
+                log.warn("Unable to acquire lease '{}', running cleanup without coordination", lease.getLockName(), e);
             }
+        }
 
-            try(PreparedStatement ps = connection.prepareStatement("DELETE FROM replay_tbl WHERE access_time < ?")) {
-                ps.setTimestamp(1, Timestamp.valueOf(java.time.LocalDateTime
-                        .now(Clock.systemDefaultZone())
-                        .minusSeconds(replayCleanupDelay)));
-                ps.executeUpdate();
-            }
+        final long replayCleanupDelay = (long) 24 * 60 * 60; /* Save replay for a day */
+        Timestamp sessionCutoff = Timestamp.valueOf(java.time.LocalDateTime
+                .now(Clock.systemDefaultZone())
+                .minusSeconds(maxInactiveIntervalSeconds));
+        Timestamp replayCutoff = Timestamp.valueOf(java.time.LocalDateTime
+                .now(Clock.systemDefaultZone())
+                .minusSeconds(replayCleanupDelay));
 
+        try (Connection connection=ds.getConnection()){
+            int assertions = deleteExpired(connection, "assertions_tbl", "session_id, assertion_id, subject_name_id", sessionCutoff,
+                    row -> OIOSAML3Service.getAuditService().auditLog(new AuditService
+                            .Builder()
+                            .withAuthnAttribute("ACTION", "TIMEOUT")
+                            .withAuthnAttribute("DESCRIPTION", "SessionDestroyed")
+                            .withAuthnAttribute("SP_SESSION_ID", row[0])
+                            .withAuthnAttribute("ASSERTION_ID", row[1])
+                            .withAuthnAttribute("SUBJECT_NAME_ID", row[2])));
+            int authnRequests = deleteExpired(connection, "authn_requests_tbl", "session_id", sessionCutoff, row -> {});
+            int logoutRequests = deleteExpired(connection, "logout_requests_tbl", "session_id", sessionCutoff, row -> {});
+            int replays = deleteExpired(connection, "replay_tbl", "assertion_id", replayCutoff, row -> {});
+
+            log.debug("Cleanup removed {} assertions, {} authn requests, {} logout requests and {} replay entries",
+                    assertions, authnRequests, logoutRequests, replays);
         } catch (SQLException e) {
             log.error("Failed running cleanup", e);
         }
     }
 
+    /**
+     * Delete rows with access time before the cutoff, in transactions of at most cleanupBatchSize rows so large
+     * cleanups do not hold long locks. Each deleted row is passed to the handler after its transaction has committed.
+     *
+     * @param columns key column first, followed by any columns needed by the handler
+     */
+    private int deleteExpired(Connection connection, String tableName, String columns, Timestamp cutoff, Consumer<String[]> handler) throws SQLException {
+        int batchSize = cleanupBatchSize;
+        String keyColumn = columns.split(",")[0].trim();
+        int deleted = 0;
+
+        connection.setAutoCommit(false);
+        try(PreparedStatement select = connection.prepareStatement(String.format("SELECT %s FROM %s WHERE access_time < ?", columns, tableName));
+            PreparedStatement delete = connection.prepareStatement(String.format("DELETE FROM %s WHERE %s = ? AND access_time < ?", tableName, keyColumn))) {
+            select.setMaxRows(batchSize);
+            select.setFetchSize(batchSize);
+
+            List<String[]> rows;
+            do {
+                rows = new ArrayList<>();
+                select.setTimestamp(1, cutoff);
+                try(ResultSet rs = select.executeQuery()) {
+                    int columnCount = rs.getMetaData().getColumnCount();
+                    while (rs.next() && rows.size() < batchSize) {
+                        String[] row = new String[columnCount];
+                        for (int i = 0; i < columnCount; i++) {
+                            row[i] = rs.getString(i + 1);
+                        }
+                        rows.add(row);
+                    }
+                }
+                if (rows.isEmpty()) {
+                    break;
+                }
+
+                for (String[] row : rows) {
+                    delete.setString(1, row[0]);
+                    delete.setTimestamp(2, cutoff);
+                    delete.addBatch();
+                }
+                int[] counts = delete.executeBatch();
+                connection.commit();
+
+                // A row accessed after it was selected is no longer expired and is kept
+                for (int i = 0; i < rows.size(); i++) {
+                    if (i >= counts.length || counts[i] > 0 || counts[i] == Statement.SUCCESS_NO_INFO) {
+                        handler.accept(rows.get(i));
+                        deleted++;
+                    }
+                }
+            } while (rows.size() == batchSize);
+        } catch (SQLException | RuntimeException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(true);
+        }
+        return deleted;
+    }
+
     private void logout(String sessionId) {
         log.debug("Invalidate OIOSAML session '{}'", sessionId);
         try (Connection connection=ds.getConnection()) {
@@ -419,6 +581,10 @@ public class DatabaseSessionHandler implements SessionHandler {
                 return;
             }
 
+            if (null != touchBuffer) {
+                touchBuffer.remove(sessionId);
+            }
+
             try (PreparedStatement ps = connection.prepareStatement("DELETE FROM assertions_tbl WHERE session_id = ?")) {
                 ps.setString(1, sessionId);
                 ps.executeUpdate();
@@ -439,18 +605,13 @@ public class DatabaseSessionHandler implements SessionHandler {
                 ps.setString(1, sessionId);
                 try(ResultSet rs = ps.executeQuery()) {
                     if (rs.next()) {
-                        assertionWrapper = new AssertionWrapper(
-                                (Assertion) StringUtil.base64ToXMLObject(rs.getString(1)));
+                        assertionWrapper = codec.decodeAssertion(rs.getString(1));
                     }
                 }
             }
 
             if (null != assertionWrapper) {
-                try(PreparedStatement ps = connection.prepareStatement("UPDATE assertions_tbl SET access_time = ? WHERE session_id = ?")) {
-                    ps.setTimestamp(1, Timestamp.valueOf(java.time.LocalDateTime.now(Clock.systemDefaultZone())));
-                    ps.setString(2, sessionId);
-                    ps.executeUpdate();
-                }
+                touch(connection, SessionTable.ASSERTIONS, sessionId);
             }
 
             return assertionWrapper;
@@ -460,4 +621,46 @@ public class DatabaseSessionHandler implements SessionHandler {
             throw new RuntimeException("Failed retrieving assertion matching sessionId", e);
         }
     }
+
+    /**
+     * Write buffered access times and stop the background flush.
+     */
+    public void close() {
+        if (null != touchBuffer) {
+            touchBuffer.close();
+        }
+        if (null != cleanupLease) {
+            try {
+                cleanupLease.release();
+            } catch (SQLException e) {
+                log.warn("Unable to release lease '{}'", cleanupLease.getLockName(), e);
+            }
+        }
+    }
+
+    private void touch(Connection connection, SessionTable table, String sessionId) throws SQLException {
+        Timestamp now = Timestamp.valueOf(java.time.LocalDateTime.now(Clock.systemDefaultZone()));
+        if (null != touchBuffer) {
+            touchBuffer.touch(table, sessionId, now);
+            return;
+        }
+
+        try(PreparedStatement ps = connection.prepareStatement("UPDATE " + table.getTableName() + " SET access_time = ? WHERE session_id = ?")) {
+            ps.setTimestamp(1, now);
+            ps.setString(2, sessionId);
+            ps.executeUpdate();
+        }
+    }
+
+    private SqlDialect getDialect(Connection connection) throws SQLException {
+        if (null == dialect) {
+            dialect = SqlDialect.fromConnection(connection);
+        }
+        return dialect;
+    }
+
+    static boolean isConstraintViolation(SQLException e) {
+        return e instanceof SQLIntegrityConstraintViolationException
+                || (null != e.getSQLState() && e.getSQLState().startsWith("23"));
+    }
 }
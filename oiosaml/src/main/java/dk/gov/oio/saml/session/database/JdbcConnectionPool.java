@@ -0,0 +1,506 @@
+package dk.gov.oio.saml.session.database;
+
+import dk.gov.oio.saml.util.StringUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTimeoutException;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded JDBC connection pool used by {@link JdbcSessionHandlerFactory}.
+ * <p>
+ * Connections are handed out as proxies, calling {@link Connection#close()} returns the physical connection to the pool.
+ * Idle connections are reused most-recently-used first, validated on borrow, retired after their maximum lifetime and
+ * connections held longer than the leak detection threshold are reported in the log.
+ */
+public class JdbcConnectionPool implements DataSource, AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(JdbcConnectionPool.class);
+
+    private static final int VALIDATION_TIMEOUT_SECONDS = 5;
+    private static final long HOUSEKEEPING_INTERVAL_SECONDS = 30;
+
+    private final String url;
+    private final String username;
+    private final String password;
+    private final int maxSize;
+    private final int minIdle;
+    private final int maxIdle;
+    private final boolean validateOnBorrow;
+    private final long maxLifetimeMillis;
+    private final long leakDetectionThresholdMillis;
+    private final long borrowTimeoutMillis;
+
+    private final LinkedBlockingDeque<PooledConnection> idleConnections = new LinkedBlockingDeque<>();
+    private final Set<PooledConnection> borrowedConnections = ConcurrentHashMap.newKeySet();
+    private final Semaphore permits;
+    private final AtomicInteger totalConnections = new AtomicInteger();
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+    private final ScheduledExecutorService housekeeper;
+
+    // Metrics
+    private final AtomicLong createdCount = new AtomicLong();
+    private final AtomicLong destroyedCount = new AtomicLong();
+    private final AtomicLong borrowCount = new AtomicLong();
+    private final AtomicLong borrowTimeoutCount = new AtomicLong();
+    private final AtomicLong validationFailureCount = new AtomicLong();
+    private final AtomicLong leakCount = new AtomicLong();
+
+    private JdbcConnectionPool(Builder builder) {
+        this.url = builder.url;
+        this.username = builder.username;
+        this.password = builder.password;
+        this.maxSize = builder.maxSize;
+        this.minIdle = Math.min(builder.minIdle, builder.maxSize);
+        this.maxIdle = Math.max(Math.min(builder.maxIdle, builder.maxSize), this.minIdle);
+        this.validateOnBorrow = builder.validateOnBorrow;
+        this.maxLifetimeMillis = TimeUnit.SECONDS.toMillis(builder.maxLifetime);
+        this.leakDetectionThresholdMillis = TimeUnit.SECONDS.toMillis(builder.leakDetectionThreshold);
+        this.borrowTimeoutMillis = TimeUnit.SECONDS.toMillis(builder.borrowTimeout);
+        this.permits = new Semaphore(maxSize, true);
+
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "oiosaml-jdbc-pool-housekeeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.housekeeper.scheduleWithFixedDelay(this::housekeeping, 0, HOUSEKEEPING_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Borrow a connection from the pool, creating a new physical connection if no valid idle connection exists.
+     *
+     * @return connection proxy, closing it returns the connection to the pool
+     * @throws SQLTimeoutException if no connection becomes available within the borrow timeout
+     */
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (closed.get()) {
+            throw new SQLException("Connection pool is closed");
+        }
+
+        try {
+            if (!permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                borrowTimeoutCount.incrementAndGet();
+                throw new SQLTimeoutException(String.format("Timeout waiting %d ms for a connection from pool '%s'", borrowTimeoutMillis, url));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection", e);
+        }
+
+        try {
+            PooledConnection pooled = borrowIdle();
+            if (pooled == null) {
+                pooled = createConnection();
+            }
+            pooled.borrowed();
+            borrowedConnections.add(pooled);
+            borrowCount.incrementAndGet();
+            return pooled.proxy;
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    @Override
+    public Connection getConnection(String usernameInput, String passwordInput) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Pooled connections are created with the configured credentials");
+    }
+
+    /**
+     * Close the pool and all connections currently idle. Borrowed connections are closed when returned.
+     */
+    @Override
+    public void close() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        log.debug("Closing connection pool {}", this);
+        housekeeper.shutdownNow();
+
+        PooledConnection pooled;
+        while ((pooled = idleConnections.pollFirst()) != null) {
+            destroy(pooled);
+        }
+    }
+
+    public boolean isClosed() {
+        return closed.get();
+    }
+
+    public int getActiveConnections() {
+        return borrowedConnections.size();
+    }
+
+    public int getIdleConnections() {
+        return idleConnections.size();
+    }
+
+    public int getTotalConnections() {
+        return totalConnections.get();
+    }
+
+    public int getThreadsAwaitingConnection() {
+        return permits.getQueueLength();
+    }
+
+    public long getCreatedCount() {
+        return createdCount.get();
+    }
+
+    public long getDestroyedCount() {
+        return destroyedCount.get();
+    }
+
+    public long getBorrowCount() {
+        return borrowCount.get();
+    }
+
+    public long getBorrowTimeoutCount() {
+        return borrowTimeoutCount.get();
+    }
+
+    public long getValidationFailureCount() {
+        return validationFailureCount.get();
+    }
+
+    public long getLeakCount() {
+        return leakCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("JdbcConnectionPool{url='%s', active=%d, idle=%d, total=%d, maxSize=%d, created=%d, destroyed=%d, borrowed=%d, timeouts=%d, validationFailures=%d, leaks=%d}",
+                url, getActiveConnections(), getIdleConnections(), getTotalConnections(), maxSize,
+                getCreatedCount(), getDestroyedCount(), getBorrowCount(), getBorrowTimeoutCount(),
+                getValidationFailureCount(), getLeakCount());
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        return DriverManager.getLogWriter();
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Unsupported method");
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Unsupported method");
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        return DriverManager.getLoginTimeout();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        throw new SQLException(String.format("Pool does not implement '%s'", iface.getName()));
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this);
+    }
+
+    @Override
+    public java.util.logging.Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException("Unsupported method");
+    }
+
+    private PooledConnection borrowIdle() {
+        PooledConnection pooled;
+        while ((pooled = idleConnections.pollFirst()) != null) {
+            if (pooled.isExpired()) {
+                destroy(pooled);
+                continue;
+            }
+            if (validateOnBorrow && !isValid(pooled)) {
+                validationFailureCount.incrementAndGet();
+                log.debug("Discarding invalid connection from pool '{}'", url);
+                destroy(pooled);
+                continue;
+            }
+            return pooled;
+        }
+        return null;
+    }
+
+    private PooledConnection createConnection() throws SQLException {
+        Connection connection = StringUtil.isNotEmpty(username) ?
+                DriverManager.getConnection(url, username, password) :
+                DriverManager.getConnection(url);
+
+        totalConnections.incrementAndGet();
+        createdCount.incrementAndGet();
+        return new PooledConnection(connection);
+    }
+
+    private void release(PooledConnection pooled) {
+        borrowedConnections.remove(pooled);
+        try {
+            if (closed.get() || pooled.isExpired() || !reset(pooled) || idleConnections.size() >= maxIdle) {
+                destroy(pooled);
+            } else {
+                idleConnections.offerFirst(pooled);
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    private boolean reset(PooledConnection pooled) {
+        try {
+            Connection connection = pooled.connection;
+            if (connection.isClosed()) {
+                return false;
+            }
+            if (!connection.getAutoCommit()) {
+                connection.rollback();
+                connection.setAutoCommit(true);
+            }
+            connection.clearWarnings();
+            return true;
+        } catch (SQLException e) {
+            log.debug("Unable to reset connection from pool '{}'", url, e);
+            return false;
+        }
+    }
+
+    private boolean isValid(PooledConnection pooled) {
+        try {
+            return pooled.connection.isValid(VALIDATION_TIMEOUT_SECONDS);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void destroy(PooledConnection pooled) {
+        totalConnections.decrementAndGet();
+        destroyedCount.incrementAndGet();
+        try {
+            pooled.connection.close();
+        } catch (SQLException e) {
+            log.debug("Unable to close connection from pool '{}'", url, e);
+        }
+    }
+
+    private void housekeeping() {
+        try {
+            // Retire idle connections past their lifetime, oldest are at the tail
+            Iterator<PooledConnection> iterator = idleConnections.descendingIterator();
+            while (iterator.hasNext()) {
+                PooledConnection pooled = iterator.next();
+                if (pooled.isExpired() && idleConnections.remove(pooled)) {
+                    destroy(pooled);
+                }
+            }
+
+            // Keep the minimum number of idle connections ready
+            while (!closed.get() && idleConnections.size() < minIdle && totalConnections.get() < maxSize) {
+                if (!topUpIdle()) {
+                    break;
+                }
+            }
+
+            // Report connections borrowed longer than the threshold
+            if (leakDetectionThresholdMillis > 0) {
+                long now = System.currentTimeMillis();
+                for (PooledConnection pooled : borrowedConnections) {
+                    if (!pooled.leakReported && now - pooled.borrowedAt > leakDetectionThresholdMillis) {
+                        pooled.leakReported = true;
+                        leakCount.incrementAndGet();
+                        log.warn("Connection from pool '{}' has been borrowed for {} ms, possible leak", url, now - pooled.borrowedAt, pooled.borrowStack);
+                    }
+                }
+            }
+        } catch (Exception e) {
+            log.warn("Connection pool housekeeping failed for '{}'", url, e);
+        }
+    }
+
+    private boolean topUpIdle() throws SQLException {
+        // Hold a permit while creating, so the housekeeper and borrowers together never exceed the pool size
+        if (!permits.tryAcquire()) {
+            return false;
+        }
+
+        try {
+            if (totalConnections.get() >= maxSize) {
+                return false;
+            }
+
+            PooledConnection pooled = createConnection();
+            idleConnections.offerLast(pooled);
+
+            // The pool may have been closed while connecting, after it closed its idle connections
+            if (closed.get() && idleConnections.remove(pooled)) {
+                destroy(pooled);
+                return false;
+            }
+            return true;
+        } finally {
+            permits.release();
+        }
+    }
+
+    private class PooledConnection implements InvocationHandler {
+        private final Connection connection;
+        private final long createdAt = System.currentTimeMillis();
+        private final Connection proxy;
+        private volatile long borrowedAt;
+        private volatile Throwable borrowStack;
+        private volatile boolean leakReported;
+        private volatile boolean returned = true;
+
+        private PooledConnection(Connection connection) {
+            this.connection = connection;
+            this.proxy = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class}, this);
+        }
+
+        private void borrowed() {
+            borrowedAt = System.currentTimeMillis();
+            borrowStack = leakDetectionThresholdMillis > 0 ? new Throwable("Connection borrowed here") : null;
+            leakReported = false;
+            returned = false;
+        }
+
+        private boolean isExpired() {
+            return maxLifetimeMillis > 0 && System.currentTimeMillis() - createdAt > maxLifetimeMillis;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    synchronized (this) {
+                        if (!returned) {
+                            returned = true;
+                            release(this);
+                        }
+                    }
+                    return null;
+                case "isClosed":
+                    return returned || connection.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled" + connection;
+                default:
+                    break;
+            }
+
+            if (returned) {
+                throw new SQLException("Connection has been returned to the pool");
+            }
+            try {
+                return method.invoke(connection, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    public static class Builder {
+        private String url;
+        private String username;
+        private String password;
+        private int maxSize = 10;
+        private int minIdle = 0;
+        private int maxIdle = 10;
+        private boolean validateOnBorrow = true;
+        private int maxLifetime = 30 * 60;
+        private int leakDetectionThreshold = 0;
+        private int borrowTimeout = 30;
+
+        public JdbcConnectionPool build() {
+            if (StringUtil.isEmpty(url)) {
+                throw new IllegalArgumentException("Cannot create connection pool without JDBC url");
+            }
+            if (maxSize < 1) {
+                throw new IllegalArgumentException(String.format("Connection pool max size must be positive, was %d", maxSize));
+            }
+            return new JdbcConnectionPool(this);
+        }
+
+        public Builder setUrl(String url) {
+            this.url = url;
+            return this;
+        }
+
+        public Builder setUsername(String username) {
+            this.username = username;
+            return this;
+        }
+
+        public Builder setPassword(String password) {
+            this.password = password;
+            return this;
+        }
+
+        public Builder setMaxSize(int maxSize) {
+            this.maxSize = maxSize;
+            return this;
+        }
+
+        public Builder setMinIdle(int minIdle) {
+            this.minIdle = minIdle;
+            return this;
+        }
+
+        public Builder setMaxIdle(int maxIdle) {
+            this.maxIdle = maxIdle;
+            return this;
+        }
+
+        public Builder setValidateOnBorrow(boolean validateOnBorrow) {
+            this.validateOnBorrow = validateOnBorrow;
+            return this;
+        }
+
+        public Builder setMaxLifetime(int maxLifetime) {
+            this.maxLifetime = maxLifetime;
+            return this;
+        }
+
+        public Builder setLeakDetectionThreshold(int leakDetectionThreshold) {
+            this.leakDetectionThreshold = leakDetectionThreshold;
+            return this;
+        }
+
+        public Builder setBorrowTimeout(int borrowTimeout) {
+            this.borrowTimeout = borrowTimeout;
+            return this;
+        }
+    }
+}
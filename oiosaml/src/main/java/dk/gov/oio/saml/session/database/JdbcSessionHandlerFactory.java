@@ -3,19 +3,12 @@ package dk.gov.oio.saml.session.database;
 import dk.gov.oio.saml.config.Configuration;
 import dk.gov.oio.saml.session.SessionHandler;
 import dk.gov.oio.saml.session.SessionHandlerFactory;
+import dk.gov.oio.saml.session.SessionObjectCodec;
 import dk.gov.oio.saml.util.InternalException;
-import dk.gov.oio.saml.util.StringUtil;
 import org.opensaml.core.config.InitializationException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.sql.DataSource;
-import java.io.PrintWriter;
-import java.sql.Connection;
-import java.sql.DriverManager;
-import java.sql.SQLException;
-import java.sql.SQLFeatureNotSupportedException;
-
 /**
  * Factory for creating database session handler, created by the JDBC configuration defined in oiosaml.proeprties
  */
@@ -24,6 +17,8 @@ public class JdbcSessionHandlerFactory implements SessionHandlerFactory {
     private static final Logger log = LoggerFactory.getLogger(JdbcSessionHandlerFactory.class);
 
     private SessionHandler handler;
+    private DatabaseSessionHandler databaseHandler;
+    private JdbcConnectionPool connectionPool;
 
     public JdbcSessionHandlerFactory() {
     }
@@ -49,7 +44,24 @@ public class JdbcSessionHandlerFactory implements SessionHandlerFactory {
     @Override
     public void close() {
         log.debug("Closing factory with handler '{}'",handler);
+        if (null != databaseHandler) {
+            databaseHandler.close();
+        }
+        databaseHandler = null;
         handler = null;
+        if (null != connectionPool) {
+            connectionPool.close();
+            connectionPool = null;
+        }
+    }
+
+    /**
+     * Get the connection pool backing the session handler, exposing pool metrics.
+     *
+     * @return connection pool, or null if the factory is not configured
+     */
+    public JdbcConnectionPool getConnectionPool() {
+        return connectionPool;
     }
 
     /**
@@ -70,53 +82,30 @@ public class JdbcSessionHandlerFactory implements SessionHandlerFactory {
             throw new InitializationException(String.format("Unable to load driver '%s'", driver), e);
         }
 
-        this.handler = new DatabaseSessionHandler(new DataSource() {
-            @Override
-            public Connection getConnection() throws SQLException {
-                return StringUtil.isNotEmpty(username)?
-                        DriverManager.getConnection(url, username, password) :
-                        DriverManager.getConnection(url);
-            }
-
-            @Override
-            public Connection getConnection(String usernameInput, String passwordInput) throws SQLException {
-                throw new UnsupportedOperationException("Unsupported method");
-            }
-
-            @Override
-            public PrintWriter getLogWriter() throws SQLException {
-                throw new UnsupportedOperationException("Unsupported method");
-            }
-
-            @Override
-            public void setLogWriter(PrintWriter out) throws SQLException {
-                throw new UnsupportedOperationException("Unsupported method");
-            }
-
-            @Override
-            public void setLoginTimeout(int seconds) throws SQLException {
-                throw new UnsupportedOperationException("Unsupported method");
-            }
-
-            @Override
-            public int getLoginTimeout() throws SQLException {
-                throw new UnsupportedOperationException("Unsupported method");
-            }
-
-            @Override
-            public <T> T unwrap(Class<T> iface) throws SQLException {
-                throw new UnsupportedOperationException("Unsupported method");
-            }
-
-            @Override
-            public boolean isWrapperFor(Class<?> iface) throws SQLException {
-                throw new UnsupportedOperationException("Unsupported method");
-            }
-
-            @Override
-            public java.util.logging.Logger getParentLogger() throws SQLFeatureNotSupportedException {
-                return null;
-            }
-        });
+        // Release handler and pool from an earlier configuration
+        close();
+
+        this.connectionPool = new JdbcConnectionPool.Builder()
+                .setUrl(url)
+                .setUsername(username)
+                .setPassword(password)
+                .setMaxSize(config.getSessionHandlerJdbcPoolMaxSize())
+                .setMinIdle(config.getSessionHandlerJdbcPoolMinIdle())
+                .setMaxIdle(config.getSessionHandlerJdbcPoolMaxIdle())
+                .setValidateOnBorrow(config.isSessionHandlerJdbcPoolValidateOnBorrow())
+                .setMaxLifetime(config.getSessionHandlerJdbcPoolMaxLifetime())
+                .setLeakDetectionThreshold(config.getSessionHandlerJdbcPoolLeakDetectionThreshold())
+                .setBorrowTimeout(config.getSessionHandlerJdbcPoolBorrowTimeout())
+                .build();
+
+        this.databaseHandler = new DatabaseSessionHandler(connectionPool, null, config.getSessionHandlerDatabaseTouchInterval(),
+                SessionObjectCodec.create(config.getSessionHandlerDatabaseCodecClassName()));
+        this.databaseHandler.setCleanupBatchSize(config.getSessionHandlerDatabaseCleanupBatchSize());
+        if (config.isSessionHandlerDatabaseCleanupCoordinated()) {
+            this.databaseHandler.setCleanupLease(new DatabaseLease(connectionPool, DatabaseLease.SESSION_CLEANUP), config.getSessionCleanerInterval());
+        }
+        this.handler = config.getSessionHandlerDatabaseCacheSize() > 0 ?
+                new NearCacheSessionHandler(databaseHandler, config.getSessionHandlerDatabaseCacheSize(), config.getSessionHandlerDatabaseCacheTtl()) :
+                databaseHandler;
     }
 }
@@ -3,6 +3,7 @@ package dk.gov.oio.saml.session.database;
 import dk.gov.oio.saml.config.Configuration;
 import dk.gov.oio.saml.session.SessionHandler;
 import dk.gov.oio.saml.session.SessionHandlerFactory;
+import dk.gov.oio.saml.session.SessionObjectCodec;
 import dk.gov.oio.saml.util.InternalException;
 import org.opensaml.core.config.InitializationException;
 import org.slf4j.Logger;
@@ -19,6 +20,7 @@ public class JdniSessionHandlerFactory implements SessionHandlerFactory {
     private static final Logger log = LoggerFactory.getLogger(JdniSessionHandlerFactory.class);
 
     private SessionHandler handler;
+    private DatabaseSessionHandler databaseHandler;
 
     public JdniSessionHandlerFactory() {
     }
@@ -44,6 +46,10 @@ public class JdniSessionHandlerFactory implements SessionHandlerFactory {
     @Override
     public void close() {
         log.debug("Closing factory with handler '{}'",handler);
+        if (null != databaseHandler) {
+            databaseHandler.close();
+        }
+        databaseHandler = null;
         handler = null;
     }
 
@@ -58,7 +64,15 @@ public class JdniSessionHandlerFactory implements SessionHandlerFactory {
             InitialContext ctx = new InitialContext();
             DataSource ds = (DataSource) ctx.lookup(config.getSessionHandlerJndiName());
 
-            this.handler = new DatabaseSessionHandler(ds);
+            this.databaseHandler = new DatabaseSessionHandler(ds, null, config.getSessionHandlerDatabaseTouchInterval(),
+                SessionObjectCodec.create(config.getSessionHandlerDatabaseCodecClassName()));
+            this.databaseHandler.setCleanupBatchSize(config.getSessionHandlerDatabaseCleanupBatchSize());
+            if (config.isSessionHandlerDatabaseCleanupCoordinated()) {
+                this.databaseHandler.setCleanupLease(new DatabaseLease(ds, DatabaseLease.SESSION_CLEANUP), config.getSessionCleanerInterval());
+            }
+            this.handler = config.getSessionHandlerDatabaseCacheSize() > 0 ?
+                    new NearCacheSessionHandler(databaseHandler, config.getSessionHandlerDatabaseCacheSize(), config.getSessionHandlerDatabaseCacheTtl()) :
+                    databaseHandler;
         } catch (NamingException e) {
             throw new InitializationException("Unable to create JNDI database session handler", e);
         }
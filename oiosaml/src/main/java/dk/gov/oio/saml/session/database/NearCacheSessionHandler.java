@@ -0,0 +1,228 @@
+package dk.gov.oio.saml.session.database;
+
+import dk.gov.oio.saml.session.AssertionWrapper;
+import dk.gov.oio.saml.session.AuthnRequestWrapper;
+import dk.gov.oio.saml.session.LogoutRequestWrapper;
+import dk.gov.oio.saml.session.SessionHandler;
+import dk.gov.oio.saml.util.InternalException;
+import dk.gov.oio.saml.util.StringUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.http.HttpSession;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local cache of deserialized assertions in front of a {@link DatabaseSessionHandler}.
+ *
+ * <p>A cached assertion is only returned after checking that the database still holds the same assertion ID for the
+ * session, so a logout or a new assertion stored by another node invalidates the entry. The check reads a single
+ * short column and skips loading and parsing the assertion XML. Entries are evicted least recently used first when the
+ * cache is full, and after the time to live.</p>
+ */
+public class NearCacheSessionHandler implements SessionHandler {
+    private static final Logger log = LoggerFactory.getLogger(NearCacheSessionHandler.class);
+
+    private final DatabaseSessionHandler delegate;
+    private final long ttlMillis;
+    private final Map<String, CacheEntry> assertions;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong stale = new AtomicLong();
+
+    /**
+     * Create cache in front of the database session handler.
+     *
+     * @param delegate   database session handler
+     * @param maxEntries maximum number of cached assertions
+     * @param ttlSeconds seconds an assertion is kept in the cache
+     */
+    public NearCacheSessionHandler(DatabaseSessionHandler delegate, final int maxEntries, long ttlSeconds) {
+        this.delegate = delegate;
+        this.ttlMillis = TimeUnit.SECONDS.toMillis(ttlSeconds);
+        this.assertions = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    @Override
+    public void storeAuthnRequest(HttpSession session, AuthnRequestWrapper request) throws InternalException {
+        delegate.storeAuthnRequest(session, request);
+    }
+
+    @Override
+    public void storeAssertion(HttpSession session, AssertionWrapper assertion) throws InternalException {
+        String sessionId = getSessionId(session);
+        evict(sessionId);
+        delegate.storeAssertion(session, assertion);
+
+        if (null != assertion && StringUtil.isNotEmpty(assertion.getID())) {
+            put(sessionId, assertion);
+        }
+    }
+
+    @Override
+    public void storeLogoutRequest(HttpSession session, LogoutRequestWrapper request) throws InternalException {
+        delegate.storeLogoutRequest(session, request);
+    }
+
+    @Override
+    public AuthnRequestWrapper getAuthnRequest(HttpSession session) {
+        return delegate.getAuthnRequest(session);
+    }
+
+    /**
+     * Get Assertion from the current session, served from the cache while the database holds the same assertion ID
+     *
+     * @param session HTTP session
+     * @return Assertion from current session
+     */
+    @Override
+    public AssertionWrapper getAssertion(HttpSession session) {
+        String sessionId = getSessionId(session);
+        CacheEntry entry = get(sessionId);
+
+        if (null != entry) {
+            String assertionId = delegate.getAssertionId(session);
+            if (entry.assertion.getID().equals(assertionId)) {
+                hits.incrementAndGet();
+                return entry.assertion;
+            }
+            log.debug("Cached assertion '{}' on session '{}' is stale", entry.assertion.getID(), sessionId);
+            stale.incrementAndGet();
+            evict(sessionId);
+            if (null == assertionId) {
+                return null;
+            }
+        }
+
+        misses.incrementAndGet();
+        AssertionWrapper assertion = delegate.getAssertion(session);
+        if (null != assertion && StringUtil.isNotEmpty(assertion.getID())) {
+            put(sessionId, assertion);
+        }
+        return assertion;
+    }
+
+    @Override
+    public AssertionWrapper getAssertion(String sessionIndex) {
+        return delegate.getAssertion(sessionIndex);
+    }
+
+    @Override
+    public LogoutRequestWrapper getLogoutRequest(HttpSession session) {
+        return delegate.getLogoutRequest(session);
+    }
+
+    @Override
+    public boolean hasAuthnRequest(HttpSession session) {
+        return delegate.hasAuthnRequest(session);
+    }
+
+    @Override
+    public String getSessionId(HttpSession session) {
+        return delegate.getSessionId(session);
+    }
+
+    @Override
+    public String getSessionId(String sessionIndex) {
+        return delegate.getSessionId(sessionIndex);
+    }
+
+    @Override
+    public void logout(HttpSession session, AssertionWrapper assertion) {
+        if (null != session) {
+            evict(getSessionId(session));
+        }
+        if (null != assertion && StringUtil.isNotEmpty(assertion.getSessionIndex())) {
+            synchronized (assertions) {
+                assertions.values().removeIf(entry -> assertion.getSessionIndex().equals(entry.assertion.getSessionIndex()));
+            }
+        }
+        delegate.logout(session, assertion);
+    }
+
+    @Override
+    public void cleanup(long maxInactiveIntervalSeconds) {
+        long now = System.currentTimeMillis();
+        synchronized (assertions) {
+            assertions.values().removeIf(entry -> entry.isExpired(now));
+        }
+        delegate.cleanup(maxInactiveIntervalSeconds);
+    }
+
+    public DatabaseSessionHandler getDelegate() {
+        return delegate;
+    }
+
+    public int getSize() {
+        synchronized (assertions) {
+            return assertions.size();
+        }
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getStaleCount() {
+        return stale.get();
+    }
+
+    private CacheEntry get(String sessionId) {
+        if (null == sessionId) {
+            return null;
+        }
+        synchronized (assertions) {
+            CacheEntry entry = assertions.get(sessionId);
+            if (null != entry && entry.isExpired(System.currentTimeMillis())) {
+                assertions.remove(sessionId);
+                return null;
+            }
+            return entry;
+        }
+    }
+
+    private void put(String sessionId, AssertionWrapper assertion) {
+        if (null == sessionId) {
+            return;
+        }
+        synchronized (assertions) {
+            assertions.put(sessionId, new CacheEntry(assertion, System.currentTimeMillis() + ttlMillis));
+        }
+    }
+
+    private void evict(String sessionId) {
+        if (null == sessionId) {
+            return;
+        }
+        synchronized (assertions) {
+            assertions.remove(sessionId);
+        }
+    }
+
+    private static class CacheEntry {
+        private final AssertionWrapper assertion;
+        private final long expiresAt;
+
+        private CacheEntry(AssertionWrapper assertion, long expiresAt) {
+            this.assertion = assertion;
+            this.expiresAt = expiresAt;
+        }
+
+        private boolean isExpired(long now) {
+            return now > expiresAt;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package dk.gov.oio.saml.session.database;
+
+/**
+ * Session tables written by {@link DatabaseSessionHandler}, the first column is the primary key.
+ */
+public enum SessionTable {
+    ASSERTIONS("assertions_tbl",
+            new String[] { "session_id", "session_index", "assertion_id", "subject_name_id", "access_time", "xml_object" },
+            new String[] { "VARCHAR(255)", "VARCHAR(255)", "VARCHAR(255)", "VARCHAR(255)", "TIMESTAMP", "CLOB" }),
+    AUTHN_REQUESTS("authn_requests_tbl",
+            new String[] { "session_id", "access_time", "nsis_level", "request_path", "xml_object" },
+            new String[] { "VARCHAR(255)", "TIMESTAMP", "VARCHAR(100)", "VARCHAR(8000)", "CLOB" }),
+    LOGOUT_REQUESTS("logout_requests_tbl",
+            new String[] { "session_id", "access_time", "xml_object" },
+            new String[] { "VARCHAR(255)", "TIMESTAMP", "CLOB" });
+
+    private final String tableName;
+    private final String[] columns;
+    private final String[] types;
+
+    SessionTable(String tableName, String[] columns, String[] types) {
+        this.tableName = tableName;
+        this.columns = columns;
+        this.types = types;
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    public String getKeyColumn() {
+        return columns[0];
+    }
+
+    public int getColumnCount() {
+        return columns.length;
+    }
+
+    public String getColumn(int index) {
+        return columns[index];
+    }
+
+    public String getType(int index) {
+        return types[index];
+    }
+
+    public boolean isClob(int index) {
+        return "CLOB".equals(types[index]);
+    }
+}
@@ -0,0 +1,145 @@
+package dk.gov.oio.saml.session.database;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-behind buffer for session access times.
+ * <p>
+ * Reads only record the last access in memory, the buffer flushes them as one batched UPDATE per table on a fixed
+ * interval. A session is therefore written at most once per interval regardless of how often it is read.
+ */
+public class SessionTouchBuffer implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(SessionTouchBuffer.class);
+
+    private final DataSource ds;
+    private final Map<SessionTable, ConcurrentHashMap<String, Timestamp>> pending = new EnumMap<>(SessionTable.class);
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * Create buffer flushing touched sessions every interval.
+     *
+     * @param ds              data source for the session tables
+     * @param intervalSeconds seconds between flushes
+     */
+    public SessionTouchBuffer(DataSource ds, long intervalSeconds) {
+        this.ds = ds;
+        for (SessionTable table : SessionTable.values()) {
+            pending.put(table, new ConcurrentHashMap<>());
+        }
+
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "oiosaml-session-touch");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.scheduler.scheduleWithFixedDelay(this::flushQuietly, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Record access to the session row, later touches of the same row replace earlier ones.
+     *
+     * @param table     session table
+     * @param sessionId OIOSAML session ID
+     * @param time      access time
+     */
+    public void touch(SessionTable table, String sessionId, Timestamp time) {
+        if (null == sessionId) {
+            return;
+        }
+        pending.get(table).merge(sessionId, time, (previous, current) -> current.after(previous) ? current : previous);
+    }
+
+    /**
+     * Forget pending touches for the session, e.g. after logout.
+     *
+     * @param sessionId OIOSAML session ID
+     */
+    public void remove(String sessionId) {
+        if (null == sessionId) {
+            return;
+        }
+        for (Map<String, Timestamp> touches : pending.values()) {
+            touches.remove(sessionId);
+        }
+    }
+
+    /**
+     * Write all pending access times to the database.
+     *
+     * @throws SQLException on failure to write, pending touches are kept for the next flush
+     */
+    public synchronized void flush() throws SQLException {
+        try (Connection connection = ds.getConnection()) {
+            connection.setAutoCommit(true);
+
+            for (Map.Entry<SessionTable, ConcurrentHashMap<String, Timestamp>> entry : pending.entrySet()) {
+                ConcurrentHashMap<String, Timestamp> touches = entry.getValue();
+                if (touches.isEmpty()) {
+                    continue;
+                }
+
+                List<Map.Entry<String, Timestamp>> batch = new ArrayList<>(touches.entrySet().size());
+                for (Map.Entry<String, Timestamp> touch : touches.entrySet()) {
+                    batch.add(new AbstractMap.SimpleImmutableEntry<>(touch.getKey(), touch.getValue()));
+                }
+
+                // Never move access time backwards, the row may have been stored after the touch
+                try (PreparedStatement ps = connection.prepareStatement("UPDATE " + entry.getKey().getTableName() + " SET access_time = ? WHERE session_id = ? AND access_time < ?")) {
+                    for (Map.Entry<String, Timestamp> touch : batch) {
+                        ps.setTimestamp(1, touch.getValue());
+                        ps.setString(2, touch.getKey());
+                        ps.setTimestamp(3, touch.getValue());
+                        ps.addBatch();
+                    }
+                    ps.executeBatch();
+                }
+
+                for (Map.Entry<String, Timestamp> touch : batch) {
+                    touches.remove(touch.getKey(), touch.getValue());
+                }
+                log.debug("Flushed {} access time updates to '{}'", batch.size(), entry.getKey().getTableName());
+            }
+        }
+    }
+
+    public int getPendingCount() {
+        int count = 0;
+        for (Map<String, Timestamp> touches : pending.values()) {
+            count += touches.size();
+        }
+        return count;
+    }
+
+    /**
+     * Stop the scheduled flush and write pending access times.
+     */
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        flushQuietly();
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (SQLException | RuntimeException e) {
+            log.warn("Unable to flush session access times", e);
+        }
+    }
+}
@@ -0,0 +1,292 @@
+package dk.gov.oio.saml.session.database;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.StringReader;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntFunction;
+
+/**
+ * Database specific SQL used by {@link DatabaseSessionHandler}.
+ * <p>
+ * Rows are written with a single upsert statement (MERGE, ON CONFLICT or ON DUPLICATE KEY) where the database supports
+ * it, otherwise with a DELETE and INSERT in one transaction. The MySQL upsert uses a row alias and requires MySQL 8.0.19
+ * or later. Lease expiry in {@link DatabaseLease} is computed with the clock of the database.
+ */
+public enum SqlDialect {
+    HSQLDB {
+        @Override
+        String getUpsertSql(SessionTable table) {
+            return "MERGE INTO " + table.getTableName() + " t"
+                    + " USING (VALUES (" + join(table, i -> "CAST(? AS " + table.getType(i) + ")") + ")) AS v (" + join(table, table::getColumn) + ")"
+                    + " ON t." + table.getKeyColumn() + " = v." + table.getKeyColumn()
+                    + " WHEN MATCHED THEN UPDATE SET " + joinUpdate(table, i -> "t." + table.getColumn(i) + " = v." + table.getColumn(i))
+                    + " WHEN NOT MATCHED THEN INSERT (" + join(table, table::getColumn) + ") VALUES (" + join(table, i -> "v." + table.getColumn(i)) + ")";
+        }
+
+        @Override
+        String getCurrentTimestampSql() {
+            return "LOCALTIMESTAMP";
+        }
+
+        @Override
+        String getCurrentTimestampPlusSecondsSql() {
+            return "TIMESTAMPADD(SQL_TSI_SECOND, ?, LOCALTIMESTAMP)";
+        }
+    },
+    POSTGRESQL {
+        @Override
+        String getUpsertSql(SessionTable table) {
+            return "INSERT INTO " + table.getTableName() + " (" + join(table, table::getColumn) + ") VALUES (" + join(table, i -> "?") + ")"
+                    + " ON CONFLICT (" + table.getKeyColumn() + ") DO UPDATE SET " + joinUpdate(table, i -> table.getColumn(i) + " = EXCLUDED." + table.getColumn(i));
+        }
+
+        @Override
+        String getCurrentTimestampSql() {
+            return "(CURRENT_TIMESTAMP AT TIME ZONE 'UTC')";
+        }
+
+        @Override
+        String getCurrentTimestampPlusSecondsSql() {
+            return "((CURRENT_TIMESTAMP AT TIME ZONE 'UTC') + ? * INTERVAL '1 second')";
+        }
+    },
+    MYSQL {
+        // Row alias requires MySQL 8.0.19, VALUES() in ON DUPLICATE KEY UPDATE is deprecated since 8.0.20
+        @Override
+        String getUpsertSql(SessionTable table) {
+            return "INSERT INTO " + table.getTableName() + " (" + join(table, table::getColumn) + ") VALUES (" + join(table, i -> "?") + ") AS v"
+                    + " ON DUPLICATE KEY UPDATE " + joinUpdate(table, i -> table.getColumn(i) + " = v." + table.getColumn(i));
+        }
+
+        @Override
+        String getCurrentTimestampSql() {
+            return "UTC_TIMESTAMP()";
+        }
+
+        @Override
+        String getCurrentTimestampPlusSecondsSql() {
+            return "TIMESTAMPADD(SECOND, ?, UTC_TIMESTAMP())";
+        }
+    },
+    MARIADB {
+        // MariaDB has no row alias, VALUES() is its supported form
+        @Override
+        String getUpsertSql(SessionTable table) {
+            return "INSERT INTO " + table.getTableName() + " (" + join(table, table::getColumn) + ") VALUES (" + join(table, i -> "?") + ")"
+                    + " ON DUPLICATE KEY UPDATE " + joinUpdate(table, i -> table.getColumn(i) + " = VALUES(" + table.getColumn(i) + ")");
+        }
+
+        @Override
+        String getCurrentTimestampSql() {
+            return "UTC_TIMESTAMP()";
+        }
+
+        @Override
+        String getCurrentTimestampPlusSecondsSql() {
+            return "TIMESTAMPADD(SECOND, ?, UTC_TIMESTAMP())";
+        }
+    },
+    ORACLE {
+        @Override
+        String getUpsertSql(SessionTable table) {
+            return "MERGE INTO " + table.getTableName() + " t"
+                    + " USING (SELECT " + join(table, i -> "? AS " + table.getColumn(i)) + " FROM dual) v"
+                    + " ON (t." + table.getKeyColumn() + " = v." + table.getKeyColumn() + ")"
+                    + " WHEN MATCHED THEN UPDATE SET " + joinUpdate(table, i -> "t." + table.getColumn(i) + " = v." + table.getColumn(i))
+                    + " WHEN NOT MATCHED THEN INSERT (" + join(table, table::getColumn) + ") VALUES (" + join(table, i -> "v." + table.getColumn(i)) + ")";
+        }
+
+        @Override
+        String getCurrentTimestampSql() {
+            return "SYS_EXTRACT_UTC(SYSTIMESTAMP)";
+        }
+
+        @Override
+        String getCurrentTimestampPlusSecondsSql() {
+            return "(SYS_EXTRACT_UTC(SYSTIMESTAMP) + NUMTODSINTERVAL(?, 'SECOND'))";
+        }
+    },
+    SQLSERVER {
+        @Override
+        String getUpsertSql(SessionTable table) {
+            return "MERGE INTO " + table.getTableName() + " WITH (HOLDLOCK) AS t"
+                    + " USING (VALUES (" + join(table, i -> "?") + ")) AS v (" + join(table, table::getColumn) + ")"
+                    + " ON t." + table.getKeyColumn() + " = v." + table.getKeyColumn()
+                    + " WHEN MATCHED THEN UPDATE SET " + joinUpdate(table, i -> "t." + table.getColumn(i) + " = v." + table.getColumn(i))
+                    + " WHEN NOT MATCHED THEN INSERT (" + join(table, table::getColumn) + ") VALUES (" + join(table, i -> "v." + table.getColumn(i)) + ");";
+        }
+
+        @Override
+        String getCurrentTimestampSql() {
+            return "SYSUTCDATETIME()";
+        }
+
+        @Override
+        String getCurrentTimestampPlusSecondsSql() {
+            return "DATEADD(SECOND, ?, SYSUTCDATETIME())";
+        }
+    },
+    GENERIC {
+        @Override
+        String getUpsertSql(SessionTable table) {
+            return null;
+        }
+    };
+
+    private static final Logger log = LoggerFactory.getLogger(SqlDialect.class);
+
+    private final Map<SessionTable, String> upsertSql = new ConcurrentHashMap<>();
+
+    /**
+     * Get single statement upsert SQL for the table, binding the columns in table order.
+     *
+     * @param table session table
+     * @return upsert SQL or null if the dialect has no upsert statement
+     */
+    abstract String getUpsertSql(SessionTable table);
+
+    /**
+     * @return SQL expression for the current time of the database, in UTC where the database supports it
+     */
+    String getCurrentTimestampSql() {
+        return "CURRENT_TIMESTAMP";
+    }
+
+    /**
+     * @return SQL expression for the current time of the database plus a number of seconds bound as parameter
+     */
+    String getCurrentTimestampPlusSecondsSql() {
+        return "{fn TIMESTAMPADD(SQL_TSI_SECOND, ?, CURRENT_TIMESTAMP)}";
+    }
+
+    /**
+     * Insert or replace the row identified by the first value.
+     *
+     * @param connection database connection, the fallback runs in its own transaction when in auto-commit mode
+     * @param table      session table
+     * @param values     column values in table order, {@link String} or {@link Timestamp}
+     * @throws SQLException on failure to write the row
+     */
+    public void upsert(Connection connection, SessionTable table, Object... values) throws SQLException {
+        if (values.length != table.getColumnCount()) {
+            throw new IllegalArgumentException(String.format("Expected %d values for '%s' but got %d", table.getColumnCount(), table.getTableName(), values.length));
+        }
+
+        String sql = upsertSql.computeIfAbsent(table, this::getUpsertSql);
+        if (null != sql) {
+            try (PreparedStatement ps = connection.prepareStatement(sql)) {
+                bind(ps, table, values);
+                ps.executeUpdate();
+            }
+            return;
+        }
+
+        final boolean autoCommit = connection.getAutoCommit();
+        if (autoCommit) {
+            connection.setAutoCommit(false);
+        }
+        try {
+            try (PreparedStatement ps = connection.prepareStatement("DELETE FROM " + table.getTableName() + " WHERE " + table.getKeyColumn() + " = ?")) {
+                ps.setString(1, (String) values[0]);
+                ps.executeUpdate();
+            }
+            try (PreparedStatement ps = connection.prepareStatement("INSERT INTO " + table.getTableName() + " (" + join(table, table::getColumn) + ") VALUES (" + join(table, i -> "?") + ")")) {
+                bind(ps, table, values);
+                ps.executeUpdate();
+            }
+            if (autoCommit) {
+                connection.commit();
+            }
+        } catch (SQLException | RuntimeException e) {
+            if (autoCommit) {
+                connection.rollback();
+            }
+            throw e;
+        } finally {
+            if (autoCommit) {
+                connection.setAutoCommit(true);
+            }
+        }
+    }
+
+    /**
+     * Resolve dialect from the database product name reported by the JDBC driver.
+     *
+     * @param connection database connection
+     * @return matching dialect, {@link #GENERIC} if the database is unknown
+     */
+    public static SqlDialect fromConnection(Connection connection) throws SQLException {
+        SqlDialect dialect = fromProductName(connection.getMetaData().getDatabaseProductName());
+        log.debug("Using SQL dialect '{}' for session handler", dialect);
+        return dialect;
+    }
+
+    public static SqlDialect fromProductName(String productName) {
+        if (null == productName) {
+            return GENERIC;
+        }
+        String name = productName.toLowerCase(Locale.ROOT);
+        if (name.contains("hsql")) {
+            return HSQLDB;
+        }
+        if (name.contains("postgres")) {
+            return POSTGRESQL;
+        }
+        if (name.contains("mariadb")) {
+            return MARIADB;
+        }
+        if (name.contains("mysql")) {
+            return MYSQL;
+        }
+        if (name.contains("oracle")) {
+            return ORACLE;
+        }
+        if (name.contains("microsoft sql server")) {
+            return SQLSERVER;
+        }
+        return GENERIC;
+    }
+
+    private static void bind(PreparedStatement ps, SessionTable table, Object[] values) throws SQLException {
+        for (int i = 0; i < values.length; i++) {
+            Object value = values[i];
+            if (value instanceof Timestamp) {
+                ps.setTimestamp(i + 1, (Timestamp) value);
+            } else if (table.isClob(i) && null != value) {
+                ps.setClob(i + 1, new StringReader((String) value));
+            } else {
+                ps.setString(i + 1, (String) value);
+            }
+        }
+    }
+
+    private static String join(SessionTable table, IntFunction<String> element) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < table.getColumnCount(); i++) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+            builder.append(element.apply(i));
+        }
+        return builder.toString();
+    }
+
+    private static String joinUpdate(SessionTable table, IntFunction<String> element) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 1; i < table.getColumnCount(); i++) {
+            if (i > 1) {
+                builder.append(", ");
+            }
+            builder.append(element.apply(i));
+        }
+        return builder.toString();
+    }
+}
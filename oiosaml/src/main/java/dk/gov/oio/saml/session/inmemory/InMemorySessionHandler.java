@@ -31,31 +31,50 @@ import dk.gov.oio.saml.session.LogoutRequestWrapper;
 import dk.gov.oio.saml.session.SessionHandler;
 import dk.gov.oio.saml.util.InternalException;
 import dk.gov.oio.saml.util.StringUtil;
+import org.joda.time.DateTime;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.servlet.http.HttpSession;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Handle session state across requests and instances, using an in memory session storage.
  */
 public class InMemorySessionHandler implements SessionHandler {
     private static final Logger log = LoggerFactory.getLogger(InMemorySessionHandler.class);
-
-    private int sessionHandlerNumTrackedSessionIds;
+    private static final int DEFAULT_CLOCK_SKEW_MINUTES = 5;
+    private static final long DEFAULT_REPLAY_RETENTION_MILLIS = TimeUnit.HOURS.toMillis(1); // Assertions without NotOnOrAfter
 
     private final Map<String, TimeOutWrapper<AuthnRequestWrapper>> authnRequests = new ConcurrentHashMap<String, TimeOutWrapper<AuthnRequestWrapper>>();
     private final Map<String, TimeOutWrapper<AssertionWrapper>> assertions = new ConcurrentHashMap<String, TimeOutWrapper<AssertionWrapper>>();
     private final Map<String, TimeOutWrapper<LogoutRequestWrapper>> logoutRequests = new ConcurrentHashMap<String, TimeOutWrapper<LogoutRequestWrapper>>();
 
     private final Map<String, TimeOutWrapper<String>> sessionIndexMap = new ConcurrentHashMap<String, TimeOutWrapper<String>>();
-    private final ConcurrentSkipListSet<String> usedAssertionIds = new ConcurrentSkipListSet<>();
+
+    private final TimeOutIndex<String> authnRequestsIndex = new TimeOutIndex<>();
+    private final TimeOutIndex<String> assertionsIndex = new TimeOutIndex<>();
+    private final TimeOutIndex<String> logoutRequestsIndex = new TimeOutIndex<>();
+    private final TimeOutIndex<String> sessionIndexMapIndex = new TimeOutIndex<>();
+
+    private final ReplayCache usedAssertionIds;
+    private final long clockSkewMillis;
 
     public InMemorySessionHandler(int sessionHandlerNumTrackedSessionIds) {
-        this.sessionHandlerNumTrackedSessionIds = sessionHandlerNumTrackedSessionIds;
+        this(sessionHandlerNumTrackedSessionIds, DEFAULT_CLOCK_SKEW_MINUTES);
+    }
+
+    /**
+     * Create in memory session handler.
+     *
+     * @param sessionHandlerNumTrackedSessionIds maximum number of assertion IDs tracked for replay detection
+     * @param clockSkewMinutes                   minutes an assertion ID is tracked after the assertion has expired
+     */
+    public InMemorySessionHandler(int sessionHandlerNumTrackedSessionIds, int clockSkewMinutes) {
+        this.usedAssertionIds = new ReplayCache(sessionHandlerNumTrackedSessionIds);
+        this.clockSkewMillis = TimeUnit.MINUTES.toMillis(clockSkewMinutes);
     }
 
     /**
@@ -75,7 +94,7 @@ public class InMemorySessionHandler implements SessionHandler {
             log.debug("AuthRequest '{}' will replace '{}'", request.getId(), authnRequest.getId());
         }
         log.debug("Store AuthRequest '{}'", request.getId());
-        authnRequests.put(getSessionId(session),new TimeOutWrapper<>(request));
+        put(authnRequests, authnRequestsIndex, getSessionId(session), request);
     }
 
     /**
@@ -95,11 +114,10 @@ public class InMemorySessionHandler implements SessionHandler {
         }
 
         // Replay validation
-        if(usedAssertionIds.contains(assertion.getID())) {
+        if (!usedAssertionIds.register(assertion.getID(), getReplayExpiry(assertion))) {
             log.warn("Assertion '{}' is being replayed", assertion.getID());
             throw new IllegalArgumentException(String.format("Assertion ID being replayed: '%s'", assertion.getID()));
         }
-        usedAssertionIds.add(assertion.getID());
 
         // Save assertion
         AssertionWrapper existingAssertion = getAssertion(session);
@@ -114,8 +132,8 @@ public class InMemorySessionHandler implements SessionHandler {
         }
 
         log.debug("Store Assertion '{}'", assertion.getID());
-        assertions.put(getSessionId(session), new TimeOutWrapper<>(assertion));
-        sessionIndexMap.put(StringUtil.defaultIfEmpty(assertion.getSessionIndex(), assertion.getID()), new TimeOutWrapper<>(getSessionId(session)));
+        put(assertions, assertionsIndex, getSessionId(session), assertion);
+        put(sessionIndexMap, sessionIndexMapIndex, StringUtil.defaultIfEmpty(assertion.getSessionIndex(), assertion.getID()), getSessionId(session));
     }
 
     /**
@@ -135,7 +153,7 @@ public class InMemorySessionHandler implements SessionHandler {
             log.debug("LogoutRequest '{}' will replace '{}'", request.getID(), logoutRequest.getID());
         }
         log.debug("Store LogoutRequest '{}'", request.getID());
-        logoutRequests.put(getSessionId(session),new TimeOutWrapper<>(request));
+        put(logoutRequests, logoutRequestsIndex, getSessionId(session), request);
     }
 
     /**
@@ -261,34 +279,50 @@ public class InMemorySessionHandler implements SessionHandler {
         // so convert before comparing - otherwise sessions expire 1000x too early (issue #76).
         long maxInactiveIntervalMillis = maxInactiveIntervalSeconds * 1000L;
 
-        // Trim usedAssertionIds to size with sessionHandlerNumTrackedSessionIds
-        while (!usedAssertionIds.isEmpty() && usedAssertionIds.size() > sessionHandlerNumTrackedSessionIds) {
-            usedAssertionIds.remove(usedAssertionIds.pollFirst());
-        }
-        cleanup(sessionIndexMap, maxInactiveIntervalMillis, "SessionIndexMap");
-        cleanup(assertions, maxInactiveIntervalMillis, "Assertions");
-        cleanup(authnRequests, maxInactiveIntervalMillis, "AuthnRequests");
-        cleanup(logoutRequests, maxInactiveIntervalMillis, "LogoutRequests");
+        usedAssertionIds.purgeExpired();
+        cleanup(sessionIndexMap, sessionIndexMapIndex, maxInactiveIntervalMillis, "SessionIndexMap");
+        cleanup(assertions, assertionsIndex, maxInactiveIntervalMillis, "Assertions");
+        cleanup(authnRequests, authnRequestsIndex, maxInactiveIntervalMillis, "AuthnRequests");
+        cleanup(logoutRequests, logoutRequestsIndex, maxInactiveIntervalMillis, "LogoutRequests");
     }
 
-    private <E, T> void cleanup(Map<E, TimeOutWrapper<T>> map, long cleanupDelay, String msg) {
-        log.debug("Running cleanup timer on {}", map);
-        for (Object key : map.keySet()) {
-            TimeOutWrapper<T> tow = map.get(key);
-            if (tow.isExpired(cleanupDelay)) {
-                log.debug("Expiring {}", tow);
-                if (tow.getObject() instanceof AssertionWrapper) {
-                    OIOSAML3Service.getAuditService().auditLog(new AuditService
-                            .Builder()
-                            .withAuthnAttribute("ACTION", "TIMEOUT")
-                            .withAuthnAttribute("DESCRIPTION", "SessionDestroyed")
-                            .withAuthnAttribute("SP_SESSION_ID", String.valueOf(key))
-                            .withAuthnAttribute("ASSERTION_ID", ((AssertionWrapper) tow.getObject()).getID())
-                            .withAuthnAttribute("SUBJECT_NAME_ID", ((AssertionWrapper) tow.getObject()).getSubjectNameId()));
-                }
-                map.remove(key);
+    private <T> void cleanup(Map<String, TimeOutWrapper<T>> map, TimeOutIndex<String> index, long cleanupDelay, String msg) {
+        log.debug("Running cleanup timer on {}", msg);
+        // Only entries not accessed within the delay are visited
+        int expired = index.expire(map, cleanupDelay, (key, tow) -> {
+            log.debug("Expiring {}", tow);
+            if (tow.getObject() instanceof AssertionWrapper) {
+                OIOSAML3Service.getAuditService().auditLog(new AuditService
+                        .Builder()
+                        .withAuthnAttribute("ACTION", "TIMEOUT")
+                        .withAuthnAttribute("DESCRIPTION", "SessionDestroyed")
+                        .withAuthnAttribute("SP_SESSION_ID", key)
+                        .withAuthnAttribute("ASSERTION_ID", ((AssertionWrapper) tow.getObject()).getID())
+                        .withAuthnAttribute("SUBJECT_NAME_ID", ((AssertionWrapper) tow.getObject()).getSubjectNameId()));
             }
+        });
+        log.debug("Expired {} entries from {}", expired, msg);
+    }
+
+    private <T> void put(Map<String, TimeOutWrapper<T>> map, TimeOutIndex<String> index, String key, T object) {
+        TimeOutWrapper<T> wrapper = new TimeOutWrapper<>(object);
+        map.put(key, wrapper);
+        index.add(key, wrapper);
+    }
+
+    /**
+     * Assertion IDs are tracked until the assertion can no longer pass validation, the latest NotOnOrAfter of the
+     * conditions and subject confirmation plus the allowed clock skew.
+     */
+    private long getReplayExpiry(AssertionWrapper assertion) {
+        DateTime notOnOrAfter = assertion.getConditionTimeNotOnOrAfter();
+        DateTime confirmationTime = assertion.getConfirmationTime();
+        if (null == notOnOrAfter || (null != confirmationTime && confirmationTime.isAfter(notOnOrAfter))) {
+            notOnOrAfter = confirmationTime;
         }
+
+        long validUntil = null != notOnOrAfter ? notOnOrAfter.getMillis() : System.currentTimeMillis() + DEFAULT_REPLAY_RETENTION_MILLIS;
+        return validUntil + clockSkewMillis;
     }
 
     private void logout(String sessionId) {
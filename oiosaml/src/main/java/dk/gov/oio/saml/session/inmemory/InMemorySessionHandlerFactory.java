@@ -74,7 +74,7 @@ public class InMemorySessionHandlerFactory implements SessionHandlerFactory {
     @Override
     public synchronized void configure(Configuration config) throws InitializationException {
         if (null == handler) {
-            handler = new InMemorySessionHandler(config.getSessionHandlerInMemoryMaxNumberOfTrackedAssertionIds());
+            handler = new InMemorySessionHandler(config.getSessionHandlerInMemoryMaxNumberOfTrackedAssertionIds(), config.getClockSkew());
         }
     }
 }
@@ -0,0 +1,110 @@
+package dk.gov.oio.saml.session.inmemory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Bounded cache of assertion IDs used for replay detection.
+ *
+ * <p>Each ID is kept until the validity of its assertion has ended, at that point the assertion is rejected by
+ * validation anyway and the ID can safely be forgotten. Registering and checking an ID is a single lock-free hash
+ * lookup. Expired IDs are removed when the cache is full and on {@link #purgeExpired()}. Should the cache still be
+ * full, the IDs closest to expiry are evicted and a warning is logged, as replays of those IDs can no longer be
+ * detected.</p>
+ */
+public class ReplayCache {
+    private static final Logger log = LoggerFactory.getLogger(ReplayCache.class);
+
+    private final Map<String, Long> expiryById = new ConcurrentHashMap<>();
+    private final int maxEntries;
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * @param maxEntries maximum number of tracked IDs
+     */
+    public ReplayCache(int maxEntries) {
+        this.maxEntries = Math.max(1, maxEntries);
+    }
+
+    /**
+     * Register ID until it expires
+     *
+     * @param id        assertion ID
+     * @param expiresAt time in milliseconds when the ID may be used again
+     * @return true if the ID was registered, false if the ID is already registered and not expired
+     */
+    public boolean register(String id, long expiresAt) {
+        long now = System.currentTimeMillis();
+
+        Long existing = expiryById.putIfAbsent(id, expiresAt);
+        if (null != existing) {
+            // An expired entry not yet purged does not block the ID
+            if (existing > now || !expiryById.replace(id, existing, expiresAt)) {
+                return false;
+            }
+        }
+
+        if (expiryById.size() > maxEntries) {
+            trim(now);
+        }
+        return true;
+    }
+
+    /**
+     * @param id assertion ID
+     * @return true if the ID is registered and not expired
+     */
+    public boolean contains(String id) {
+        Long expiresAt = expiryById.get(id);
+        return null != expiresAt && expiresAt > System.currentTimeMillis();
+    }
+
+    /**
+     * Remove expired IDs
+     */
+    public void purgeExpired() {
+        long now = System.currentTimeMillis();
+        expiryById.values().removeIf(expiresAt -> expiresAt <= now);
+    }
+
+    public int size() {
+        return expiryById.size();
+    }
+
+    /**
+     * @return number of IDs evicted before they expired
+     */
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    private synchronized void trim(long now) {
+        if (expiryById.size() <= maxEntries) {
+            return;
+        }
+        expiryById.values().removeIf(expiresAt -> expiresAt <= now);
+
+        if (expiryById.size() <= maxEntries) {
+            return;
+        }
+
+        // Evict down to 90% of the capacity, so the sort is not repeated on every following registration
+        int excess = expiryById.size() - (maxEntries - maxEntries / 10);
+        log.warn("Replay cache holds more than {} unexpired assertion IDs, evicting {} IDs before they expire", maxEntries, excess);
+        for (String id : expiryById.entrySet().stream()
+                .sorted(Map.Entry.comparingByValue(Comparator.naturalOrder()))
+                .limit(excess)
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList())) {
+            if (null != expiryById.remove(id)) {
+                evictions.incrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package dk.gov.oio.saml.session.inmemory;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.BiConsumer;
+
+/**
+ * Index of the keys in a map of {@link TimeOutWrapper} ordered by access time, so expired entries can be found without
+ * visiting every entry.
+ *
+ * <p>Keys are placed in buckets of one second, by the access time they had when they were added. Reading an entry only
+ * updates the access time of the wrapper, it does not move the key. On {@link #expire(Map, long, BiConsumer)} only the
+ * buckets older than the timeout are visited: entries that have expired are removed, entries that have been accessed
+ * since are moved to the bucket of their current access time. Keys removed from the map are dropped from the index
+ * when their bucket is visited.</p>
+ *
+ * @param <K> map key
+ */
+public class TimeOutIndex<K> {
+    private static final long BUCKET_MILLIS = 1000L;
+
+    private final ConcurrentSkipListMap<Long, Set<K>> buckets = new ConcurrentSkipListMap<>();
+
+    /**
+     * Add key with the access time of its wrapper, call when the key is put in the map
+     *
+     * @param key     map key
+     * @param wrapper wrapper put in the map
+     */
+    public void add(K key, TimeOutWrapper<?> wrapper) {
+        buckets.computeIfAbsent(wrapper.getAccesstime() / BUCKET_MILLIS, bucket -> ConcurrentHashMap.newKeySet()).add(key);
+    }
+
+    /**
+     * Remove expired entries from the map
+     *
+     * @param map       map indexed by this index
+     * @param delay     timeout in milliseconds
+     * @param onExpired called for each entry removed from the map
+     * @param <T>       wrapped type
+     * @return number of removed entries
+     */
+    public <T> int expire(Map<K, TimeOutWrapper<T>> map, long delay, BiConsumer<K, TimeOutWrapper<T>> onExpired) {
+        // Every key in a bucket ending before the cutoff was last indexed with an access time that has timed out
+        long cutoff = System.currentTimeMillis() - delay;
+        int expired = 0;
+
+        Iterator<Map.Entry<Long, Set<K>>> dueBuckets = buckets.headMap(cutoff / BUCKET_MILLIS).entrySet().iterator();
+        while (dueBuckets.hasNext()) {
+            Set<K> keys = dueBuckets.next().getValue();
+            dueBuckets.remove();
+
+            for (K key : keys) {
+                TimeOutWrapper<T> wrapper = map.get(key);
+                if (null == wrapper) {
+                    continue;
+                }
+                if (!wrapper.isExpired(delay)) {
+                    add(key, wrapper);
+                }
+                else if (map.remove(key, wrapper)) {
+                    onExpired.accept(key, wrapper);
+                    expired++;
+                }
+            }
+        }
+        return expired;
+    }
+
+    /**
+     * @return number of keys in the index, including keys removed from the map but not yet dropped
+     */
+    public int size() {
+        return buckets.values().stream().mapToInt(Set::size).sum();
+    }
+}
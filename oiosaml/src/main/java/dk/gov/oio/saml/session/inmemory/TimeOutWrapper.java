@@ -29,7 +29,7 @@ package dk.gov.oio.saml.session.inmemory;
  */
 public class TimeOutWrapper<T> {
 	private final T object;
-	private long accesstime;
+	private volatile long accesstime;
 
 	public TimeOutWrapper(T object) {
 		this.object = object;
@@ -44,6 +44,10 @@ public class TimeOutWrapper<T> {
 		return (System.currentTimeMillis() > accesstime + delay);
 	}
 
+	public long getAccesstime() {
+		return accesstime;
+	}
+
 	public void setAccesstime() {
 		accesstime = System.currentTimeMillis();
 	}
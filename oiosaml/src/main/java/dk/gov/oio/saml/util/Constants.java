@@ -25,6 +25,8 @@ public class Constants {
     public static final String METADATA_CONTACT_EMAIL = "oiosaml.servlet.metadata.contact.email";
     public static final String IDP_METADATA_MIN_REFRESH = "oiosaml.servlet.idp.metadata.refresh.min";
     public static final String IDP_METADATA_MAX_REFRESH = "oiosaml.servlet.idp.metadata.refresh.max";
+    public static final String IDP_METADATA_BACKUP_FILE = "oiosaml.servlet.idp.metadata.backup.file";
+    public static final String IDP_METADATA_SIGNING_CERTIFICATE = "oiosaml.servlet.idp.metadata.signing.certificate";
     public static final String SECONDARY_KEYSTORE_LOCATION = "oiosaml.servlet.secondary.keystore.location";
     public static final String SECONDARY_KEYSTORE_PASSWORD = "oiosaml.servlet.secondary.keystore.password";
     public static final String SECONDARY_KEY_ALIAS = "oiosaml.servlet.secondary.keystore.alias";
@@ -44,17 +46,44 @@ public class Constants {
     public static final String SP_AUDIT_ATTRIBUTE_PORT = "oiosaml.servlet.audit.logger.attribute.port";
     public static final String SP_AUDIT_ATTRIBUTE_USER_ID = "oiosaml.servlet.audit.logger.attribute.userid";
     public static final String SP_AUDIT_ATTRIBUTE_SESSION_ID = "oiosaml.servlet.audit.logger.attribute.sessionId";
+    public static final String SP_TRACE_SAMPLE_RATE = "oiosaml.servlet.trace.sample.rate";
     public static final String SP_SESSION_HANDLER_FACTORY_CLASSNAME ="oiosaml.servlet.session.handler.factory";
     public static final String SP_SESSION_HANDLER_JNDI_NAME ="oiosaml.servlet.session.handler.jdni.name";
     public static final String SP_SESSION_HANDLER_JDBC_URL = "oiosaml.servlet.session.handler.jdbc.url";
     public static final String SP_SESSION_HANDLER_JDBC_USERNAME = "oiosaml.servlet.session.handler.jdbc.username";
     public static final String SP_SESSION_HANDLER_JDBC_PASSWORD = "oiosaml.servlet.session.handler.jdbc.password";
     public static final String SP_SESSION_HANDLER_JDBC_DRIVER_CLASSNAME = "oiosaml.servlet.session.handler.jdbc.driver.classname";
+    public static final String SP_SESSION_HANDLER_JDBC_POOL_MAX_SIZE = "oiosaml.servlet.session.handler.jdbc.pool.max.size";
+    public static final String SP_SESSION_HANDLER_JDBC_POOL_MIN_IDLE = "oiosaml.servlet.session.handler.jdbc.pool.min.idle";
+    public static final String SP_SESSION_HANDLER_JDBC_POOL_MAX_IDLE = "oiosaml.servlet.session.handler.jdbc.pool.max.idle";
+    public static final String SP_SESSION_HANDLER_JDBC_POOL_VALIDATE_ON_BORROW = "oiosaml.servlet.session.handler.jdbc.pool.validate.on.borrow";
+    public static final String SP_SESSION_HANDLER_JDBC_POOL_MAX_LIFETIME = "oiosaml.servlet.session.handler.jdbc.pool.max.lifetime";
+    public static final String SP_SESSION_HANDLER_JDBC_POOL_LEAK_DETECTION_THRESHOLD = "oiosaml.servlet.session.handler.jdbc.pool.leak.detection.threshold";
+    public static final String SP_SESSION_HANDLER_JDBC_POOL_BORROW_TIMEOUT = "oiosaml.servlet.session.handler.jdbc.pool.borrow.timeout";
+    public static final String SP_SESSION_HANDLER_DATABASE_TOUCH_INTERVAL = "oiosaml.servlet.session.handler.database.touch.interval";
+    public static final String SP_SESSION_HANDLER_DATABASE_CACHE_SIZE = "oiosaml.servlet.session.handler.database.cache.size";
+    public static final String SP_SESSION_HANDLER_DATABASE_CACHE_TTL = "oiosaml.servlet.session.handler.database.cache.ttl";
+    public static final String SP_SESSION_HANDLER_DATABASE_CODEC = "oiosaml.servlet.session.handler.database.codec";
+    public static final String SP_SESSION_HANDLER_DATABASE_CLEANUP_BATCH_SIZE = "oiosaml.servlet.session.handler.database.cleanup.batch.size";
+    public static final String SP_SESSION_CLEANER_INTERVAL = "oiosaml.servlet.session.cleaner.interval";
+    public static final String SP_SESSION_HANDLER_DATABASE_CLEANUP_COORDINATED = "oiosaml.servlet.session.handler.database.cleanup.coordinated";
     public static final String SP_SESSION_HANDLER_MAX_NUM_TRACKED_ASSERTIONIDS ="oiosaml.servlet.session.handler.inmemory.max.tracked.assertionids";
 
     // Configuration constants for revocation check settings
     public static final String CRL_CHECK_ENABLED = "oiosaml.servlet.revocation.crl.check.enabled";
     public static final String OCSP_CHECK_ENABLED = "oiosaml.servlet.revocation.ocsp.check.enabled";
+    public static final String REVOCATION_CACHE_TTL = "oiosaml.servlet.revocation.cache.ttl";
+    public static final String REVOCATION_FAILURE_TTL = "oiosaml.servlet.revocation.failure.ttl";
+    public static final String REVOCATION_TIMEOUT = "oiosaml.servlet.revocation.timeout";
+    public static final String REVOCATION_CHECK_THREADS = "oiosaml.servlet.revocation.check.threads";
+    public static final String HTTP_MAX_CONNECTIONS = "oiosaml.servlet.http.connections.max";
+    public static final String HTTP_MAX_CONNECTIONS_PER_HOST = "oiosaml.servlet.http.connections.max.per.host";
+    public static final String HTTP_CONNECT_TIMEOUT = "oiosaml.servlet.http.timeout.connect";
+    public static final String HTTP_READ_TIMEOUT = "oiosaml.servlet.http.timeout.read";
+    public static final String HTTP_KEEP_ALIVE = "oiosaml.servlet.http.keepalive";
+    public static final String HTTP_PROXY = "oiosaml.servlet.http.proxy";
+    public static final String PARSER_POOL_MAX_SIZE = "oiosaml.servlet.parser.pool.max";
+    public static final String SIGNATURE_CACHE_TTL = "oiosaml.servlet.signature.cache.ttl";
 
     // Configuration constants for AuthenticationFilter
     public static final String IS_PASSIVE = "oiosaml.filter.ispassive.enabled";
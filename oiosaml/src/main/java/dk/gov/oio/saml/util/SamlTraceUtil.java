@@ -0,0 +1,66 @@
+package dk.gov.oio.saml.util;
+
+import dk.gov.oio.saml.service.OIOSAML3Service;
+import org.opensaml.core.xml.XMLObject;
+import org.opensaml.core.xml.io.MarshallingException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Trace SAML messages to the dedicated logger 'dk.gov.oio.saml.trace.&lt;message type&gt;' at debug level.
+ *
+ * <p>Each message type has its own logger, e.g. 'dk.gov.oio.saml.trace.Response', so tracing can be enabled per
+ * message type in the logging configuration. Messages are only marshalled and pretty printed when the logger is
+ * enabled, and only 1 in {@link Constants#SP_TRACE_SAMPLE_RATE} messages of each type are traced.</p>
+ */
+public class SamlTraceUtil {
+    public static final String TRACE_LOGGER = "dk.gov.oio.saml.trace";
+
+    public static final String RESPONSE = "Response";
+    public static final String AUTHN_REQUEST = "AuthnRequest";
+    public static final String LOGOUT_REQUEST = "LogoutRequest";
+    public static final String LOGOUT_RESPONSE = "LogoutResponse";
+
+    private static final Map<String, Logger> loggers = new ConcurrentHashMap<>();
+    private static final Map<String, AtomicLong> counters = new ConcurrentHashMap<>();
+
+    /**
+     * Write pretty printed message to the trace logger of the message type, if enabled and sampled
+     * @param messageType message type, used as suffix on the trace logger name
+     * @param message SAML message
+     */
+    public static void trace(String messageType, XMLObject message) {
+        Logger log = getLogger(messageType);
+        if (null == message || !log.isDebugEnabled() || !isSampled(messageType, getSampleRate())) {
+            return;
+        }
+
+        try {
+            log.debug("{}: {}", messageType, StringUtil.elementToString(SamlHelper.marshallObject(message)));
+        } catch (MarshallingException e) {
+            log.warn("Could not marshall {} for logging purposes", messageType);
+        }
+    }
+
+    static Logger getLogger(String messageType) {
+        return loggers.computeIfAbsent(messageType, type -> LoggerFactory.getLogger(TRACE_LOGGER + "." + type));
+    }
+
+    static boolean isSampled(String messageType, int sampleRate) {
+        if (sampleRate <= 1) {
+            return true;
+        }
+        return counters.computeIfAbsent(messageType, type -> new AtomicLong()).getAndIncrement() % sampleRate == 0;
+    }
+
+    private static int getSampleRate() {
+        if (!OIOSAML3Service.initialized) {
+            return 1;
+        }
+        return OIOSAML3Service.getConfig().getTraceSampleRate();
+    }
+}
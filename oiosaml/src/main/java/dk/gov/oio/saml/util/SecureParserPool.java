@@ -0,0 +1,117 @@
+package dk.gov.oio.saml.util;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+
+import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
+import net.shibboleth.utilities.java.support.xml.BasicParserPool;
+import net.shibboleth.utilities.java.support.xml.XMLParserException;
+
+/**
+ * Parser pool used for all XML parsed by OIOSAML.
+ *
+ * <p>Builders are namespace aware, do not expand entities or XIncludes, reject DOCTYPE declarations and never load
+ * external entities or DTDs. Builders are reused up to the configured pool size, and usage of the pool is counted so
+ * the size can be tuned.</p>
+ */
+public class SecureParserPool extends BasicParserPool {
+    private final AtomicLong borrowed = new AtomicLong();
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicInteger inUse = new AtomicInteger();
+    private final AtomicInteger peakInUse = new AtomicInteger();
+
+    // Builders handed out and not yet returned, weak so builders never returned do not leak
+    private final Set<DocumentBuilder> outstanding = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+
+    /**
+     * @param maxPoolSize maximum number of idle builders kept for reuse
+     * @return initialized parser pool
+     * @throws InternalException if the pool can not be initialized
+     */
+    public static SecureParserPool create(int maxPoolSize) throws InternalException {
+        SecureParserPool parserPool = new SecureParserPool();
+        parserPool.setMaxPoolSize(maxPoolSize);
+        parserPool.setNamespaceAware(true);
+        parserPool.setExpandEntityReferences(false);
+        parserPool.setXincludeAware(false);
+        parserPool.setIgnoreComments(true);
+
+        Map<String, Boolean> features = new HashMap<>();
+        features.put(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+        features.put("http://apache.org/xml/features/disallow-doctype-decl", true);
+        features.put("http://xml.org/sax/features/external-general-entities", false);
+        features.put("http://xml.org/sax/features/external-parameter-entities", false);
+        features.put("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+        parserPool.setBuilderFeatures(features);
+
+        try {
+            parserPool.initialize();
+        }
+        catch (ComponentInitializationException e) {
+            throw new InternalException("Could not initialize parser pool", e);
+        }
+
+        return parserPool;
+    }
+
+    @Override
+    public DocumentBuilder getBuilder() throws XMLParserException {
+        DocumentBuilder builder = super.getBuilder();
+        outstanding.add(builder);
+
+        borrowed.incrementAndGet();
+        peakInUse.accumulateAndGet(inUse.incrementAndGet(), Math::max);
+        return builder;
+    }
+
+    @Override
+    public void returnBuilder(DocumentBuilder builder) {
+        // Like the pool itself, ignore builders returned twice or not taken from this pool
+        if (builder != null && outstanding.remove(builder)) {
+            inUse.decrementAndGet();
+        }
+        super.returnBuilder(builder);
+    }
+
+    @Override
+    protected DocumentBuilder createBuilder() throws XMLParserException {
+        created.incrementAndGet();
+        return super.createBuilder();
+    }
+
+    /**
+     * @return number of times a builder was taken from the pool
+     */
+    public long getBorrowed() {
+        return borrowed.get();
+    }
+
+    /**
+     * @return number of builders created, a count close to {@link #getBorrowed()} means the pool is too small
+     */
+    public long getCreated() {
+        return created.get();
+    }
+
+    /**
+     * @return number of builders currently in use
+     */
+    public int getInUse() {
+        return inUse.get();
+    }
+
+    /**
+     * @return highest number of builders in use at the same time
+     */
+    public int getPeakInUse() {
+        return peakInUse.get();
+    }
+}
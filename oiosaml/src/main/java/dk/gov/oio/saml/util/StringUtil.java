@@ -13,6 +13,7 @@ import javax.xml.transform.*;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.StringWriter;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
@@ -22,6 +23,29 @@ import java.util.stream.Collectors;
  * Utility class related to string operations in the OIOSAML library.
  */
 public class StringUtil {
+    private static final TransformerFactory TRANSFORMER_FACTORY = TransformerFactory.newInstance();
+
+    // Transformers are not thread-safe, but can be reused by the thread that created them
+    private static final ThreadLocal<Transformer> PRETTY_PRINT_TRANSFORMER = ThreadLocal.withInitial(() -> {
+        Transformer transformer = newTransformer();
+        transformer.setOutputProperty(OutputKeys.METHOD, "xml");
+        transformer.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "4");
+        transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+        transformer.setOutputProperty(OutputKeys.INDENT, "yes");
+        transformer.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
+        return transformer;
+    });
+
+    private static final ThreadLocal<Transformer> COMPACT_TRANSFORMER = ThreadLocal.withInitial(() -> {
+        Transformer transformer = newTransformer();
+        // Remove spacing to ensure that f'(f(input)) == input
+        transformer.setOutputProperty(OutputKeys.METHOD, "xml");
+        transformer.setOutputProperty("{http://xml.apache.org/xslt}strip-spaces", "*");
+        transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+        transformer.setOutputProperty(OutputKeys.INDENT, "no");
+        transformer.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
+        return transformer;
+    });
 
     /**
      * Constructs context path + page (URL) string, from the request,
@@ -60,16 +84,9 @@ public class StringUtil {
     public static String elementToString(Element element) {
         try {
             Source source = new DOMSource(element);
-            TransformerFactory transFactory = TransformerFactory.newInstance();
-            Transformer transformer = transFactory.newTransformer();
             StringWriter buffer = new StringWriter();
 
-            transformer.setOutputProperty(OutputKeys.METHOD, "xml");
-            transformer.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "4");
-            transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
-            transformer.setOutputProperty(OutputKeys.INDENT, "yes");
-            transformer.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
-            transformer.transform(source, new StreamResult(buffer));
+            transform(PRETTY_PRINT_TRANSFORMER, source, new StreamResult(buffer));
 
             return buffer.toString();
         }
@@ -85,28 +102,50 @@ public class StringUtil {
      * @throws InternalException on serialization failure
      */
     public static String xmlObjectToBase64(XMLObject xmlObject) throws InternalException {
+        return Base64.getEncoder().encodeToString(xmlObjectToBytes(xmlObject));
+    }
+
+    /**
+     * Convert OPENSAML object to UTF-8 encoded XML without spacing
+     * @param xmlObject OPENSAML object
+     * @return UTF-8 encoded XML
+     * @throws InternalException on serialization failure
+     */
+    public static byte[] xmlObjectToBytes(XMLObject xmlObject) throws InternalException {
         try {
             Element element = SamlHelper.marshallObject(xmlObject);
 
             Source source = new DOMSource(element);
-            TransformerFactory transFactory = TransformerFactory.newInstance();
-            Transformer transformer = transFactory.newTransformer();
-            StringWriter buffer = new StringWriter();
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
 
-            // Remove spacing to ensure that f'(f(input)) == input
-            transformer.setOutputProperty(OutputKeys.METHOD, "xml");
-            transformer.setOutputProperty("{http://xml.apache.org/xslt}strip-spaces", "*");
-            transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
-            transformer.setOutputProperty(OutputKeys.INDENT, "no");
-            transformer.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
-            transformer.transform(source, new StreamResult(buffer));
+            transform(COMPACT_TRANSFORMER, source, new StreamResult(buffer));
 
-            return Base64.getEncoder().encodeToString(buffer.toString().getBytes(StandardCharsets.UTF_8));
+            return buffer.toByteArray();
         } catch (TransformerException | MarshallingException e) {
             throw new InternalException("Unable to parse XML object to string",e);
         }
     }
 
+    private static Transformer newTransformer() {
+        synchronized (TRANSFORMER_FACTORY) {
+            try {
+                return TRANSFORMER_FACTORY.newTransformer();
+            } catch (TransformerConfigurationException e) {
+                throw new IllegalStateException("Unable to create XML transformer", e);
+            }
+        }
+    }
+
+    private static void transform(ThreadLocal<Transformer> transformers, Source source, Result result) throws TransformerException {
+        try {
+            transformers.get().transform(source, result);
+        } catch (TransformerException | RuntimeException e) {
+            // Do not reuse a transformer left in an unknown state
+            transformers.remove();
+            throw e;
+        }
+    }
+
     /**
      * Convert base64 encoded XML string to OPENSAML object
      * @param base64  Base64 encoded XML string representation of an OPENSAML object
@@ -7,6 +7,7 @@ import org.junit.runner.RunWith;
 @RunWith(JUnitPlatform.class)
 @SelectPackages( {
     "dk.gov.oio.saml.filter",
+    "dk.gov.oio.saml.model",
     "dk.gov.oio.saml.oiobpp",
     "dk.gov.oio.saml.service",
     "dk.gov.oio.saml.service.validation",
@@ -6,6 +6,8 @@ import dk.gov.oio.saml.util.InternalException;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
+import org.opensaml.saml.common.xml.SAMLConstants;
+import org.opensaml.security.credential.UsageType;
 
 public class IdPMetadataTest {
     @DisplayName("Test ResponseLocation is returned when present")
@@ -26,6 +28,38 @@ public class IdPMetadataTest {
         testSingleLogoutResponseLocation("test-metadata3.xml", "http://localhost:8081/saml/logout");
     }
 
+    @DisplayName("Test snapshot is built once for the metadata")
+    @Test
+    public void testSnapshot() throws ExternalException, InternalException {
+        ClassLoader classLoader = IdpMetadataServiceTest.class.getClassLoader();
+        String fileLocation = classLoader.getResource("test-metadata.xml").getFile();
+        IdPMetadata idpMetadata = new IdPMetadata("http://mockidp.localhost", null, fileLocation);
+
+        IdPMetadataSnapshot snapshot = idpMetadata.getSnapshot();
+
+        Assertions.assertSame(snapshot, idpMetadata.getSnapshot());
+        Assertions.assertSame(idpMetadata.getEntityDescriptor(), snapshot.getEntityDescriptor());
+        Assertions.assertEquals(1, snapshot.getCertificates(UsageType.SIGNING).size());
+        Assertions.assertEquals(1, snapshot.getCertificates(UsageType.ENCRYPTION).size());
+        Assertions.assertTrue(snapshot.getCertificates(UsageType.UNSPECIFIED).isEmpty());
+        Assertions.assertEquals("http://localhost:8081/saml/logout/response", snapshot.getLogoutResponseEndpoint());
+    }
+
+    @DisplayName("Test endpoints are indexed by binding")
+    @Test
+    public void testSnapshotEndpoints() throws ExternalException, InternalException {
+        ClassLoader classLoader = IdpMetadataServiceTest.class.getClassLoader();
+        String fileLocation = classLoader.getResource("test-metadata.xml").getFile();
+        IdPMetadata idpMetadata = new IdPMetadata("http://mockidp.localhost", null, fileLocation);
+
+        IdPMetadataSnapshot snapshot = idpMetadata.getSnapshot();
+
+        Assertions.assertEquals("http://localhost:8081/saml/login", snapshot.getSingleSignOnLocation(SAMLConstants.SAML2_REDIRECT_BINDING_URI));
+        Assertions.assertNull(snapshot.getSingleSignOnLocation(SAMLConstants.SAML2_POST_BINDING_URI));
+        Assertions.assertEquals("http://localhost:8081/saml/logout", snapshot.getSingleLogoutService(SAMLConstants.SAML2_REDIRECT_BINDING_URI).getLocation());
+        Assertions.assertSame(snapshot.getLogoutEndpoint(), idpMetadata.getLogoutEndpoint());
+    }
+
     private void testSingleLogoutResponseLocation(String idpMetadataFileLocation, String expectedUri) throws ExternalException, InternalException {
         ClassLoader classLoader = IdpMetadataServiceTest.class.getClassLoader();
         String fileLocation = classLoader.getResource(idpMetadataFileLocation).getFile();
@@ -1,5 +1,8 @@
 package dk.gov.oio.saml.oiobpp;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -21,6 +24,18 @@ public class OIOBPPUtilTest {
         Assertions.assertEquals("urn:dk:some_domain:myPrivilege1C", result.privilegeGroup.get(1).privilege.get(0));
     }
     
+    @DisplayName("Test Base64 encoded OIOBPP string")
+    @Test
+    public void testBase64String() {
+        String base64 = Base64.getEncoder().encodeToString(validString.getBytes(StandardCharsets.UTF_8));
+
+        PrivilegeList result = OIOBPPUtil.parse(base64);
+
+        Assertions.assertNotNull(result);
+        Assertions.assertEquals(2, result.privilegeGroup.size());
+        Assertions.assertEquals("urn:dk:some_domain:myPrivilege1A", result.privilegeGroup.get(0).privilege.get(0));
+    }
+    
     @DisplayName("Test invalid OIOBPP string")
     @Test
     public void testInvalidString() {
@@ -0,0 +1,86 @@
+package dk.gov.oio.saml.oiobpp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class PrivilegeIndexTest {
+    private static final String SCOPE_A = "urn:dk:gov:saml:cvrNumberIdentifier:12345678";
+    private static final String SCOPE_B = "urn:dk:gov:saml:seNumberIdentifier:27384223";
+    private static final String PRIVILEGE_1 = "urn:dk:some_domain:myPrivilege1A";
+    private static final String PRIVILEGE_2 = "urn:dk:some_domain:myPrivilege1C";
+
+    @DisplayName("Test lookup of privileges by privilege and scope")
+    @Test
+    public void testHasPrivilege() {
+        PrivilegeIndex index = PrivilegeIndex.create(privilegeList());
+
+        Assertions.assertTrue(index.hasPrivilege(PRIVILEGE_1));
+        Assertions.assertTrue(index.hasPrivilege(PRIVILEGE_1, SCOPE_A));
+        Assertions.assertTrue(index.hasPrivilege(PRIVILEGE_1, SCOPE_B));
+        Assertions.assertTrue(index.hasPrivilege(PRIVILEGE_2, SCOPE_B));
+        Assertions.assertFalse(index.hasPrivilege(PRIVILEGE_2, SCOPE_A));
+        Assertions.assertFalse(index.hasPrivilege("urn:dk:some_domain:unknown"));
+
+        Assertions.assertEquals(2, index.getScopes(PRIVILEGE_1).size());
+        Assertions.assertEquals(1, index.getPrivileges(SCOPE_A).size());
+        Assertions.assertEquals(2, index.getPrivileges(SCOPE_B).size());
+    }
+
+    @DisplayName("Test constraints are kept for each group granting a privilege")
+    @Test
+    public void testConstraints() {
+        PrivilegeIndex index = PrivilegeIndex.create(privilegeList());
+
+        List<Map<String, String>> constraints = index.getConstraints(PRIVILEGE_1, SCOPE_A);
+        Assertions.assertEquals(1, constraints.size());
+        Assertions.assertEquals("25.*", constraints.get(0).get("urn:dk:kombit:KLE"));
+        Assertions.assertEquals("3", constraints.get(0).get("urn:dk:kombit:sensitivity"));
+
+        // Granted without constraints
+        Assertions.assertEquals(Collections.singletonList(Collections.emptyMap()), index.getConstraints(PRIVILEGE_2, SCOPE_B));
+
+        // Not granted
+        Assertions.assertTrue(index.getConstraints(PRIVILEGE_2, SCOPE_A).isEmpty());
+
+        Assertions.assertThrows(UnsupportedOperationException.class, () -> index.getPrivileges(SCOPE_A).add(PRIVILEGE_2));
+    }
+
+    @DisplayName("Test index of missing privilege list is empty")
+    @Test
+    public void testEmpty() {
+        PrivilegeIndex index = PrivilegeIndex.create(null);
+
+        Assertions.assertTrue(index.isEmpty());
+        Assertions.assertFalse(index.hasPrivilege(PRIVILEGE_1, SCOPE_A));
+        Assertions.assertTrue(index.getScopes(PRIVILEGE_1).isEmpty());
+    }
+
+    private static PrivilegeList privilegeList() {
+        PrivilegeGroup groupA = new PrivilegeGroup();
+        groupA.setScope(SCOPE_A);
+        groupA.setPrivilege(Collections.singletonList(PRIVILEGE_1));
+        groupA.setConstraint(Arrays.asList(constraint("urn:dk:kombit:KLE", "25.*"), constraint("urn:dk:kombit:sensitivity", "3")));
+
+        PrivilegeGroup groupB = new PrivilegeGroup();
+        groupB.setScope(SCOPE_B);
+        groupB.setPrivilege(Arrays.asList(PRIVILEGE_1, PRIVILEGE_2));
+
+        PrivilegeList privilegeList = new PrivilegeList();
+        privilegeList.setPrivilegeGroup(new ArrayList<>(Arrays.asList(groupA, groupB)));
+        return privilegeList;
+    }
+
+    private static Constraint constraint(String name, String value) {
+        Constraint constraint = new Constraint();
+        constraint.setName(name);
+        constraint.setValue(value);
+        return constraint;
+    }
+}
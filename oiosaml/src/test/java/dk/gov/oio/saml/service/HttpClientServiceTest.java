@@ -0,0 +1,63 @@
+package dk.gov.oio.saml.service;
+
+import static org.mockserver.model.HttpRequest.request;
+import static org.mockserver.model.HttpResponse.response;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockserver.client.MockServerClient;
+
+public class HttpClientServiceTest extends BaseServiceTest {
+    private static final String DESTINATION = "http://localhost:8081";
+
+    private MockServerClient server;
+
+    public HttpClientServiceTest(MockServerClient server) {
+        this.server = server;
+    }
+
+    @DisplayName("Test downloading a resource and counting the request for its destination")
+    @Test
+    public void testGet() throws Exception {
+        server.when(request().withMethod("GET").withPath("/crl"))
+            .respond(response().withStatusCode(200).withBody("content"));
+
+        HttpClientService httpClientService = new HttpClientService(OIOSAML3Service.getConfig());
+        try {
+            byte[] body = httpClientService.get(DESTINATION + "/crl", 5000);
+            Assertions.assertEquals("content", new String(body, StandardCharsets.UTF_8));
+
+            HttpClientService.DestinationMetrics metrics = httpClientService.getMetrics().get(DESTINATION);
+            Assertions.assertNotNull(metrics);
+            Assertions.assertEquals(1, metrics.getRequests());
+            Assertions.assertEquals(1, metrics.getResponses());
+            Assertions.assertEquals(0, metrics.getErrorResponses());
+            Assertions.assertEquals(0, metrics.getFailures());
+        }
+        finally {
+            httpClientService.close();
+            server.reset();
+        }
+    }
+
+    @DisplayName("Test that an error response fails the download and is counted")
+    @Test
+    public void testGetErrorResponse() throws Exception {
+        server.when(request().withMethod("GET").withPath("/missing"))
+            .respond(response().withStatusCode(404));
+
+        HttpClientService httpClientService = new HttpClientService(OIOSAML3Service.getConfig());
+        try {
+            Assertions.assertThrows(IOException.class, () -> httpClientService.get(DESTINATION + "/missing", 5000));
+            Assertions.assertEquals(1, httpClientService.getMetrics().get(DESTINATION).getErrorResponses());
+        }
+        finally {
+            httpClientService.close();
+            server.reset();
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package dk.gov.oio.saml.service;
 
+import java.io.File;
+
 import org.junit.jupiter.api.BeforeEach;
 import static org.mockserver.model.HttpRequest.request;
 import static org.mockserver.model.HttpResponse.response;
@@ -12,9 +14,12 @@ import org.mockserver.client.MockServerClient;
 import org.mockserver.junit.jupiter.MockServerExtension;
 import org.mockserver.junit.jupiter.MockServerSettings;
 import org.mockserver.matchers.Times;
+import org.opensaml.saml.metadata.resolver.impl.AbstractReloadingMetadataResolver;
 import org.opensaml.saml.saml2.metadata.EntityDescriptor;
+import org.opensaml.security.credential.UsageType;
 
 import dk.gov.oio.saml.config.Configuration;
+import dk.gov.oio.saml.model.IdPMetadata;
 import dk.gov.oio.saml.util.TestConstants;
 
 @ExtendWith(MockServerExtension.class)
@@ -89,4 +94,116 @@ public class IdpMetadataServiceTest extends BaseServiceTest {
         EntityDescriptor entityDescriptor = IdPMetadataService.getInstance().getIdPMetadata().getEntityDescriptor();
         Assertions.assertNull(entityDescriptor);
     }
+
+    @DisplayName("Test that certificates failing revocation checking are not used")
+    @Test
+    public void testRevocationCheckedCertificates() throws Exception {
+        ClassLoader classLoader = IdpMetadataServiceTest.class.getClassLoader();
+        String fileLocation = classLoader.getResource("test-metadata.xml").getFile();
+        Configuration config = OIOSAML3Service.getConfig();
+
+        try {
+            // The certificates in the test metadata have no OCSP or CRL location, so they can not be validated
+            config.setCRLCheckEnabled(true);
+            config.setOcspCheckEnabled(true);
+
+            IdPMetadata idPMetadata = new IdPMetadata(TestConstants.IDP_ENTITY_ID, null, fileLocation);
+            Assertions.assertNull(idPMetadata.getValidX509Certificate(UsageType.SIGNING));
+            Assertions.assertNotNull(idPMetadata.getLastCRLCheck());
+
+            config.setCRLCheckEnabled(false);
+            config.setOcspCheckEnabled(false);
+            Assertions.assertNotNull(idPMetadata.getValidX509Certificate(UsageType.SIGNING));
+        }
+        finally {
+            config.setCRLCheckEnabled(false);
+            config.setOcspCheckEnabled(false);
+        }
+    }
+
+    @DisplayName("Test IdPs in the same metadata share resolver and are found by SourceID")
+    @Test
+    public void testSharedResolverAndSourceId() throws Exception {
+        ClassLoader classLoader = IdpMetadataServiceTest.class.getClassLoader();
+        String fileLocation = classLoader.getResource("test-metadata.xml").getFile();
+        Configuration config = OIOSAML3Service.getConfig();
+        config.setIdpMetadataFile(fileLocation);
+
+        try {
+            IdPMetadataService service = IdPMetadataService.getInstance();
+            Assertions.assertSame(service.getMetadataResolver(null, fileLocation), service.getMetadataResolver(null, fileLocation));
+
+            byte[] sourceId = IdPMetadataService.getSourceId(TestConstants.IDP_ENTITY_ID);
+            Assertions.assertEquals(20, sourceId.length);
+            Assertions.assertNull(service.getIdPMetadataBySourceId(IdPMetadataService.getSourceId("https://unknown.idp.test")));
+
+            // Found before the IdP has been used
+            IdPMetadata idPMetadata = service.getIdPMetadataBySourceId(sourceId);
+            Assertions.assertNotNull(idPMetadata);
+            Assertions.assertEquals(TestConstants.IDP_ENTITY_ID, idPMetadata.getEntityId());
+            Assertions.assertSame(idPMetadata, service.getIdPMetadata(TestConstants.IDP_ENTITY_ID));
+            Assertions.assertSame(idPMetadata, service.getIdPMetadata());
+        }
+        finally {
+            config.setIdpMetadataFile(null);
+            IdPMetadataService.getInstance().clearAll();
+        }
+    }
+
+    @DisplayName("Test clearing one IdP keeps the resolver shared with other IdPs")
+    @Test
+    public void testClearSharedResolver() throws Exception {
+        ClassLoader classLoader = IdpMetadataServiceTest.class.getClassLoader();
+        String fileLocation = classLoader.getResource("test-metadata.xml").getFile();
+        Configuration config = OIOSAML3Service.getConfig();
+        config.setIdpMetadataFile(fileLocation);
+
+        try {
+            IdPMetadataService service = IdPMetadataService.getInstance();
+            service.getIdPMetadata(TestConstants.IDP_ENTITY_ID);
+            service.getIdPMetadata("https://other.idp.test");
+            AbstractReloadingMetadataResolver resolver = service.getMetadataResolver(null, fileLocation);
+
+            service.clear("https://other.idp.test");
+            Assertions.assertFalse(resolver.isDestroyed());
+            Assertions.assertSame(resolver, service.getMetadataResolver(null, fileLocation));
+
+            service.clear(TestConstants.IDP_ENTITY_ID);
+            Assertions.assertTrue(resolver.isDestroyed());
+        }
+        finally {
+            config.setIdpMetadataFile(null);
+            IdPMetadataService.getInstance().clearAll();
+        }
+    }
+
+    @DisplayName("Test metadata is kept in the backup file and used when the IdP is unreachable")
+    @Test
+    public void testMetadataBackupFile() throws Exception {
+        File backupFile = File.createTempFile("idp-metadata", ".xml");
+        Assertions.assertTrue(backupFile.delete());
+        Configuration config = OIOSAML3Service.getConfig();
+        config.setIdpMetadataBackupFile(backupFile.getAbsolutePath());
+
+        try {
+            idp.when(request().withMethod("GET").withPath("/saml/metadata"), Times.exactly(1))
+                .respond(response().withStatusCode(200).withBody(TestConstants.IDP_METADATA));
+
+            Assertions.assertNotNull(IdPMetadataService.getInstance().getIdPMetadata().getEntityDescriptor());
+            Assertions.assertTrue(backupFile.exists());
+
+            // The IdP no longer answers, a new resolver must start from the backup file
+            IdPMetadataService.getInstance().clearAll();
+            idp.reset();
+
+            EntityDescriptor entityDescriptor = IdPMetadataService.getInstance().getIdPMetadata().getEntityDescriptor();
+            Assertions.assertNotNull(entityDescriptor);
+            Assertions.assertEquals(TestConstants.IDP_ENTITY_ID, entityDescriptor.getEntityID());
+        }
+        finally {
+            config.setIdpMetadataBackupFile(null);
+            IdPMetadataService.getInstance().clearAll();
+            backupFile.delete();
+        }
+    }
 }
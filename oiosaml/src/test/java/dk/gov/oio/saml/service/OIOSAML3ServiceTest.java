@@ -1,6 +1,8 @@
 package dk.gov.oio.saml.service;
 
 import dk.gov.oio.saml.config.Configuration;
+import dk.gov.oio.saml.filter.AuthenticatedFilter;
+import dk.gov.oio.saml.session.SessionHandlerFactory;
 import dk.gov.oio.saml.session.TestSessionHandlerFactory;
 import dk.gov.oio.saml.util.InternalException;
 import dk.gov.oio.saml.util.TestConstants;
@@ -9,6 +11,8 @@ import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.opensaml.core.config.InitializationException;
 
+import java.util.concurrent.ExecutorService;
+
 class OIOSAML3ServiceTest {
 
     @DisplayName("Test that initialization fail if unable to open keystore")
@@ -69,5 +73,51 @@ class OIOSAML3ServiceTest {
         Assertions.assertNotNull(OIOSAML3Service.getCredentialService());
         Assertions.assertNotNull(OIOSAML3Service.getSessionCleanerService());
         Assertions.assertNotNull(OIOSAML3Service.getSessionHandlerFactory().getHandler());
+
+        // Initializing again closes the HTTP client of the previous initialization
+        HttpClientService httpClientService = OIOSAML3Service.getHttpClientService();
+        ExecutorService revocationExecutor = OIOSAML3Service.getRevocationExecutor();
+        OIOSAML3Service.init(configuration);
+        Assertions.assertNotSame(httpClientService, OIOSAML3Service.getHttpClientService());
+        Assertions.assertThrows(IllegalStateException.class, () -> httpClientService.get(TestConstants.IDP_METADATA_URL, 1000));
+        Assertions.assertTrue(revocationExecutor.isShutdown());
+        Assertions.assertFalse(OIOSAML3Service.getRevocationExecutor().isShutdown());
+    }
+
+    @DisplayName("Test that shutdown closes the session handlers and filters can be destroyed afterwards")
+    @Test
+    void testShutdown() throws InternalException, InitializationException {
+        Configuration configuration = new Configuration.Builder()
+                .setSpEntityID(TestConstants.SP_ENTITY_ID)
+                .setBaseUrl(TestConstants.SP_BASE_URL)
+                .setServletRoutingPathPrefix(TestConstants.SP_ROUTING_BASE)
+                .setServletRoutingPathSuffixError(TestConstants.SP_ROUTING_ERROR)
+                .setServletRoutingPathSuffixMetadata(TestConstants.SP_ROUTING_METADATA)
+                .setServletRoutingPathSuffixLogout(TestConstants.SP_ROUTING_LOGOUT)
+                .setServletRoutingPathSuffixLogoutResponse(TestConstants.SP_ROUTING_LOGOUT_RESPONSE)
+                .setServletRoutingPathSuffixAssertion(TestConstants.SP_ROUTING_ASSERTION)
+                .setIdpEntityID(TestConstants.IDP_ENTITY_ID)
+                .setIdpMetadataUrl(TestConstants.IDP_METADATA_URL)
+                .setSessionHandlerFactoryClassName(TestSessionHandlerFactory.class.getName())
+                .setKeystoreLocation(TestConstants.SP_KEYSTORE_LOCATION)
+                .setKeystorePassword(TestConstants.SP_KEYSTORE_PASSWORD)
+                .setKeyAlias(TestConstants.SP_KEYSTORE_ALIAS)
+                .build();
+
+        OIOSAML3Service.init(configuration);
+        SessionHandlerFactory sessionHandlerFactory = OIOSAML3Service.getSessionHandlerFactory();
+        Assertions.assertNotNull(sessionHandlerFactory.getHandler());
+        ExecutorService revocationExecutor = OIOSAML3Service.getRevocationExecutor();
+
+        try {
+            // Servlets are destroyed before filters
+            OIOSAML3Service.shutdown();
+            Assertions.assertThrows(InternalException.class, sessionHandlerFactory::getHandler);
+            Assertions.assertTrue(revocationExecutor.isShutdown());
+            Assertions.assertDoesNotThrow(() -> new AuthenticatedFilter().destroy());
+        }
+        finally {
+            OIOSAML3Service.init(configuration);
+        }
     }
 }
\ No newline at end of file
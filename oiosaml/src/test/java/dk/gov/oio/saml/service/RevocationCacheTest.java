@@ -0,0 +1,94 @@
+package dk.gov.oio.saml.service;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509CRL;
+import java.security.cert.X509Certificate;
+import java.util.Base64;
+import java.util.Date;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import dk.gov.oio.saml.util.TestConstants;
+
+public class RevocationCacheTest {
+    private static final String URL = "http://crl.example.com/crl";
+
+    @DisplayName("Test that a CRL is cached until its nextUpdate")
+    @Test
+    public void testCRLNextUpdate() {
+        RevocationCache cache = new RevocationCache();
+
+        X509CRL crl = Mockito.mock(X509CRL.class);
+        Mockito.when(crl.getNextUpdate()).thenReturn(new Date(System.currentTimeMillis() + 60000));
+        cache.putCRL(URL, crl, 0);
+        Assertions.assertSame(crl, cache.getCRL(URL));
+
+        X509CRL expired = Mockito.mock(X509CRL.class);
+        Mockito.when(expired.getNextUpdate()).thenReturn(new Date(System.currentTimeMillis() - 60000));
+        cache.putCRL(URL, expired, 0);
+        Assertions.assertNull(cache.getCRL(URL));
+    }
+
+    @DisplayName("Test that a CRL without nextUpdate is cached for the fallback time to live")
+    @Test
+    public void testCRLWithoutNextUpdate() {
+        RevocationCache cache = new RevocationCache();
+
+        X509CRL crl = Mockito.mock(X509CRL.class);
+        cache.putCRL(URL, crl, 60000);
+        Assertions.assertSame(crl, cache.getCRL(URL));
+        Assertions.assertNull(cache.getCRL("http://other.example.com/crl"));
+    }
+
+    @DisplayName("Test that OCSP results are cached until they expire")
+    @Test
+    public void testOcspResult() {
+        RevocationCache cache = new RevocationCache();
+
+        cache.putOcspResult("good", true, System.currentTimeMillis() + 60000);
+        cache.putOcspResult("revoked", false, System.currentTimeMillis() + 60000);
+        cache.putOcspResult("expired", true, System.currentTimeMillis() - 1);
+
+        Assertions.assertEquals(Boolean.TRUE, cache.getOcspResult("good"));
+        Assertions.assertEquals(Boolean.FALSE, cache.getOcspResult("revoked"));
+        Assertions.assertNull(cache.getOcspResult("expired"));
+        Assertions.assertNull(cache.getOcspResult("missing"));
+
+        cache.clear();
+        Assertions.assertNull(cache.getOcspResult("good"));
+    }
+
+    @DisplayName("Test that failing endpoints are skipped until the failure expires")
+    @Test
+    public void testFailure() {
+        RevocationCache cache = new RevocationCache();
+
+        cache.putFailure(URL, 60000);
+        cache.putFailure("http://ocsp.example.com", -1);
+
+        Assertions.assertTrue(cache.isFailing(URL));
+        Assertions.assertFalse(cache.isFailing("http://ocsp.example.com"));
+        Assertions.assertFalse(cache.isFailing("http://other.example.com/crl"));
+    }
+
+    @DisplayName("Test that the CertID depends on issuer and serial number")
+    @Test
+    public void testCertId() throws Exception {
+        X509Certificate valid = certificate(TestConstants.VALID_CERTIFICATE);
+        X509Certificate revoked = certificate(TestConstants.REVOKED_CERTIFICATE);
+
+        Assertions.assertEquals(RevocationCache.getCertId(valid, revoked), RevocationCache.getCertId(valid, revoked));
+        Assertions.assertNotEquals(RevocationCache.getCertId(valid, revoked), RevocationCache.getCertId(revoked, revoked));
+        Assertions.assertNotEquals(RevocationCache.getCertId(valid, revoked), RevocationCache.getCertId(valid, valid));
+    }
+
+    private static X509Certificate certificate(String base64) throws Exception {
+        byte[] bytes = Base64.getDecoder().decode(base64.getBytes(StandardCharsets.UTF_8));
+        return (X509Certificate) CertificateFactory.getInstance("X.509").generateCertificate(new ByteArrayInputStream(bytes));
+    }
+}
@@ -4,6 +4,7 @@ import dk.gov.oio.saml.model.NSISLevel;
 import dk.gov.oio.saml.service.AssertionService;
 import dk.gov.oio.saml.service.AuthnRequestService;
 import dk.gov.oio.saml.service.BaseServiceTest;
+import dk.gov.oio.saml.service.OIOSAML3Service;
 import dk.gov.oio.saml.session.AuthnRequestWrapper;
 import dk.gov.oio.saml.util.ExternalException;
 import dk.gov.oio.saml.util.IdpUtil;
@@ -58,6 +59,35 @@ public class AssertionValidationServiceTest extends BaseServiceTest {
         validationService.validate(request, messageContext, response, assertion, new AuthnRequestWrapper(authnRequest, NSISLevel.SUBSTANTIAL, ""));
     }
 
+    @DisplayName("Test that the signature of a resubmitted assertion is taken from the cache")
+    @Test
+    public void testCachedSignatureValidation() throws Exception {
+        AssertionValidationService validationService = new AssertionValidationService();
+        OIOSAML3Service.getConfig().setSignatureCacheTtl(60);
+
+        try {
+            HttpServletRequest request = Mockito.mock(HttpServletRequest.class);
+            Mockito.when(request.getRequestURL()).thenReturn(new StringBuffer(TestConstants.SP_ASSERTION_CONSUMER_URL));
+
+            AuthnRequest authnRequest = getAuthnRequest(AuthnRequestService.getInstance());
+            String nameID = "https://data.gov.dk/model/core/eid/person/uuid/37a5a1aa-67ce-4f70-b7c0-b8e678d585f7";
+            MessageContext<SAMLObject> messageContext = IdpUtil.createMessageWithAssertion(true, true, true, nameID, TestConstants.SP_ENTITY_ID, TestConstants.SP_ASSERTION_CONSUMER_URL, authnRequest.getID());
+            Response response = (Response) messageContext.getMessage();
+            Assertion assertion = new AssertionService().getAssertion(response);
+
+            SignatureCache signatureCache = AssertionValidationService.getSignatureCache();
+            long hits = signatureCache.getResultHits();
+
+            validationService.validate(request, messageContext, response, assertion, new AuthnRequestWrapper(authnRequest, NSISLevel.SUBSTANTIAL, ""));
+            validationService.validate(request, messageContext, response, assertion, new AuthnRequestWrapper(authnRequest, NSISLevel.SUBSTANTIAL, ""));
+
+            Assertions.assertEquals(hits + 1, signatureCache.getResultHits());
+        }
+        finally {
+            OIOSAML3Service.getConfig().setSignatureCacheTtl(0);
+        }
+    }
+
     @DisplayName("Test that validator will fail an assertion with the wrong destination")
     @Test
     public void testFailAssertionWithWrongDestination() throws Exception {
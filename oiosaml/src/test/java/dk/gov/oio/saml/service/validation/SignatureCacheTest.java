@@ -0,0 +1,58 @@
+package dk.gov.oio.saml.service.validation;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.Base64;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import dk.gov.oio.saml.util.TestConstants;
+
+public class SignatureCacheTest {
+
+    @DisplayName("Test that one credential is built per certificate")
+    @Test
+    public void testCredential() throws Exception {
+        SignatureCache cache = new SignatureCache();
+        X509Certificate valid = certificate(TestConstants.VALID_CERTIFICATE);
+        X509Certificate revoked = certificate(TestConstants.REVOKED_CERTIFICATE);
+
+        Assertions.assertSame(cache.getCredential(valid), cache.getCredential(valid));
+        Assertions.assertNotSame(cache.getCredential(valid), cache.getCredential(revoked));
+        Assertions.assertSame(valid, cache.getCredential(valid).getEntityCertificate());
+
+        Assertions.assertEquals(3, cache.getCredentialHits());
+        Assertions.assertEquals(2, cache.getCredentialMisses());
+    }
+
+    @DisplayName("Test that results are cached by assertion digest and certificate until they expire")
+    @Test
+    public void testResult() throws Exception {
+        SignatureCache cache = new SignatureCache();
+        X509Certificate valid = certificate(TestConstants.VALID_CERTIFICATE);
+        X509Certificate revoked = certificate(TestConstants.REVOKED_CERTIFICATE);
+
+        String key = SignatureCache.getResultKey("<Assertion/>".getBytes(StandardCharsets.UTF_8), valid);
+        Assertions.assertNotEquals(key, SignatureCache.getResultKey("<Assertion />".getBytes(StandardCharsets.UTF_8), valid));
+        Assertions.assertNotEquals(key, SignatureCache.getResultKey("<Assertion/>".getBytes(StandardCharsets.UTF_8), revoked));
+
+        Assertions.assertNull(cache.getResult(key));
+        cache.putResult(key, true, 60000);
+        Assertions.assertEquals(Boolean.TRUE, cache.getResult(key));
+
+        cache.putResult(key, false, -1);
+        Assertions.assertNull(cache.getResult(key));
+
+        Assertions.assertEquals(1, cache.getResultHits());
+        Assertions.assertEquals(2, cache.getResultMisses());
+    }
+
+    private static X509Certificate certificate(String base64) throws Exception {
+        byte[] bytes = Base64.getDecoder().decode(base64.getBytes(StandardCharsets.UTF_8));
+        return (X509Certificate) CertificateFactory.getInstance("X.509").generateCertificate(new ByteArrayInputStream(bytes));
+    }
+}
@@ -0,0 +1,20 @@
+package dk.gov.oio.saml.servlet;
+
+import org.apache.velocity.Template;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class SAMLHandlerTest {
+    private static final String POST_BINDING_TEMPLATE = "/templates/saml2-post-binding.vm";
+
+    @DisplayName("Test that the Velocity engine is shared and compiles the HTTP-POST template once")
+    @Test
+    public void testVelocityEngine() {
+        Assertions.assertSame(SAMLHandler.getVelocityEngine(), SAMLHandler.getVelocityEngine());
+
+        Template template = SAMLHandler.getVelocityEngine().getTemplate(POST_BINDING_TEMPLATE);
+        Assertions.assertNotNull(template);
+        Assertions.assertSame(template, SAMLHandler.getVelocityEngine().getTemplate(POST_BINDING_TEMPLATE));
+    }
+}
@@ -0,0 +1,35 @@
+package dk.gov.oio.saml.session;
+
+import dk.gov.oio.saml.service.AssertionService;
+import dk.gov.oio.saml.util.IdpUtil;
+import dk.gov.oio.saml.util.StringUtil;
+import dk.gov.oio.saml.util.TestConstants;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.opensaml.saml.saml2.core.Assertion;
+
+import java.util.UUID;
+
+class AssertionWrapperTest {
+
+    @DisplayName("Test that the string forms of the assertion are derived on first use and memoized")
+    @Test
+    void testLazyStringForms() throws Exception {
+        Assertion assertion = createAssertion();
+        AssertionWrapper wrapper = new AssertionWrapper(assertion);
+
+        Assertions.assertEquals(StringUtil.xmlObjectToBase64(assertion), wrapper.getAssertionAsBase64());
+        Assertions.assertSame(wrapper.getAssertionAsBase64(), wrapper.getAssertionAsBase64());
+
+        String assertionString = wrapper.getAssertionAsString();
+        Assertions.assertTrue(assertionString.contains("ID=\"" + assertion.getID() + "\""));
+        Assertions.assertSame(assertionString, wrapper.getAssertionAsString());
+        Assertions.assertFalse(wrapper.getAssertionAsHtml().contains("<"));
+    }
+
+    private Assertion createAssertion() throws Exception {
+        AssertionService assertionService = new AssertionService();
+        return assertionService.getAssertion(IdpUtil.createResponse(false, true, true,  "NAMEID", TestConstants.SP_ENTITY_ID, TestConstants.SP_ASSERTION_CONSUMER_URL, UUID.randomUUID().toString()));
+    }
+}
@@ -0,0 +1,112 @@
+package dk.gov.oio.saml.session;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import javax.servlet.http.HttpSession;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RequestScopedSessionHandlerTest {
+    private CountingSessionHandler delegate;
+    private RequestScopedSessionHandler sessionHandler;
+    private HttpSession session;
+
+    @BeforeEach
+    void setUp() {
+        delegate = new CountingSessionHandler();
+        delegate.assertion = Mockito.mock(AssertionWrapper.class);
+        delegate.authnRequest = Mockito.mock(AuthnRequestWrapper.class);
+        sessionHandler = new RequestScopedSessionHandler(delegate);
+        session = Mockito.mock(HttpSession.class);
+    }
+
+    @DisplayName("Test that session state is loaded once per request")
+    @Test
+    void testStateIsMemoized() {
+        assertSame(delegate.assertion, sessionHandler.getAssertion(session));
+        assertTrue(sessionHandler.isAuthenticated(session));
+        assertSame(delegate.assertion, sessionHandler.getAssertion(session));
+
+        assertEquals(1, delegate.assertionReads);
+        assertEquals(1, delegate.authnRequestReads);
+    }
+
+    @DisplayName("Test that session state is reloaded after store and logout")
+    @Test
+    void testStateIsInvalidated() throws Exception {
+        sessionHandler.getAssertion(session);
+        sessionHandler.storeAssertion(session, delegate.assertion);
+        sessionHandler.getAssertion(session);
+        sessionHandler.logout(session, delegate.assertion);
+        sessionHandler.getAssertion(session);
+
+        assertEquals(3, delegate.assertionReads);
+    }
+
+    @DisplayName("Test that an overridden isAuthenticated on the wrapped handler is used")
+    @Test
+    void testOverriddenIsAuthenticated() {
+        SessionHandler mock = Mockito.mock(SessionHandler.class);
+        Mockito.when(mock.isAuthenticated(session)).thenReturn(true);
+
+        assertTrue(new RequestScopedSessionHandler(mock).isAuthenticated(session));
+        Mockito.verify(mock).isAuthenticated(session);
+    }
+
+    private static class CountingSessionHandler implements SessionHandler {
+        private AssertionWrapper assertion;
+        private AuthnRequestWrapper authnRequest;
+        private int assertionReads;
+        private int authnRequestReads;
+
+        @Override
+        public void storeAuthnRequest(HttpSession session, AuthnRequestWrapper request) {
+        }
+
+        @Override
+        public void storeAssertion(HttpSession session, AssertionWrapper assertion) {
+        }
+
+        @Override
+        public void storeLogoutRequest(HttpSession session, LogoutRequestWrapper request) {
+        }
+
+        @Override
+        public AuthnRequestWrapper getAuthnRequest(HttpSession session) {
+            authnRequestReads++;
+            return authnRequest;
+        }
+
+        @Override
+        public AssertionWrapper getAssertion(HttpSession session) {
+            assertionReads++;
+            return assertion;
+        }
+
+        @Override
+        public AssertionWrapper getAssertion(String sessionIndex) {
+            return null;
+        }
+
+        @Override
+        public LogoutRequestWrapper getLogoutRequest(HttpSession session) {
+            return null;
+        }
+
+        @Override
+        public String getSessionId(String sessionIndex) {
+            return null;
+        }
+
+        @Override
+        public void logout(HttpSession session, AssertionWrapper assertion) {
+        }
+
+        @Override
+        public void cleanup(long maxInactiveIntervalSeconds) {
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package dk.gov.oio.saml.session.database;
+
+import org.junit.jupiter.api.*;
+import org.mockito.Mockito;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DatabaseLeaseTest {
+    private static final String URL = "jdbc:hsqldb:mem:lease";
+
+    private static DataSource dataSource;
+
+    private DatabaseLease first;
+    private DatabaseLease second;
+
+    @BeforeAll
+    static void beforeAll() throws Exception {
+        Class.forName("org.hsqldb.jdbc.JDBCDriver");
+        dataSource = Mockito.mock(DataSource.class);
+        Mockito.when(dataSource.getConnection()).thenAnswer(invocation -> DriverManager.getConnection(URL, "SA", ""));
+
+        try (Connection connection = dataSource.getConnection()) {
+            connection.createStatement().executeUpdate("CREATE TABLE oiosaml_locks (lock_name VARCHAR(100) NOT NULL, owner_id VARCHAR(255) NOT NULL, expires_at TIMESTAMP NOT NULL, CONSTRAINT oiosaml_locks_lock_name_pk PRIMARY KEY (lock_name))");
+        }
+    }
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            connection.createStatement().executeUpdate("DELETE FROM oiosaml_locks");
+        }
+        first = new DatabaseLease(dataSource, DatabaseLease.SESSION_CLEANUP, "first");
+        second = new DatabaseLease(dataSource, DatabaseLease.SESSION_CLEANUP, "second");
+    }
+
+    @DisplayName("Test that only one owner holds the lease and the holder can renew it")
+    @Test
+    void testSingleHolder() throws Exception {
+        assertTrue(first.tryAcquire(60));
+        assertFalse(second.tryAcquire(60));
+        assertTrue(first.tryAcquire(60));
+        assertFalse(second.tryAcquire(60));
+    }
+
+    @DisplayName("Test that an expired lease is taken over by another owner")
+    @Test
+    void testExpiredLease() throws Exception {
+        assertTrue(first.tryAcquire(-1));
+        assertTrue(second.tryAcquire(60));
+        assertFalse(first.tryAcquire(60));
+    }
+
+    @DisplayName("Test that a released lease can be acquired by another owner")
+    @Test
+    void testRelease() throws Exception {
+        assertTrue(first.tryAcquire(60));
+        second.release();
+        assertFalse(second.tryAcquire(60));
+
+        first.release();
+        Thread.sleep(10);
+        assertTrue(second.tryAcquire(60));
+    }
+
+    @DisplayName("Test that lease expiry is computed with the database clock")
+    @Test
+    void testDatabaseClock() throws Exception {
+        assertTrue(first.tryAcquire(60));
+
+        try (Connection connection = dataSource.getConnection();
+             ResultSet rs = connection.createStatement().executeQuery("SELECT COUNT(*) FROM oiosaml_locks WHERE expires_at BETWEEN TIMESTAMPADD(SQL_TSI_SECOND, 55, LOCALTIMESTAMP) AND TIMESTAMPADD(SQL_TSI_SECOND, 60, LOCALTIMESTAMP)")) {
+            assertTrue(rs.next());
+            assertEquals(1, rs.getInt(1));
+        }
+    }
+
+    @DisplayName("Test that leases with different names are independent")
+    @Test
+    void testIndependentLeases() throws Exception {
+        DatabaseLease other = new DatabaseLease(dataSource, "other", "second");
+
+        assertTrue(first.tryAcquire(60));
+        assertTrue(other.tryAcquire(60));
+    }
+}
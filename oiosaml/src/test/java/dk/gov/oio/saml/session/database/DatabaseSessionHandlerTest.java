@@ -5,6 +5,7 @@ import dk.gov.oio.saml.service.AssertionService;
 import dk.gov.oio.saml.service.AuthnRequestService;
 import dk.gov.oio.saml.session.AssertionWrapper;
 import dk.gov.oio.saml.session.AuthnRequestWrapper;
+import dk.gov.oio.saml.session.CompactSessionObjectCodec;
 import dk.gov.oio.saml.session.LogoutRequestWrapper;
 import dk.gov.oio.saml.util.IdpUtil;
 import dk.gov.oio.saml.util.InternalException;
@@ -184,6 +185,42 @@ class DatabaseSessionHandlerTest {
         Mockito.verify(session, Mockito.never()).getId();
     }
 
+    @DisplayName("Test that another node can not take over the cleanup lease between two cleanups")
+    @Test
+    void testCleanupLeaseBetweenCleanups() throws Exception {
+        try (Connection connection = dataSource.getConnection()) {
+            connection.createStatement().executeUpdate("DELETE FROM oiosaml_locks");
+        }
+
+        DatabaseSessionHandler first = new DatabaseSessionHandler(dataSource);
+        first.setCleanupLease(new DatabaseLease(dataSource, DatabaseLease.SESSION_CLEANUP, "first"), 1);
+        DatabaseSessionHandler second = new DatabaseSessionHandler(dataSource);
+        second.setCleanupLease(new DatabaseLease(dataSource, DatabaseLease.SESSION_CLEANUP, "second"), 1);
+
+        first.cleanup(60);
+        assertEquals("first", getCleanupLeaseOwner());
+
+        // The holder runs again one interval after its last cleanup, the lease must not have expired before
+        Thread.sleep(1100);
+        second.cleanup(60);
+        assertEquals("first", getCleanupLeaseOwner());
+
+        first.cleanup(60);
+        second.cleanup(60);
+        assertEquals("first", getCleanupLeaseOwner());
+    }
+
+    private static String getCleanupLeaseOwner() throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement ps = connection.prepareStatement("SELECT owner_id FROM oiosaml_locks WHERE lock_name = ?")) {
+            ps.setString(1, DatabaseLease.SESSION_CLEANUP);
+            try (ResultSet rs = ps.executeQuery()) {
+                assertTrue(rs.next());
+                return rs.getString(1);
+            }
+        }
+    }
+
     @DisplayName("Test that stored Assertion can be retrieved")
     @Test
     void testStoreAssertion() throws Exception {
@@ -388,6 +425,67 @@ class DatabaseSessionHandlerTest {
         Assertions.assertNull(assertionWrapperLogoutOutput);
     }
 
+    @DisplayName("Test that cleanup removes all expired sessions in batches")
+    @Test
+    void testCleanupBatches() throws Exception {
+        HttpSession[] sessions = new HttpSession[3];
+        for (int i = 0; i < sessions.length; i++) {
+            sessions[i] = Mockito.mock(HttpSession.class);
+            Mockito.when(sessions[i].getId()).thenReturn("BATCH_SESSION_ID_" + i);
+            sessionHandler.storeAuthnRequest(sessions[i], new AuthnRequestWrapper(createAuthnRequest(), NSIS_LEVEL, REQUEST_URL));
+            sessionHandler.storeAssertion(sessions[i], new AssertionWrapper(createAssertion()));
+        }
+
+        sessionHandler.setCleanupBatchSize(1);
+        sessionHandler.cleanup(-1);
+
+        for (HttpSession batchSession : sessions) {
+            Assertions.assertNull(sessionHandler.getAuthnRequest(batchSession));
+            Assertions.assertNull(sessionHandler.getAssertion(batchSession));
+        }
+    }
+
+    @DisplayName("Test that session objects stored by the compact codec can be retrieved")
+    @Test
+    void testCompactCodec() throws Exception {
+        DatabaseSessionHandler compactHandler = new DatabaseSessionHandler(dataSource, null, 0, new CompactSessionObjectCodec());
+        AuthnRequestWrapper authnRequestWrapperInput = new AuthnRequestWrapper(createAuthnRequest(), NSIS_LEVEL, REQUEST_URL);
+        AssertionWrapper assertionWrapperInput = new AssertionWrapper(createAssertion());
+        LogoutRequestWrapper logoutRequestWrapperInput = new LogoutRequestWrapper(createLogoutRequest());
+
+        compactHandler.storeAuthnRequest(session, authnRequestWrapperInput);
+        compactHandler.storeAssertion(session, assertionWrapperInput);
+        compactHandler.storeLogoutRequest(session, logoutRequestWrapperInput);
+
+        AuthnRequestWrapper authnRequestWrapperOutput = compactHandler.getAuthnRequest(session);
+        Assertions.assertEquals(authnRequestWrapperInput.getId(), authnRequestWrapperOutput.getId());
+        Assertions.assertEquals(authnRequestWrapperInput.getAuthnContextClassRefValues(), authnRequestWrapperOutput.getAuthnContextClassRefValues());
+        Assertions.assertEquals(REQUEST_URL, authnRequestWrapperOutput.getRequestPath());
+        Assertions.assertEquals(authnRequestWrapperInput.getAuthnRequestAsBase64(), authnRequestWrapperOutput.getAuthnRequestAsBase64());
+
+        AssertionWrapper assertionWrapperOutput = compactHandler.getAssertion(session);
+        Assertions.assertEquals(assertionWrapperInput.getID(), assertionWrapperOutput.getID());
+        Assertions.assertEquals(assertionWrapperInput.getSessionIndex(), assertionWrapperOutput.getSessionIndex());
+        Assertions.assertEquals(assertionWrapperInput.getSubjectNameId(), assertionWrapperOutput.getSubjectNameId());
+        Assertions.assertEquals(assertionWrapperInput.getAttributeValues(), assertionWrapperOutput.getAttributeValues());
+        Assertions.assertEquals(assertionWrapperInput.getNsisLevel(), assertionWrapperOutput.getNsisLevel());
+        Assertions.assertEquals(assertionWrapperInput.isSessionExpired(), assertionWrapperOutput.isSessionExpired());
+        Assertions.assertEquals(assertionWrapperInput.getAssertionAsBase64(), assertionWrapperOutput.getAssertionAsBase64());
+        Assertions.assertNotNull(assertionWrapperOutput.getAssertionAsString());
+
+        LogoutRequestWrapper logoutRequestWrapperOutput = compactHandler.getLogoutRequest(session);
+        Assertions.assertEquals(logoutRequestWrapperInput.getID(), logoutRequestWrapperOutput.getID());
+        Assertions.assertEquals(logoutRequestWrapperInput.getLogoutRequestAsBase64(), logoutRequestWrapperOutput.getLogoutRequestAsBase64());
+
+        // Values stored by either codec are readable by the other
+        AssertionWrapper assertionWrapperXmlOutput = sessionHandler.getAssertion(session);
+        Assertions.assertEquals(assertionWrapperInput.getAssertionAsBase64(), assertionWrapperXmlOutput.getAssertionAsBase64());
+
+        AssertionWrapper assertionWrapperLegacyInput = new AssertionWrapper(createAssertion());
+        sessionHandler.storeAssertion(session, assertionWrapperLegacyInput);
+        Assertions.assertEquals(assertionWrapperLegacyInput.getAssertionAsBase64(), compactHandler.getAssertion(session).getAssertionAsBase64());
+    }
+
     private Assertion createAssertion() throws Exception {
         AssertionService assertionService = new AssertionService();
         return assertionService.getAssertion(IdpUtil.createResponse(false, true, true,  "NAMEID", TestConstants.SP_ENTITY_ID, TestConstants.SP_ASSERTION_CONSUMER_URL, UUID.randomUUID().toString()));
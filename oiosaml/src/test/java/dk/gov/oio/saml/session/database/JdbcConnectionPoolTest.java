@@ -0,0 +1,110 @@
+package dk.gov.oio.saml.session.database;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JdbcConnectionPoolTest {
+    private JdbcConnectionPool pool;
+
+    @BeforeEach
+    void beforeEach() throws ClassNotFoundException {
+        Class.forName("org.hsqldb.jdbc.JDBCDriver");
+        pool = new JdbcConnectionPool.Builder()
+                .setUrl("jdbc:hsqldb:mem:pooltest")
+                .setUsername("SA")
+                .setPassword("")
+                .setMaxSize(2)
+                .setMaxIdle(2)
+                .setBorrowTimeout(1)
+                .build();
+    }
+
+    @AfterEach
+    void afterEach() {
+        pool.close();
+    }
+
+    @DisplayName("Test that a returned connection is reused")
+    @Test
+    void testConnectionIsReused() throws SQLException {
+        try (Connection connection = pool.getConnection()) {
+            assertTrue(connection.isValid(1));
+            assertEquals(1, pool.getActiveConnections());
+        }
+        assertEquals(0, pool.getActiveConnections());
+        assertEquals(1, pool.getIdleConnections());
+
+        try (Connection connection = pool.getConnection()) {
+            assertFalse(connection.isClosed());
+        }
+        assertEquals(1, pool.getCreatedCount());
+        assertEquals(2, pool.getBorrowCount());
+    }
+
+    @DisplayName("Test that a returned connection can not be used")
+    @Test
+    void testReturnedConnectionIsClosed() throws SQLException {
+        Connection connection = pool.getConnection();
+        connection.close();
+        connection.close();
+
+        assertTrue(connection.isClosed());
+        assertThrows(SQLException.class, connection::createStatement);
+        assertEquals(1, pool.getIdleConnections());
+    }
+
+    @DisplayName("Test that borrowing beyond max size times out")
+    @Test
+    void testBorrowTimeout() throws SQLException {
+        try (Connection first = pool.getConnection(); Connection second = pool.getConnection()) {
+            assertThrows(SQLTimeoutException.class, pool::getConnection);
+            assertEquals(1, pool.getBorrowTimeoutCount());
+        }
+        assertEquals(2, pool.getIdleConnections());
+    }
+
+    @DisplayName("Test that the minimum idle connections are created within the pool size")
+    @Test
+    void testMinIdle() throws Exception {
+        pool.close();
+        pool = new JdbcConnectionPool.Builder()
+                .setUrl("jdbc:hsqldb:mem:pooltest")
+                .setUsername("SA")
+                .setPassword("")
+                .setMaxSize(2)
+                .setMinIdle(2)
+                .setBorrowTimeout(1)
+                .build();
+
+        // The first housekeeping runs when the pool is created
+        for (int i = 0; i < 50 && pool.getIdleConnections() < 2; i++) {
+            Thread.sleep(100);
+        }
+        assertEquals(2, pool.getIdleConnections());
+
+        try (Connection first = pool.getConnection(); Connection second = pool.getConnection()) {
+            assertThrows(SQLTimeoutException.class, pool::getConnection);
+            assertEquals(2, pool.getCreatedCount());
+            assertEquals(2, pool.getTotalConnections());
+        }
+    }
+
+    @DisplayName("Test that closing the pool closes idle connections")
+    @Test
+    void testClose() throws SQLException {
+        pool.getConnection().close();
+        pool.close();
+
+        assertEquals(0, pool.getTotalConnections());
+        assertEquals(1, pool.getDestroyedCount());
+        assertThrows(SQLException.class, pool::getConnection);
+    }
+}
@@ -0,0 +1,103 @@
+package dk.gov.oio.saml.session.database;
+
+import dk.gov.oio.saml.session.AssertionWrapper;
+import dk.gov.oio.saml.session.RequestScopedSessionHandler;
+import dk.gov.oio.saml.session.SessionHandler;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import javax.servlet.http.HttpSession;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NearCacheSessionHandlerTest {
+    private static final String SESSION_ID = "SESSION_ID";
+
+    private DatabaseSessionHandler delegate;
+    private NearCacheSessionHandler sessionHandler;
+    private HttpSession session;
+    private AssertionWrapper assertion;
+
+    @BeforeEach
+    void setUp() {
+        delegate = Mockito.mock(DatabaseSessionHandler.class);
+        sessionHandler = new NearCacheSessionHandler(delegate, 10, 60);
+        session = Mockito.mock(HttpSession.class);
+        assertion = Mockito.mock(AssertionWrapper.class);
+
+        Mockito.when(delegate.getSessionId(session)).thenReturn(SESSION_ID);
+        Mockito.when(assertion.getID()).thenReturn("ASSERTION_ID");
+        Mockito.when(assertion.getSessionIndex()).thenReturn("SESSION_INDEX");
+        Mockito.when(delegate.getAssertion(session)).thenReturn(assertion);
+        Mockito.when(delegate.getAssertionId(session)).thenReturn("ASSERTION_ID");
+    }
+
+    @DisplayName("Test that a cached assertion is served after a version check")
+    @Test
+    void testCachedAssertion() {
+        assertSame(assertion, sessionHandler.getAssertion(session));
+        assertSame(assertion, sessionHandler.getAssertion(session));
+
+        Mockito.verify(delegate, Mockito.times(1)).getAssertion(session);
+        Mockito.verify(delegate, Mockito.times(1)).getAssertionId(session);
+        assertEquals(1, sessionHandler.getHitCount());
+        assertEquals(1, sessionHandler.getMissCount());
+    }
+
+    @DisplayName("Test that a request behind the request scoped handler probes the database once")
+    @Test
+    void testRequestScopedCachedAssertion() {
+        Mockito.when(delegate.hasAuthnRequest(session)).thenReturn(true);
+        sessionHandler.getAssertion(session);
+        Mockito.clearInvocations(delegate);
+
+        // Same calls as AuthenticatedFilter makes for an authenticated request
+        SessionHandler requestHandler = new RequestScopedSessionHandler(sessionHandler);
+        assertSame(assertion, requestHandler.getAssertion(session));
+        assertTrue(requestHandler.isAuthenticated(session));
+        assertSame(assertion, requestHandler.getAssertion(session));
+
+        Mockito.verify(delegate, Mockito.times(1)).getAssertionId(session);
+        Mockito.verify(delegate, Mockito.times(1)).hasAuthnRequest(session);
+        Mockito.verify(delegate, Mockito.never()).getAssertion(session);
+        Mockito.verify(delegate, Mockito.never()).getAuthnRequest(session);
+        Mockito.verify(delegate, Mockito.never()).isAuthenticated(session);
+    }
+
+    @DisplayName("Test that a logout on another node invalidates the cached assertion")
+    @Test
+    void testStaleAssertion() {
+        sessionHandler.getAssertion(session);
+        Mockito.when(delegate.getAssertionId(session)).thenReturn(null);
+
+        assertNull(sessionHandler.getAssertion(session));
+        assertEquals(1, sessionHandler.getStaleCount());
+        assertEquals(0, sessionHandler.getSize());
+    }
+
+    @DisplayName("Test that local logout evicts the cached assertion")
+    @Test
+    void testLogout() {
+        sessionHandler.getAssertion(session);
+        sessionHandler.logout(session, assertion);
+
+        assertEquals(0, sessionHandler.getSize());
+        Mockito.verify(delegate).logout(session, assertion);
+    }
+
+    @DisplayName("Test that the cache is bounded")
+    @Test
+    void testMaxEntries() {
+        NearCacheSessionHandler boundedHandler = new NearCacheSessionHandler(delegate, 1, 60);
+        HttpSession otherSession = Mockito.mock(HttpSession.class);
+        Mockito.when(delegate.getSessionId(otherSession)).thenReturn("OTHER_SESSION_ID");
+        Mockito.when(delegate.getAssertion(otherSession)).thenReturn(assertion);
+
+        boundedHandler.getAssertion(session);
+        boundedHandler.getAssertion(otherSession);
+
+        assertEquals(1, boundedHandler.getSize());
+    }
+}
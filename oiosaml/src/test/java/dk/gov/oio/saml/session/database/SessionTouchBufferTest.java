@@ -0,0 +1,95 @@
+package dk.gov.oio.saml.session.database;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.sql.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SessionTouchBufferTest {
+    private static final String SESSION_ID = "SESSION_ID";
+    private static final Timestamp OLD_ACCESS_TIME = Timestamp.valueOf("2020-01-01 00:00:00");
+
+    private static JdbcConnectionPool dataSource;
+
+    private SessionTouchBuffer touchBuffer;
+
+    @BeforeAll
+    static void beforeAll() throws Exception {
+        Class.forName("org.hsqldb.jdbc.JDBCDriver");
+        dataSource = new JdbcConnectionPool.Builder()
+                .setUrl("jdbc:hsqldb:mem:touchtest")
+                .setUsername("SA")
+                .setPassword("")
+                .build();
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.executeUpdate("CREATE TABLE logout_requests_tbl (session_id VARCHAR(255) NOT NULL, access_time TIMESTAMP NOT NULL, xml_object CLOB, CONSTRAINT logout_requests_session_id_pk PRIMARY KEY (session_id))");
+        }
+    }
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        touchBuffer = new SessionTouchBuffer(dataSource, 3600);
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.executeUpdate("DELETE FROM logout_requests_tbl");
+            SqlDialect.HSQLDB.upsert(connection, SessionTable.LOGOUT_REQUESTS, SESSION_ID, OLD_ACCESS_TIME, "XML");
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        touchBuffer.close();
+    }
+
+    @DisplayName("Test that touches are written on flush only")
+    @Test
+    void testTouchIsBuffered() throws SQLException {
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+
+        touchBuffer.touch(SessionTable.LOGOUT_REQUESTS, SESSION_ID, now);
+        touchBuffer.touch(SessionTable.LOGOUT_REQUESTS, SESSION_ID, now);
+
+        assertEquals(1, touchBuffer.getPendingCount());
+        assertEquals(OLD_ACCESS_TIME, getAccessTime());
+
+        touchBuffer.flush();
+
+        assertEquals(0, touchBuffer.getPendingCount());
+        assertEquals(now, getAccessTime());
+    }
+
+    @DisplayName("Test that flush never moves access time backwards")
+    @Test
+    void testTouchDoesNotMoveBackwards() throws SQLException {
+        touchBuffer.touch(SessionTable.LOGOUT_REQUESTS, SESSION_ID, Timestamp.valueOf("2019-01-01 00:00:00"));
+        touchBuffer.flush();
+
+        assertEquals(OLD_ACCESS_TIME, getAccessTime());
+    }
+
+    @DisplayName("Test that removed sessions are not touched")
+    @Test
+    void testRemove() throws SQLException {
+        touchBuffer.touch(SessionTable.LOGOUT_REQUESTS, SESSION_ID, new Timestamp(System.currentTimeMillis()));
+        touchBuffer.remove(SESSION_ID);
+        touchBuffer.flush();
+
+        assertEquals(0, touchBuffer.getPendingCount());
+        assertEquals(OLD_ACCESS_TIME, getAccessTime());
+    }
+
+    private Timestamp getAccessTime() throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement ps = connection.prepareStatement("SELECT access_time FROM logout_requests_tbl WHERE session_id = ?")) {
+            ps.setString(1, SESSION_ID);
+            try (ResultSet rs = ps.executeQuery()) {
+                assertTrue(rs.next());
+                return rs.getTimestamp(1);
+            }
+        }
+    }
+}
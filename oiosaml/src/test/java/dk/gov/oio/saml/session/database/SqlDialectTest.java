@@ -0,0 +1,87 @@
+package dk.gov.oio.saml.session.database;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.sql.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SqlDialectTest {
+    private static final String URL = "jdbc:hsqldb:mem:dialecttest";
+
+    @BeforeAll
+    static void beforeAll() throws Exception {
+        Class.forName("org.hsqldb.jdbc.JDBCDriver");
+        try (Connection connection = DriverManager.getConnection(URL, "SA", "");
+             Statement statement = connection.createStatement()) {
+            statement.executeUpdate("CREATE TABLE logout_requests_tbl (session_id VARCHAR(255) NOT NULL, access_time TIMESTAMP NOT NULL, xml_object CLOB, CONSTRAINT logout_requests_session_id_pk PRIMARY KEY (session_id))");
+        }
+    }
+
+    @DisplayName("Test that dialect is resolved from database product name")
+    @Test
+    void testFromProductName() {
+        assertEquals(SqlDialect.HSQLDB, SqlDialect.fromProductName("HSQL Database Engine"));
+        assertEquals(SqlDialect.POSTGRESQL, SqlDialect.fromProductName("PostgreSQL"));
+        assertEquals(SqlDialect.MYSQL, SqlDialect.fromProductName("MySQL"));
+        assertEquals(SqlDialect.MARIADB, SqlDialect.fromProductName("MariaDB"));
+        assertEquals(SqlDialect.ORACLE, SqlDialect.fromProductName("Oracle"));
+        assertEquals(SqlDialect.SQLSERVER, SqlDialect.fromProductName("Microsoft SQL Server"));
+        assertEquals(SqlDialect.GENERIC, SqlDialect.fromProductName("Apache Derby"));
+        assertEquals(SqlDialect.GENERIC, SqlDialect.fromProductName(null));
+    }
+
+    @DisplayName("Test that upsert SQL is generated for each database")
+    @Test
+    void testUpsertSql() {
+        assertEquals("INSERT INTO logout_requests_tbl (session_id, access_time, xml_object) VALUES (?, ?, ?)"
+                        + " ON CONFLICT (session_id) DO UPDATE SET access_time = EXCLUDED.access_time, xml_object = EXCLUDED.xml_object",
+                SqlDialect.POSTGRESQL.getUpsertSql(SessionTable.LOGOUT_REQUESTS));
+        assertEquals("INSERT INTO logout_requests_tbl (session_id, access_time, xml_object) VALUES (?, ?, ?) AS v"
+                        + " ON DUPLICATE KEY UPDATE access_time = v.access_time, xml_object = v.xml_object",
+                SqlDialect.MYSQL.getUpsertSql(SessionTable.LOGOUT_REQUESTS));
+        assertEquals("INSERT INTO logout_requests_tbl (session_id, access_time, xml_object) VALUES (?, ?, ?)"
+                        + " ON DUPLICATE KEY UPDATE access_time = VALUES(access_time), xml_object = VALUES(xml_object)",
+                SqlDialect.MARIADB.getUpsertSql(SessionTable.LOGOUT_REQUESTS));
+        assertEquals("MERGE INTO logout_requests_tbl t"
+                        + " USING (SELECT ? AS session_id, ? AS access_time, ? AS xml_object FROM dual) v"
+                        + " ON (t.session_id = v.session_id)"
+                        + " WHEN MATCHED THEN UPDATE SET t.access_time = v.access_time, t.xml_object = v.xml_object"
+                        + " WHEN NOT MATCHED THEN INSERT (session_id, access_time, xml_object) VALUES (v.session_id, v.access_time, v.xml_object)",
+                SqlDialect.ORACLE.getUpsertSql(SessionTable.LOGOUT_REQUESTS));
+        assertEquals("MERGE INTO logout_requests_tbl WITH (HOLDLOCK) AS t"
+                        + " USING (VALUES (?, ?, ?)) AS v (session_id, access_time, xml_object)"
+                        + " ON t.session_id = v.session_id"
+                        + " WHEN MATCHED THEN UPDATE SET t.access_time = v.access_time, t.xml_object = v.xml_object"
+                        + " WHEN NOT MATCHED THEN INSERT (session_id, access_time, xml_object) VALUES (v.session_id, v.access_time, v.xml_object);",
+                SqlDialect.SQLSERVER.getUpsertSql(SessionTable.LOGOUT_REQUESTS));
+        assertNull(SqlDialect.GENERIC.getUpsertSql(SessionTable.LOGOUT_REQUESTS));
+    }
+
+    @DisplayName("Test that upsert inserts and replaces rows")
+    @ParameterizedTest
+    @EnumSource(value = SqlDialect.class, names = { "HSQLDB", "GENERIC" })
+    void testUpsert(SqlDialect dialect) throws SQLException {
+        String sessionId = "SESSION_" + dialect;
+        try (Connection connection = DriverManager.getConnection(URL, "SA", "")) {
+            connection.setAutoCommit(true);
+
+            dialect.upsert(connection, SessionTable.LOGOUT_REQUESTS, sessionId, new Timestamp(System.currentTimeMillis()), "FIRST");
+            dialect.upsert(connection, SessionTable.LOGOUT_REQUESTS, sessionId, new Timestamp(System.currentTimeMillis()), "SECOND");
+
+            assertTrue(connection.getAutoCommit());
+            try (PreparedStatement ps = connection.prepareStatement("SELECT xml_object FROM logout_requests_tbl WHERE session_id = ?")) {
+                ps.setString(1, sessionId);
+                try (ResultSet rs = ps.executeQuery()) {
+                    assertTrue(rs.next());
+                    assertEquals("SECOND", rs.getString(1));
+                    assertFalse(rs.next());
+                }
+            }
+        }
+    }
+}
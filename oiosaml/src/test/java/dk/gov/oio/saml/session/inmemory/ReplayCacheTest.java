@@ -0,0 +1,58 @@
+package dk.gov.oio.saml.session.inmemory;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class ReplayCacheTest {
+    private static final long HOUR = 60 * 60 * 1000L;
+
+    @DisplayName("Test that a registered ID is rejected until it expires")
+    @Test
+    void testRegister() {
+        ReplayCache cache = new ReplayCache(10);
+        long now = System.currentTimeMillis();
+
+        Assertions.assertTrue(cache.register("ID", now + HOUR));
+        Assertions.assertTrue(cache.contains("ID"));
+        Assertions.assertFalse(cache.register("ID", now + HOUR));
+    }
+
+    @DisplayName("Test that an expired ID can be registered again and is purged")
+    @Test
+    void testExpired() {
+        ReplayCache cache = new ReplayCache(10);
+        long now = System.currentTimeMillis();
+
+        Assertions.assertTrue(cache.register("EXPIRED", now - 1));
+        Assertions.assertFalse(cache.contains("EXPIRED"));
+        Assertions.assertTrue(cache.register("EXPIRED", now + HOUR));
+        Assertions.assertFalse(cache.register("EXPIRED", now + HOUR));
+
+        Assertions.assertTrue(cache.register("OTHER", now - 1));
+        cache.purgeExpired();
+        Assertions.assertEquals(1, cache.size());
+    }
+
+    @DisplayName("Test that expired IDs are removed before unexpired IDs are evicted when the cache is full")
+    @Test
+    void testMaxEntries() {
+        ReplayCache cache = new ReplayCache(2);
+        long now = System.currentTimeMillis();
+
+        cache.register("EXPIRED", now - 1);
+        cache.register("FIRST", now + HOUR);
+        cache.register("SECOND", now + 2 * HOUR);
+
+        Assertions.assertEquals(2, cache.size());
+        Assertions.assertEquals(0, cache.getEvictionCount());
+        Assertions.assertTrue(cache.contains("FIRST"));
+
+        cache.register("THIRD", now + 3 * HOUR);
+
+        Assertions.assertEquals(2, cache.size());
+        Assertions.assertEquals(1, cache.getEvictionCount());
+        Assertions.assertFalse(cache.contains("FIRST"));
+        Assertions.assertTrue(cache.contains("THIRD"));
+    }
+}
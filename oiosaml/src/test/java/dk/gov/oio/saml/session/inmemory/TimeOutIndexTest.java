@@ -0,0 +1,58 @@
+package dk.gov.oio.saml.session.inmemory;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+class TimeOutIndexTest {
+
+    @DisplayName("Test that expired entries are removed and reported")
+    @Test
+    void testExpire() {
+        Map<String, TimeOutWrapper<String>> map = new ConcurrentHashMap<>();
+        TimeOutIndex<String> index = new TimeOutIndex<>();
+        put(map, index, "KEY", "VALUE");
+
+        List<String> expired = new ArrayList<>();
+        Assertions.assertEquals(1, index.expire(map, -60000, (key, wrapper) -> expired.add(key)));
+
+        Assertions.assertTrue(map.isEmpty());
+        Assertions.assertEquals(0, index.size());
+        Assertions.assertEquals("KEY", expired.get(0));
+    }
+
+    @DisplayName("Test that entries within the timeout are not visited")
+    @Test
+    void testNotDue() {
+        Map<String, TimeOutWrapper<String>> map = new ConcurrentHashMap<>();
+        TimeOutIndex<String> index = new TimeOutIndex<>();
+        put(map, index, "KEY", "VALUE");
+
+        Assertions.assertEquals(0, index.expire(map, 60000, (key, wrapper) -> Assertions.fail("Entry is not due")));
+        Assertions.assertEquals(1, map.size());
+        Assertions.assertEquals(1, index.size());
+    }
+
+    @DisplayName("Test that keys removed from the map are dropped from the index")
+    @Test
+    void testRemovedKey() {
+        Map<String, TimeOutWrapper<String>> map = new ConcurrentHashMap<>();
+        TimeOutIndex<String> index = new TimeOutIndex<>();
+        put(map, index, "KEY", "VALUE");
+        map.remove("KEY");
+
+        Assertions.assertEquals(0, index.expire(map, -60000, (key, wrapper) -> Assertions.fail("Entry is removed")));
+        Assertions.assertEquals(0, index.size());
+    }
+
+    private static void put(Map<String, TimeOutWrapper<String>> map, TimeOutIndex<String> index, String key, String value) {
+        TimeOutWrapper<String> wrapper = new TimeOutWrapper<>(value);
+        map.put(key, wrapper);
+        index.add(key, wrapper);
+    }
+}
@@ -0,0 +1,30 @@
+package dk.gov.oio.saml.util;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class SamlTraceUtilTest {
+
+    @DisplayName("Test that 1 in N messages of each message type is sampled")
+    @Test
+    void testIsSampled() {
+        int sampled = 0;
+        for (int i = 0; i < 9; i++) {
+            if (SamlTraceUtil.isSampled("SampledMessage", 3)) {
+                sampled++;
+            }
+        }
+        Assertions.assertEquals(3, sampled);
+
+        // Counters are kept per message type
+        Assertions.assertTrue(SamlTraceUtil.isSampled("OtherSampledMessage", 3));
+    }
+
+    @DisplayName("Test that every message is sampled with sample rate 1 or less")
+    @Test
+    void testAlwaysSampled() {
+        Assertions.assertTrue(SamlTraceUtil.isSampled(SamlTraceUtil.RESPONSE, 1));
+        Assertions.assertTrue(SamlTraceUtil.isSampled(SamlTraceUtil.RESPONSE, 0));
+    }
+}
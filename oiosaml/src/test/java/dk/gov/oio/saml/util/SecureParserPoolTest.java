@@ -0,0 +1,73 @@
+package dk.gov.oio.saml.util;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+import javax.xml.parsers.DocumentBuilder;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+
+import net.shibboleth.utilities.java.support.xml.XMLParserException;
+
+public class SecureParserPoolTest {
+
+    @DisplayName("Test that builders are reused and counted")
+    @Test
+    public void testBuilderReuse() throws Exception {
+        SecureParserPool parserPool = SecureParserPool.create(2);
+
+        for (int i = 0; i < 5; i++) {
+            Document document = parserPool.parse(new ByteArrayInputStream("<a xmlns=\"urn:test\"><b/></a>".getBytes(StandardCharsets.UTF_8)));
+            Assertions.assertEquals("urn:test", document.getDocumentElement().getNamespaceURI());
+        }
+
+        Assertions.assertEquals(5, parserPool.getBorrowed());
+        Assertions.assertEquals(1, parserPool.getCreated());
+        Assertions.assertEquals(0, parserPool.getInUse());
+        Assertions.assertEquals(1, parserPool.getPeakInUse());
+
+        DocumentBuilder first = parserPool.getBuilder();
+        DocumentBuilder second = parserPool.getBuilder();
+        Assertions.assertEquals(2, parserPool.getInUse());
+        Assertions.assertEquals(2, parserPool.getPeakInUse());
+
+        parserPool.returnBuilder(first);
+        parserPool.returnBuilder(second);
+        Assertions.assertEquals(0, parserPool.getInUse());
+    }
+
+    @DisplayName("Test that builders returned twice or from another pool are not counted")
+    @Test
+    public void testForeignAndDoubleReturn() throws Exception {
+        SecureParserPool parserPool = SecureParserPool.create(2);
+        SecureParserPool otherPool = SecureParserPool.create(2);
+
+        DocumentBuilder builder = parserPool.getBuilder();
+        DocumentBuilder otherBuilder = otherPool.getBuilder();
+        Assertions.assertEquals(1, parserPool.getInUse());
+
+        parserPool.returnBuilder(otherBuilder);
+        Assertions.assertEquals(1, parserPool.getInUse());
+        Assertions.assertEquals(1, otherPool.getInUse());
+
+        parserPool.returnBuilder(builder);
+        parserPool.returnBuilder(builder);
+        Assertions.assertEquals(0, parserPool.getInUse());
+
+        otherPool.returnBuilder(otherBuilder);
+        Assertions.assertEquals(0, otherPool.getInUse());
+    }
+
+    @DisplayName("Test that documents with a DOCTYPE are rejected")
+    @Test
+    public void testDoctypeRejected() throws Exception {
+        SecureParserPool parserPool = SecureParserPool.create(2);
+
+        String xml = "<?xml version=\"1.0\"?><!DOCTYPE a [<!ENTITY e SYSTEM \"file:///etc/passwd\">]><a>&e;</a>";
+        Assertions.assertThrows(XMLParserException.class, () -> parserPool.parse(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8))));
+        Assertions.assertEquals(0, parserPool.getInUse());
+    }
+}
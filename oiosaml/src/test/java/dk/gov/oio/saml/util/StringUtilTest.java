@@ -15,7 +15,12 @@ import org.opensaml.saml.saml2.core.AuthnRequest;
 import org.w3c.dom.*;
 
 import javax.servlet.http.HttpServletRequest;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 class StringUtilTest {
 
@@ -112,4 +117,30 @@ class StringUtilTest {
         String base64Output = StringUtil.xmlObjectToBase64(assertionOutput);
         Assertions.assertEquals(base64Input, base64Output);
     }
-}
\ No newline at end of file
+
+    @DisplayName("Test that concurrent serialization with the cached transformers gives the same output")
+    @Test
+    void testConcurrentXMLObjectToBase64() throws Exception {
+        AssertionService assertionService = new AssertionService();
+        Assertion assertion = assertionService.getAssertion(IdpUtil.createResponse(true, true, true, "NAMEID", TestConstants.SP_ENTITY_ID, TestConstants.SP_ASSERTION_CONSUMER_URL, UUID.randomUUID().toString()));
+        String expected = StringUtil.xmlObjectToBase64(assertion);
+        String expectedString = StringUtil.elementToString(((Assertion) StringUtil.base64ToXMLObject(expected)).getDOM());
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                results.add(executor.submit(() -> {
+                    Assertion copy = (Assertion) StringUtil.base64ToXMLObject(expected);
+                    return expected.equals(StringUtil.xmlObjectToBase64(copy))
+                            && expectedString.equals(StringUtil.elementToString(copy.getDOM()));
+                }));
+            }
+            for (Future<Boolean> result : results) {
+                Assertions.assertTrue(result.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}